@@ -225,4 +225,1968 @@ public class FileController {
 - **파일 크기**: BLOB에 저장할 수 있는 파일 크기에 제한이 있을 수 있으므로, 파일 크기에 주의해야 합니다. 필요에 따라 대용량 파일 처리를 위한 스트리밍이나 파일 분할 저장 등의 방법을 고려할 수 있습니다.
 - **보안**: 파일 업로드 및 다운로드 기능은 보안상 중요한 부분이므로, 파일 타입 검증, 파일 확장자 검사, 권한 체크 등을 통해 보안 취약점을 방지해야 합니다.
 
-이와 같은 구조를 통해 Spring Boot 애플리케이션에서 엑셀과 CSV 파일을 업로드 및 다운로드하는 기능을 구현할 수 있습니다.
\ No newline at end of file
+이와 같은 구조를 통해 Spring Boot 애플리케이션에서 엑셀과 CSV 파일을 업로드 및 다운로드하는 기능을 구현할 수 있습니다.
+
+
+
+
+
+
+`FileUploadService.uploadFile`은 `file.getBytes()`로 파일 전체를 `byte[]`에 읽어서 `FileData.fileData`에 넣은 다음 `fileMapper.insertFile`을 호출합니다. 500 MB 파일을 올리면 요청 하나에 500 MB 이상의 힙이 필요하고, 동시에 몇 건만 들어와도 `OutOfMemoryError`가 납니다. `MultipartFile.getInputStream()`을 JDBC `setBinaryStream`으로 BLOB에 바로 흘려보내도록 바꿔서, 파일 크기와 관계없이 요청당 메모리 사용량을 일정하게 유지합니다.
+
+### 1. **BLOB 스트림 파라미터**
+
+MyBatis 파라미터로 스트림과 길이를 함께 넘기기 위한 값 객체와, 이를 `PreparedStatement.setBinaryStream(index, stream, length)`로 바인딩하는 타입 핸들러입니다. 길이를 함께 넘기면 Oracle JDBC 드라이버가 스트림을 청크 단위로 읽어서 전송하므로, 드라이버 쪽에서도 전체를 버퍼링하지 않습니다.
+
+#### BlobContent.java
+
+```java
+package com.example.demo.handler;
+
+import java.io.InputStream;
+
+public class BlobContent {
+    private final InputStream stream;
+    private final long length;
+
+    public BlobContent(InputStream stream, long length) {
+        this.stream = stream;
+        this.length = length;
+    }
+
+    public InputStream getStream() {
+        return stream;
+    }
+
+    public long getLength() {
+        return length;
+    }
+}
+```
+
+#### BlobContentTypeHandler.java
+
+```java
+package com.example.demo.handler;
+
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Binds a BlobContent parameter with setBinaryStream and its length.
+ * Named explicitly on the parameter (jdbcType=BLOB); reads just wrap the BLOB locator's stream.
+ */
+public class BlobContentTypeHandler extends BaseTypeHandler<BlobContent> {
+
+    @Override
+    public void setNonNullParameter(PreparedStatement ps, int i, BlobContent parameter, JdbcType jdbcType) throws SQLException {
+        // With a known length the driver streams the data in chunks instead of buffering it
+        ps.setBinaryStream(i, parameter.getStream(), parameter.getLength());
+    }
+
+    @Override
+    public BlobContent getNullableResult(ResultSet rs, String columnName) throws SQLException {
+        return toContent(rs.getBlob(columnName));
+    }
+
+    @Override
+    public BlobContent getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+        return toContent(rs.getBlob(columnIndex));
+    }
+
+    @Override
+    public BlobContent getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+        return toContent(cs.getBlob(columnIndex));
+    }
+
+    // The stream is only readable while the connection that returned the locator is open
+    private static BlobContent toContent(Blob blob) throws SQLException {
+        return blob == null ? null : new BlobContent(blob.getBinaryStream(), blob.length());
+    }
+}
+```
+
+### 2. **FileMapper 수정**
+
+메타데이터는 `FileData`에서, 파일 내용은 `BlobContent`에서 가져옵니다. Oracle의 identity 컬럼 값을 받아오려면 `keyColumn`을 지정해야 합니다.
+
+#### FileMapper.java (수정)
+
+```java
+import com.example.demo.handler.BlobContent;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.Optional;
+
+@Mapper
+public interface FileMapper {
+    @Insert("INSERT INTO uploaded_files (filename, file_type, file_data) VALUES (#{filename}, #{fileType}, #{fileData})")
+    void insertFile(FileData fileData);
+
+    @Insert("INSERT INTO uploaded_files (filename, file_type, file_data) " +
+            "VALUES (#{file.filename}, #{file.fileType}, #{content, jdbcType=BLOB, typeHandler=com.example.demo.handler.BlobContentTypeHandler})")
+    @Options(useGeneratedKeys = true, keyProperty = "file.id", keyColumn = "id")
+    void insertFileStream(@Param("file") FileData file, @Param("content") BlobContent content);
+
+    @Select("SELECT id, filename, file_type, file_data FROM uploaded_files WHERE id = #{id}")
+    Optional<FileData> findFileById(Long id);
+}
+```
+
+### 3. **FileUploadService 수정**
+
+업로드 스트림은 고정 크기(64 KB) 버퍼로만 감싸서 넘깁니다. 스트림은 INSERT가 끝난 뒤 닫습니다.
+
+#### FileUploadService.java (수정)
+
+```java
+import com.example.demo.handler.BlobContent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+@Service
+public class FileUploadService {
+
+    private static final int UPLOAD_BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    private FileMapper fileMapper;
+
+    @Transactional
+    public void uploadFile(MultipartFile file) throws IOException {
+        FileData fileData = new FileData();
+        fileData.setFilename(file.getOriginalFilename());
+        fileData.setFileType(file.getContentType());
+
+        try (InputStream in = new BufferedInputStream(file.getInputStream(), UPLOAD_BUFFER_SIZE)) {
+            fileMapper.insertFileStream(fileData, new BlobContent(in, file.getSize()));
+        }
+    }
+}
+```
+
+### 4. **멀티파트 설정**
+
+Spring의 `MultipartFile`은 `file-size-threshold`보다 큰 파일을 임시 디스크 파일로 받습니다. 임계값을 작게 두어 멀티파트 파싱 단계에서도 파일이 힙에 올라가지 않게 하고, 기본 최대 크기(1 MB)를 늘립니다.
+
+#### application.yml (추가)
+
+```yaml
+spring:
+  servlet:
+    multipart:
+      max-file-size: 1GB
+      max-request-size: 1GB
+      # Parts larger than this are written to a temp file instead of memory
+      file-size-threshold: 1MB
+```
+
+### 설명
+
+1. **메모리 사용량**: 요청마다 힙에 남는 것은 64 KB 버퍼와 드라이버의 전송 버퍼(수십 KB)뿐입니다. 500 MB 파일도 500 KB 파일과 같은 메모리로 업로드됩니다.
+2. **`setBinaryStream`과 길이**: 길이 없이 `setBinaryStream(i, stream)`이나 MyBatis 기본 `InputStream` 핸들러(`setBlob`)를 사용하면, 드라이버에 따라 길이를 알기 위해 스트림 전체를 메모리에 읽기도 합니다. `MultipartFile.getSize()`로 길이를 알고 있으므로 길이를 지정하는 버전을 사용합니다.
+3. **트랜잭션**: INSERT가 실패하면 행이 남지 않도록 `@Transactional`로 감쌌습니다. 스트림은 INSERT 문이 실행되는 동안 모두 읽히므로, 스트림을 닫는 시점은 INSERT 이후입니다.
+4. **기존 메서드**: `insertFile(FileData)`는 작은 파일을 `byte[]`로 저장하는 다른 호출부를 위해 남겨 두었습니다.
+
+### 주의 사항
+
+- **타입 핸들러 지정**: 핸들러는 파라미터에 `jdbcType=BLOB`과 전체 클래스 이름(`com.example.demo.handler.BlobContentTypeHandler`)으로 직접 지정하므로 별도 등록이 필요 없습니다. 조회 결과를 `BlobContent`로 받는 경우에는 BLOB 로케이터의 스트림과 길이를 감싸서 돌려주며, 이 스트림은 연결이 열려 있는 동안에만 읽을 수 있습니다.
+- **임시 디스크 공간**: 멀티파트 임시 파일은 요청이 끝나면 삭제되지만, 동시에 업로드되는 파일 크기의 합만큼 디스크 공간이 필요합니다.
+
+
+
+
+
+
+
+`FileDownloadService.getFileById`는 BLOB 전체를 `FileData.fileData`(`byte[]`)에 담아서 돌려주고, `FileController.downloadFile`은 이를 `ByteArrayResource`로 감싸서 응답합니다. 큰 엑셀 파일을 내려받을 때마다 파일 전체가 힙에 올라가고, 다운로드가 중간에 끊기면 처음부터 다시 받아야 합니다. `Blob.getBinaryStream`에서 응답으로 바로 복사하도록 바꾸고, 이어받기와 부분 다운로드를 위해 `Range`/`If-Range`를 지원합니다. `Content-Length`는 BLOB 길이에서 가져옵니다.
+
+### 1. **메타데이터 조회**
+
+응답 헤더(`Content-Type`, `Content-Length`, `Content-Range`)를 정하려면 파일 내용 없이 메타데이터와 길이만 필요합니다. 길이는 `DBMS_LOB.GETLENGTH`로 DB에서 계산하므로 BLOB을 읽지 않습니다.
+
+#### FileMetadata.java
+
+```java
+public class FileMetadata {
+    private Long id;
+    private String filename;
+    private String fileType;
+    private long fileSize;
+
+    // Getters and setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public String getFileType() {
+        return fileType;
+    }
+
+    public void setFileType(String fileType) {
+        this.fileType = fileType;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+}
+```
+
+### 2. **BLOB 로케이터 조회**
+
+`file_data`를 `byte[]`가 아니라 `java.sql.Blob`(로케이터)으로 받습니다. 로케이터는 트랜잭션(연결)이 열려 있는 동안에만 읽을 수 있습니다. MyBatis 기본 핸들러는 BLOB 컬럼을 `byte[]`로 읽기 때문에 `Blob`용 핸들러를 따로 등록합니다.
+
+#### SqlBlobTypeHandler.java
+
+```java
+package com.example.demo.handler;
+
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.MappedTypes;
+
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+@MappedTypes(Blob.class)
+public class SqlBlobTypeHandler extends BaseTypeHandler<Blob> {
+
+    @Override
+    public void setNonNullParameter(PreparedStatement ps, int i, Blob parameter, JdbcType jdbcType) throws SQLException {
+        ps.setBlob(i, parameter);
+    }
+
+    @Override
+    public Blob getNullableResult(ResultSet rs, String columnName) throws SQLException {
+        return rs.getBlob(columnName);
+    }
+
+    @Override
+    public Blob getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+        return rs.getBlob(columnIndex);
+    }
+
+    @Override
+    public Blob getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+        return cs.getBlob(columnIndex);
+    }
+}
+```
+
+#### FileMapper.java (추가)
+
+```java
+    @Select("SELECT id, filename, file_type, DBMS_LOB.GETLENGTH(file_data) AS file_size FROM uploaded_files WHERE id = #{id}")
+    Optional<FileMetadata> findMetadataById(Long id);
+
+    @Select("SELECT file_data FROM uploaded_files WHERE id = #{id}")
+    Blob findContentById(Long id);
+```
+
+#### application.yml (추가)
+
+```yaml
+mybatis:
+  type-handlers-package: com.example.demo.handler
+  configuration:
+    # file_type -> fileType, file_size -> fileSize
+    map-underscore-to-camel-case: true
+```
+
+### 3. **FileDownloadService 수정**
+
+`copyContent`는 요청한 구간만 DB에서 읽어서 64 KB 버퍼로 출력 스트림에 복사합니다. `Blob.getBinaryStream(pos, length)`는 위치가 1부터 시작합니다.
+
+#### FileDownloadService.java (수정)
+
+```java
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Blob;
+import java.sql.SQLException;
+import java.util.Optional;
+
+@Service
+public class FileDownloadService {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    private FileMapper fileMapper;
+
+    public Optional<FileData> getFileById(Long fileId) {
+        return fileMapper.findFileById(fileId);
+    }
+
+    public Optional<FileMetadata> getMetadata(Long fileId) {
+        return fileMapper.findMetadataById(fileId);
+    }
+
+    /**
+     * Copies {@code length} bytes of the stored file, starting at {@code offset}, to the output stream.
+     * The BLOB locator is only valid inside this transaction.
+     */
+    @Transactional(readOnly = true)
+    public void copyContent(Long fileId, long offset, long length, OutputStream out) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        Blob blob = fileMapper.findContentById(fileId);
+        if (blob == null) {
+            throw new IOException("File " + fileId + " not found");
+        }
+        try (InputStream in = blob.getBinaryStream(offset + 1, length)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to read file " + fileId, e);
+        } finally {
+            try {
+                blob.free();
+            } catch (SQLException ignored) {
+                // The locator is released with the transaction anyway
+            }
+        }
+    }
+}
+```
+
+### 4. **FileController 수정**
+
+- `Range` 헤더가 하나의 구간이면 `206 Partial Content`와 `Content-Range`로 그 구간만 보냅니다.
+- `If-Range`가 있으면 현재 ETag와 같을 때만 구간 요청을 따르고, 다르면 전체 파일을 `200`으로 보냅니다.
+- 범위가 파일 길이를 벗어나면 `416 Range Not Satisfiable`을 돌려줍니다.
+- 여러 구간(`bytes=0-10,20-30`)이나 형식이 잘못된 `Range`는 무시하고 전체를 보냅니다(RFC 7233에서 허용).
+
+업로드된 파일은 수정되지 않으므로, ETag는 id와 길이로 만듭니다.
+
+#### FileController.java (수정)
+
+```java
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+@RestController
+public class FileController {
+
+    @Autowired
+    private FileDownloadService fileDownloadService;
+
+    // ... uploadFile unchanged
+
+    @GetMapping("/download/{id}")
+    public ResponseEntity<StreamingResponseBody> downloadFile(@PathVariable Long id, @RequestHeader HttpHeaders requestHeaders) {
+        Optional<FileMetadata> metadata = fileDownloadService.getMetadata(id);
+        if (!metadata.isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+        FileMetadata file = metadata.get();
+        long size = file.getFileSize();
+        String etag = "\"" + file.getId() + "-" + size + "\"";
+
+        long start = 0;
+        long length = size;
+        boolean partial = false;
+        List<HttpRange> ranges = parseRanges(requestHeaders);
+        if (ranges.size() == 1 && ifRangeMatches(requestHeaders, etag)) {
+            HttpRange range = ranges.get(0);
+            try {
+                start = range.getRangeStart(size);
+                length = range.getRangeEnd(size) - start + 1;
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                        .build();
+            }
+            partial = true;
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(partial ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK)
+                .contentType(contentTypeOf(file.getFileType()))
+                .contentLength(length)
+                .eTag(etag)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.CONTENT_DISPOSITION, contentDispositionOf(file.getFilename()));
+        if (partial) {
+            response.header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (start + length - 1) + "/" + size);
+        }
+
+        long offset = start;
+        long count = length;
+        return response.body(out -> fileDownloadService.copyContent(id, offset, count, out));
+    }
+
+    private static List<HttpRange> parseRanges(HttpHeaders requestHeaders) {
+        try {
+            return requestHeaders.getRange();
+        } catch (IllegalArgumentException e) {
+            // Malformed Range header: serve the whole file
+            return List.of();
+        }
+    }
+
+    // If-Range with a date never matches because no Last-Modified is sent
+    private static boolean ifRangeMatches(HttpHeaders requestHeaders, String etag) {
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        return ifRange == null || ifRange.equals(etag);
+    }
+
+    // file_type is whatever the uploading client sent; a malformed value falls back to a plain download
+    private static MediaType contentTypeOf(String fileType) {
+        if (fileType != null) {
+            try {
+                return MediaType.parseMediaType(fileType);
+            } catch (InvalidMediaTypeException e) {
+                // fall through
+            }
+        }
+        return MediaType.APPLICATION_OCTET_STREAM;
+    }
+
+    // Quotes and escapes the stored name, and adds filename*=UTF-8'' for non-ASCII names
+    private static String contentDispositionOf(String filename) {
+        ContentDisposition.Builder disposition = ContentDisposition.attachment();
+        if (filename != null) {
+            disposition.filename(filename, StandardCharsets.UTF_8);
+        }
+        return disposition.build().toString();
+    }
+}
+```
+
+### 설명
+
+1. **스트리밍**: 응답 본문은 `StreamingResponseBody`에서 BLOB 스트림을 64 KB씩 복사합니다. 힙에는 버퍼 하나만 남고, 파일 크기와 관계없이 메모리 사용량이 같습니다.
+2. **트랜잭션 범위**: `StreamingResponseBody`는 컨트롤러가 반환된 뒤 비동기 스레드에서 실행되므로, 로케이터 조회와 복사를 같은 `@Transactional` 메서드(`copyContent`) 안에서 합니다. 메타데이터 조회는 그 전에 끝나고 DB 연결을 바로 반환합니다.
+3. **`Content-Length`**: `DBMS_LOB.GETLENGTH`로 구한 길이(부분 요청이면 구간 길이)를 보냅니다. 클라이언트는 진행률을 표시할 수 있고, 응답이 청크 전송으로 바뀌지 않습니다.
+4. **구간 읽기**: `getBinaryStream(offset + 1, length)`는 DB에서 해당 구간만 읽습니다. 900 MB 위치부터 이어받는 경우에도 앞의 900 MB를 읽고 버리지 않습니다.
+5. **`If-Range`**: 클라이언트가 이전에 받은 ETag와 현재 ETag가 다르면(다른 파일이 같은 id로 저장된 경우 등) 구간 대신 전체 파일을 보내서, 서로 다른 파일의 조각이 섞이지 않게 합니다.
+
+### 주의 사항
+
+- **기존 메서드**: `getFileById`와 `findFileById`(BLOB 전체를 `byte[]`로 읽음)는 작은 파일을 다루는 다른 호출부를 위해 남겨 두었습니다. 다운로드에는 사용하지 않습니다.
+- **비동기 타임아웃**: 큰 파일은 기본 비동기 요청 타임아웃보다 오래 걸릴 수 있으므로 `spring.mvc.async.request-timeout`을 늘려야 합니다.
+- **`Content-Type`**: `file_type`은 업로드한 클라이언트가 보낸 값이므로 형식이 잘못되었을 수 있습니다. 파싱에 실패하거나 값이 없으면 500 대신 `application/octet-stream`으로 보냅니다.
+- **`Content-Disposition`**: `filename`도 클라이언트가 보낸 값입니다. `"`나 줄바꿈이 들어 있으면 헤더가 깨지거나 다른 헤더가 끼어들 수 있으므로, 문자열을 이어 붙이지 않고 `ContentDisposition`으로 만듭니다. 따옴표와 역슬래시를 이스케이프하고, 한글 같은 비 ASCII 이름은 `filename*=UTF-8''...`로 인코딩합니다.
+
+
+
+
+
+
+
+`FileMapper.findFileById`는 `uploaded_files`의 `file_data` BLOB까지 한 번에 `FileData`로 읽습니다. 목록 화면이나 존재 여부 확인처럼 파일 내용이 필요 없는 조회에서도 BLOB 세그먼트를 읽게 됩니다. 메타데이터만 읽는 조회(id, filename, file_type, size, checksum, created_at)를 분리하고, 파일 내용은 실제로 접근할 때만 읽도록(lazy) 바꿉니다. 파일 목록 화면용으로 페이지 단위 목록 엔드포인트도 추가합니다.
+
+### 1. **테이블 수정**
+
+크기와 체크섬은 업로드할 때 저장해 두면 조회할 때 BLOB을 건드릴 필요가 없습니다. 기존 행은 한 번만 채웁니다.
+
+```sql
+ALTER TABLE uploaded_files ADD (
+    file_size NUMBER(19),
+    checksum VARCHAR2(64),
+    created_at TIMESTAMP DEFAULT SYSTIMESTAMP NOT NULL
+);
+
+-- Backfill existing rows (DBMS_CRYPTO needs EXECUTE privilege)
+UPDATE uploaded_files
+SET file_size = DBMS_LOB.GETLENGTH(file_data),
+    checksum = LOWER(RAWTOHEX(DBMS_CRYPTO.HASH(file_data, DBMS_CRYPTO.HASH_SH256)))
+WHERE file_size IS NULL;
+```
+
+### 2. **메타데이터 객체**
+
+#### FileMetadata.java (수정)
+
+```java
+import java.time.LocalDateTime;
+
+public class FileMetadata {
+    private Long id;
+    private String filename;
+    private String fileType;
+    private long fileSize;
+    private String checksum;
+    private LocalDateTime createdAt;
+
+    // Getters and setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public String getFileType() {
+        return fileType;
+    }
+
+    public void setFileType(String fileType) {
+        this.fileType = fileType;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
+```
+
+#### FilePage.java
+
+```java
+import java.util.List;
+
+public class FilePage {
+    private final List<FileMetadata> items;
+    private final int page;
+    private final int size;
+    private final long total;
+
+    public FilePage(List<FileMetadata> items, int page, int size, long total) {
+        this.items = items;
+        this.page = page;
+        this.size = size;
+        this.total = total;
+    }
+
+    public List<FileMetadata> getItems() {
+        return items;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+}
+```
+
+`FileData`에도 같은 메타데이터 필드(`fileSize`, `checksum`, `createdAt`)와 getter/setter를 추가합니다.
+
+### 3. **FileMapper 수정**
+
+- 메타데이터 조회는 모두 같은 컬럼 목록(`METADATA_COLUMNS`)만 읽고 `file_data`는 읽지 않습니다.
+- `findFileById`는 메타데이터만 읽고, `fileData`는 `@One(fetchType = LAZY)`로 `getFileData()`를 처음 호출할 때 별도 조회로 읽습니다.
+- 목록은 `OFFSET ... FETCH NEXT`(Oracle 12c 이상)로 한 페이지만 읽습니다.
+
+#### FileMapper.java (수정)
+
+```java
+import com.example.demo.handler.BlobContent;
+import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.mapping.FetchType;
+
+import java.sql.Blob;
+import java.util.List;
+import java.util.Optional;
+
+@Mapper
+public interface FileMapper {
+
+    String METADATA_COLUMNS = "id, filename, file_type, file_size, checksum, created_at";
+
+    @Insert("INSERT INTO uploaded_files (filename, file_type, file_size, file_data) " +
+            "VALUES (#{file.filename}, #{file.fileType}, #{content.length}, #{content, jdbcType=BLOB, typeHandler=com.example.demo.handler.BlobContentTypeHandler})")
+    @Options(useGeneratedKeys = true, keyProperty = "file.id", keyColumn = "id")
+    void insertFileStream(@Param("file") FileData file, @Param("content") BlobContent content);
+
+    @Update("UPDATE uploaded_files SET checksum = #{checksum} WHERE id = #{id}")
+    void updateChecksum(@Param("id") Long id, @Param("checksum") String checksum);
+
+    @Select("SELECT " + METADATA_COLUMNS + " FROM uploaded_files WHERE id = #{id}")
+    @Results(id = "lazyFileData", value = {
+            @Result(property = "id", column = "id", id = true),
+            @Result(property = "fileData", column = "id", javaType = byte[].class,
+                    one = @One(select = "findContentBytesById", fetchType = FetchType.LAZY))
+    })
+    Optional<FileData> findFileById(Long id);
+
+    @Select("SELECT file_data FROM uploaded_files WHERE id = #{id}")
+    byte[] findContentBytesById(Long id);
+
+    @Select("SELECT file_data FROM uploaded_files WHERE id = #{id}")
+    Blob findContentById(Long id);
+
+    @Select("SELECT " + METADATA_COLUMNS + " FROM uploaded_files WHERE id = #{id}")
+    Optional<FileMetadata> findMetadataById(Long id);
+
+    @Select("SELECT " + METADATA_COLUMNS + " FROM uploaded_files ORDER BY id DESC " +
+            "OFFSET #{offset} ROWS FETCH NEXT #{limit} ROWS ONLY")
+    List<FileMetadata> findMetadataPage(@Param("offset") long offset, @Param("limit") int limit);
+
+    @Select("SELECT COUNT(*) FROM uploaded_files")
+    long countFiles();
+
+    @Select("SELECT CASE WHEN EXISTS (SELECT 1 FROM uploaded_files WHERE id = #{id}) THEN 1 ELSE 0 END FROM dual")
+    boolean existsById(Long id);
+}
+```
+
+`insertFile(FileData)`는 `byte[]`를 직접 넣는 호출부가 없어져 삭제했습니다.
+
+#### application.yml (추가)
+
+```yaml
+mybatis:
+  configuration:
+    lazy-loading-enabled: true
+    # Only the accessed property triggers its nested select
+    aggressive-lazy-loading: false
+```
+
+### 4. **업로드 시 크기와 체크섬 저장**
+
+크기는 `MultipartFile.getSize()`로 INSERT할 때 저장합니다. 체크섬(SHA-256)은 `DigestInputStream`으로 BLOB에 쓰는 동안 함께 계산하고, INSERT 직후 같은 트랜잭션에서 저장합니다. 파일을 두 번 읽지 않습니다.
+
+#### FileUploadService.java (수정)
+
+```java
+import com.example.demo.handler.BlobContent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+@Service
+public class FileUploadService {
+
+    private static final int UPLOAD_BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    private FileMapper fileMapper;
+
+    @Transactional
+    public Long uploadFile(MultipartFile file) throws IOException {
+        FileData fileData = new FileData();
+        fileData.setFilename(file.getOriginalFilename());
+        fileData.setFileType(file.getContentType());
+
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(
+                new BufferedInputStream(file.getInputStream(), UPLOAD_BUFFER_SIZE), digest)) {
+            fileMapper.insertFileStream(fileData, new BlobContent(in, file.getSize()));
+        }
+        fileMapper.updateChecksum(fileData.getId(), HexFormat.of().formatHex(digest.digest()));
+        return fileData.getId();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
+```
+
+### 5. **목록 엔드포인트**
+
+#### FileDownloadService.java (추가)
+
+```java
+    private static final int MAX_PAGE_SIZE = 100;
+
+    public FilePage listFiles(int page, int size) {
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        int pageIndex = Math.max(page, 0);
+        List<FileMetadata> items = fileMapper.findMetadataPage((long) pageIndex * limit, limit);
+        return new FilePage(items, pageIndex, limit, fileMapper.countFiles());
+    }
+
+    public boolean exists(Long fileId) {
+        return fileMapper.existsById(fileId);
+    }
+```
+
+#### FileController.java (추가)
+
+```java
+    @GetMapping("/files")
+    public FilePage listFiles(@RequestParam(defaultValue = "0") int page,
+                              @RequestParam(defaultValue = "20") int size) {
+        return fileDownloadService.listFiles(page, size);
+    }
+
+    @GetMapping("/files/{id}")
+    public ResponseEntity<FileMetadata> getFileMetadata(@PathVariable Long id) {
+        return fileDownloadService.getMetadata(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+```
+
+업로드 응답도 저장된 파일의 id를 돌려주도록 바꿉니다.
+
+```java
+    @PostMapping("/upload")
+    public ResponseEntity<String> uploadFile(@RequestParam("file") MultipartFile file) {
+        try {
+            Long id = fileUploadService.uploadFile(file);
+            return ResponseEntity.status(HttpStatus.OK).body(String.valueOf(id));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("File upload failed");
+        }
+    }
+```
+
+### 설명
+
+1. **BLOB을 읽지 않는 조회**: 목록, 메타데이터 조회, 존재 여부 확인은 모두 일반 컬럼만 읽습니다. 다운로드 메타데이터(`findMetadataById`)도 이제 `DBMS_LOB.GETLENGTH` 대신 저장된 `file_size`를 사용합니다.
+2. **지연 로딩**: `findFileById`로 받은 `FileData`는 프록시 객체입니다. `getFileData()`를 호출할 때만 `findContentBytesById`가 실행되고, 다른 getter는 BLOB을 읽지 않습니다. 지연 로딩은 SQL 세션이 열려 있는 동안(트랜잭션 안)에만 동작합니다.
+3. **페이지 조회**: `ORDER BY id DESC`는 기본 키 인덱스를 역순으로 읽으므로 정렬 비용이 없습니다. 페이지 크기는 최대 100으로 제한합니다.
+4. **체크섬**: 업로드하는 동안 SHA-256을 계산하므로 추가 읽기가 없습니다. 다운로드한 파일의 무결성 확인이나 중복 확인에 사용할 수 있습니다.
+
+### 주의 사항
+
+- **깊은 페이지**: `OFFSET`은 건너뛰는 행도 읽기 때문에 수십만 건 뒤의 페이지는 느려집니다. 무한 스크롤처럼 순서대로 넘기는 화면이라면 `WHERE id < #{lastId} ORDER BY id DESC FETCH NEXT #{limit} ROWS ONLY` 방식(keyset)이 낫습니다.
+- **`HexFormat`**: JDK 17부터 사용할 수 있습니다.
+
+
+
+
+
+
+
+사용자들이 매달 같은 xlsx/csv 양식 파일을 반복해서 올리는데, `uploaded_files`는 업로드마다 BLOB을 하나씩 저장합니다. 내용이 같은 파일이 수십 번 저장되어 DB가 커지고 백업도 느려집니다. 파일 내용을 업로드하는 동안 계산한 SHA-256으로 저장하는 내용 주소(content-addressed) 저장소를 만들고, 참조 횟수(ref count)를 관리해서 중복 업로드는 메타데이터 INSERT만으로 끝나게 합니다. 또한 Oracle BLOB 대신 로컬 파일 시스템(샤딩된 디렉터리)에 내용을 저장하는 백엔드도 선택할 수 있게 합니다.
+
+### 1. **테이블**
+
+파일 내용은 `file_blobs`에 체크섬당 한 번만 저장하고, `uploaded_files`는 체크섬으로 이를 참조합니다. `storage`는 내용이 어느 백엔드에 있는지(`DB` 또는 `FS`)를 나타냅니다. `FS`인 행은 `content`가 비어 있습니다.
+
+```sql
+CREATE TABLE file_blobs (
+    checksum VARCHAR2(64) PRIMARY KEY,
+    file_size NUMBER(19) NOT NULL,
+    ref_count NUMBER(10) NOT NULL,
+    storage VARCHAR2(2) NOT NULL,
+    content BLOB,
+    created_at TIMESTAMP DEFAULT SYSTIMESTAMP NOT NULL
+);
+
+CREATE INDEX idx_file_blobs_unreferenced ON file_blobs (CASE WHEN ref_count = 0 THEN checksum END);
+```
+
+기존 데이터는 체크섬별로 한 행씩 옮긴 뒤 `uploaded_files.file_data`를 비웁니다.
+
+```sql
+INSERT INTO file_blobs (checksum, file_size, ref_count, storage, content)
+SELECT f.checksum, f.file_size, c.cnt, 'DB', f.file_data
+FROM uploaded_files f
+JOIN (SELECT checksum, MIN(id) AS first_id, COUNT(*) AS cnt
+      FROM uploaded_files GROUP BY checksum) c ON f.id = c.first_id;
+
+UPDATE uploaded_files SET file_data = NULL;
+
+ALTER TABLE uploaded_files ADD CONSTRAINT fk_uploaded_files_blob
+    FOREIGN KEY (checksum) REFERENCES file_blobs (checksum);
+```
+
+`file_data`를 비워도 LOB 세그먼트 공간은 바로 반환되지 않으므로, 이전 후에 `ALTER TABLE uploaded_files MODIFY LOB (file_data) (SHRINK SPACE)`를 실행합니다.
+
+### 2. **내용 저장소 백엔드**
+
+#### ContentStore.java
+
+```java
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+public interface ContentStore {
+
+    /** Value stored in file_blobs.storage for content kept by this backend. */
+    String backend();
+
+    /** Directory for upload staging files; must be on the same file system as the store for atomic moves. */
+    Path stagingDirectory();
+
+    /** Stores the staged file under the checksum. The staged file may be moved away. */
+    void save(String checksum, long size, Path staged) throws IOException;
+
+    boolean exists(String checksum);
+
+    void copy(String checksum, long offset, long length, OutputStream out) throws IOException;
+
+    void delete(String checksum) throws IOException;
+}
+```
+
+#### FileSystemContentStore.java
+
+체크섬 앞 4글자로 두 단계 디렉터리를 만들어(`ab/cd/abcd...`) 한 디렉터리에 파일이 너무 많이 모이지 않게 합니다. 스테이징 디렉터리는 저장소 루트 안에 두어, 저장은 같은 파일 시스템 안의 원자적 이름 변경으로 끝납니다.
+
+```java
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.regex.Pattern;
+
+@Component
+public class FileSystemContentStore implements ContentStore {
+
+    private static final Pattern CHECKSUM = Pattern.compile("[0-9a-f]{64}");
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final Path root;
+    private final Path staging;
+
+    public FileSystemContentStore(@Value("${file-store.root:./file-store}") String root) throws IOException {
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+        this.staging = Files.createDirectories(this.root.resolve(".staging"));
+    }
+
+    @Override
+    public String backend() {
+        return "FS";
+    }
+
+    @Override
+    public Path stagingDirectory() {
+        return staging;
+    }
+
+    @Override
+    public void save(String checksum, long size, Path staged) throws IOException {
+        Path target = pathOf(checksum);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(staged, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(staged, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public boolean exists(String checksum) {
+        return Files.exists(pathOf(checksum));
+    }
+
+    @Override
+    public void copy(String checksum, long offset, long length, OutputStream out) throws IOException {
+        try (SeekableByteChannel channel = Files.newByteChannel(pathOf(checksum))) {
+            channel.position(offset);
+            InputStream in = Channels.newInputStream(channel);
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1) {
+                    throw new EOFException("Stored file " + checksum + " is shorter than expected");
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    @Override
+    public void delete(String checksum) throws IOException {
+        Files.deleteIfExists(pathOf(checksum));
+    }
+
+    private Path pathOf(String checksum) {
+        if (!CHECKSUM.matcher(checksum).matches()) {
+            throw new IllegalArgumentException("Invalid checksum: " + checksum);
+        }
+        return root.resolve(checksum.substring(0, 2)).resolve(checksum.substring(2, 4)).resolve(checksum);
+    }
+}
+```
+
+#### BlobContentStore.java
+
+Oracle BLOB 백엔드입니다. 스테이징 파일을 앞에서 만든 `BlobContent`(`setBinaryStream`)로 `file_blobs.content`에 스트리밍합니다. 읽기는 앞의 다운로드와 같이 BLOB 로케이터에서 필요한 구간만 읽습니다.
+
+```java
+import com.example.demo.handler.BlobContent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Blob;
+import java.sql.SQLException;
+
+@Component
+public class BlobContentStore implements ContentStore {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    private FileBlobMapper fileBlobMapper;
+
+    @Override
+    public String backend() {
+        return "DB";
+    }
+
+    @Override
+    public Path stagingDirectory() {
+        return Paths.get(System.getProperty("java.io.tmpdir"));
+    }
+
+    @Override
+    public void save(String checksum, long size, Path staged) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(staged), COPY_BUFFER_SIZE)) {
+            fileBlobMapper.updateContent(checksum, new BlobContent(in, size));
+        }
+    }
+
+    @Override
+    public boolean exists(String checksum) {
+        return fileBlobMapper.hasContent(checksum);
+    }
+
+    @Override
+    public void copy(String checksum, long offset, long length, OutputStream out) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        Blob blob = fileBlobMapper.findContent(checksum);
+        if (blob == null) {
+            throw new IOException("Content " + checksum + " not found");
+        }
+        try (InputStream in = blob.getBinaryStream(offset + 1, length)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to read content " + checksum, e);
+        } finally {
+            try {
+                blob.free();
+            } catch (SQLException ignored) {
+                // The locator is released with the transaction anyway
+            }
+        }
+    }
+
+    @Override
+    public void delete(String checksum) {
+        // The BLOB is removed together with its file_blobs row
+    }
+}
+```
+
+#### FileBlobMapper.java
+
+```java
+import com.example.demo.handler.BlobContent;
+import org.apache.ibatis.annotations.*;
+
+import java.sql.Blob;
+import java.util.List;
+
+@Mapper
+public interface FileBlobMapper {
+
+    @Update("UPDATE file_blobs SET ref_count = ref_count + 1 WHERE checksum = #{checksum}")
+    int incrementRef(String checksum);
+
+    @Update("UPDATE file_blobs SET ref_count = ref_count - 1 WHERE checksum = #{checksum} AND ref_count > 0")
+    int decrementRef(String checksum);
+
+    @Insert("INSERT INTO file_blobs (checksum, file_size, ref_count, storage) VALUES (#{checksum}, #{size}, 1, #{storage})")
+    void insertBlob(@Param("checksum") String checksum, @Param("size") long size, @Param("storage") String storage);
+
+    @Update("UPDATE file_blobs SET content = #{content, jdbcType=BLOB, typeHandler=com.example.demo.handler.BlobContentTypeHandler} WHERE checksum = #{checksum}")
+    void updateContent(@Param("checksum") String checksum, @Param("content") BlobContent content);
+
+    @Select("SELECT storage FROM file_blobs WHERE checksum = #{checksum}")
+    String findStorage(String checksum);
+
+    @Select("SELECT CASE WHEN content IS NOT NULL THEN 1 ELSE 0 END FROM file_blobs WHERE checksum = #{checksum}")
+    boolean hasContent(String checksum);
+
+    @Select("SELECT content FROM file_blobs WHERE checksum = #{checksum}")
+    Blob findContent(String checksum);
+
+    /** Locks up to {@code limit} unreferenced rows; rows locked by other sessions are skipped. */
+    @Select("SELECT checksum, storage FROM file_blobs " +
+            "WHERE CASE WHEN ref_count = 0 THEN checksum END IS NOT NULL AND ROWNUM <= #{limit} " +
+            "FOR UPDATE SKIP LOCKED")
+    List<UnreferencedBlob> lockUnreferenced(int limit);
+
+    @Delete("DELETE FROM file_blobs WHERE checksum = #{checksum} AND ref_count = 0")
+    int deleteUnreferenced(String checksum);
+}
+```
+
+#### UnreferencedBlob.java
+
+```java
+public class UnreferencedBlob {
+    private String checksum;
+    private String storage;
+
+    // Getters and setters
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+
+    public String getStorage() {
+        return storage;
+    }
+
+    public void setStorage(String storage) {
+        this.storage = storage;
+    }
+}
+```
+
+### 3. **참조 횟수 관리**
+
+`retain`은 업로드 트랜잭션 안에서 호출됩니다.
+
+- 이미 있는 체크섬이면 참조 횟수만 올리고 스테이징 파일은 버립니다.
+- 없는 체크섬이면 `file_blobs` 행을 만들고 내용을 현재 백엔드에 저장합니다.
+- 같은 내용이 동시에 두 번 업로드되면 두 번째 INSERT는 기본 키 충돌로 실패하므로, 참조 횟수 증가로 다시 처리합니다.
+
+참조 횟수가 0이 된 내용은 바로 지우지 않고, 주기적인 정리 작업이 행을 잠근 뒤 삭제합니다. 삭제와 재업로드가 겹쳐도, 재업로드의 `incrementRef`가 행 잠금에서 기다렸다가 행이 없으면 새로 저장하므로 내용이 사라지지 않습니다.
+
+#### ContentAddressedStore.java
+
+```java
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+public class ContentAddressedStore {
+
+    private static final int PURGE_BATCH_SIZE = 500;
+
+    private final Map<String, ContentStore> storesByBackend;
+    private final ContentStore activeStore;
+
+    @Autowired
+    private FileBlobMapper fileBlobMapper;
+
+    public ContentAddressedStore(List<ContentStore> stores, @Value("${file-store.backend:DB}") String backend) {
+        this.storesByBackend = stores.stream().collect(Collectors.toMap(ContentStore::backend, Function.identity()));
+        this.activeStore = storesByBackend.get(backend.toUpperCase());
+        if (activeStore == null) {
+            throw new IllegalArgumentException("Unknown file-store.backend: " + backend);
+        }
+    }
+
+    public Path stagingDirectory() {
+        return activeStore.stagingDirectory();
+    }
+
+    /**
+     * Adds a reference to the content; stores it only if no upload with the same checksum exists.
+     *
+     * @return true if the content was new
+     */
+    @Transactional
+    public boolean retain(String checksum, long size, Path staged) throws IOException {
+        if (fileBlobMapper.incrementRef(checksum) > 0) {
+            // Duplicate: metadata only. Restore the content if an earlier purge removed it
+            ContentStore store = storeFor(fileBlobMapper.findStorage(checksum));
+            if (!store.exists(checksum)) {
+                store.save(checksum, size, staged);
+            }
+            return false;
+        }
+        try {
+            fileBlobMapper.insertBlob(checksum, size, activeStore.backend());
+        } catch (DuplicateKeyException e) {
+            // A concurrent upload of the same content inserted the row first
+            fileBlobMapper.incrementRef(checksum);
+            return false;
+        }
+        activeStore.save(checksum, size, staged);
+        return true;
+    }
+
+    @Transactional
+    public void release(String checksum) {
+        fileBlobMapper.decrementRef(checksum);
+    }
+
+    @Transactional(readOnly = true)
+    public void copy(String checksum, long offset, long length, OutputStream out) throws IOException {
+        storeFor(fileBlobMapper.findStorage(checksum)).copy(checksum, offset, length, out);
+    }
+
+    /** Deletes content that no upload references any more. */
+    @Scheduled(fixedDelayString = "${file-store.purge-interval-ms:3600000}")
+    @Transactional
+    public void purgeUnreferenced() {
+        for (UnreferencedBlob blob : fileBlobMapper.lockUnreferenced(PURGE_BATCH_SIZE)) {
+            try {
+                storeFor(blob.getStorage()).delete(blob.getChecksum());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            fileBlobMapper.deleteUnreferenced(blob.getChecksum());
+        }
+    }
+
+    private ContentStore storeFor(String backend) {
+        ContentStore store = backend == null ? null : storesByBackend.get(backend);
+        if (store == null) {
+            throw new IllegalStateException("No content store for backend " + backend);
+        }
+        return store;
+    }
+}
+```
+
+애플리케이션 클래스에 `@EnableScheduling`을 추가해야 정리 작업이 실행됩니다.
+
+### 4. **FileUploadService 수정**
+
+업로드 스트림을 스테이징 파일로 복사하면서 SHA-256을 계산합니다(`Files.copy`는 고정 크기 버퍼를 사용합니다). 체크섬을 알고 난 뒤에 저장소에 넘기므로, 중복 파일은 DB나 저장소 디렉터리에 한 바이트도 쓰지 않습니다.
+
+#### FileUploadService.java (수정)
+
+```java
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+@Service
+public class FileUploadService {
+
+    @Autowired
+    private FileMapper fileMapper;
+
+    @Autowired
+    private ContentAddressedStore contentStore;
+
+    @Transactional
+    public Long uploadFile(MultipartFile file) throws IOException {
+        Path staged = Files.createTempFile(contentStore.stagingDirectory(), "upload-", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            long size;
+            try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+                size = Files.copy(in, staged, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String checksum = HexFormat.of().formatHex(digest.digest());
+            contentStore.retain(checksum, size, staged);
+
+            FileData fileData = new FileData();
+            fileData.setFilename(file.getOriginalFilename());
+            fileData.setFileType(file.getContentType());
+            fileData.setFileSize(size);
+            fileData.setChecksum(checksum);
+            fileMapper.insertFileMetadata(fileData);
+            return fileData.getId();
+        } finally {
+            // Already moved away if the content was new and stored on the file system
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    @Transactional
+    public boolean deleteFile(Long id) {
+        return fileMapper.findMetadataById(id).map(metadata -> {
+            // A concurrent delete of the same id already released the reference
+            if (fileMapper.deleteById(id) != 1) {
+                return false;
+            }
+            contentStore.release(metadata.getChecksum());
+            return true;
+        }).orElse(false);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
+```
+
+#### FileMapper.java (수정)
+
+`insertFileStream`과 `updateChecksum`은 `insertFileMetadata`로 대체합니다. 지연 로딩되는 `fileData`(`@One` → `findContentBytesById`)는 삭제합니다. `storage='FS'`인 내용은 `file_blobs.content`가 NULL이라 SQL 조회로는 읽을 수 없고, 내용은 항상 `ContentAddressedStore`를 거쳐야 하기 때문입니다. `findFileById`는 메타데이터만 매핑합니다.
+
+```java
+    @Insert("INSERT INTO uploaded_files (filename, file_type, file_size, checksum) " +
+            "VALUES (#{filename}, #{fileType}, #{fileSize}, #{checksum})")
+    @Options(useGeneratedKeys = true, keyProperty = "id", keyColumn = "id")
+    void insertFileMetadata(FileData fileData);
+
+    @Delete("DELETE FROM uploaded_files WHERE id = #{id}")
+    int deleteById(Long id);
+
+    // Metadata only; the content is read through ContentAddressedStore
+    @Select("SELECT " + METADATA_COLUMNS + " FROM uploaded_files WHERE id = #{id}")
+    Optional<FileData> findFileById(Long id);
+```
+
+`findContentById`(`uploaded_files.file_data` 로케이터)와 `findContentBytesById`는 더 이상 사용하지 않으므로 삭제합니다. 같은 이유로 `FileData`의 `fileData` 필드와 getter/setter, 이를 돌려주던 `FileDownloadService.getFileById`도 삭제해서, 내용을 `byte[]`로 읽으려는 호출부가 남아 있으면 컴파일 단계에서 드러나게 합니다. 지연 로딩을 쓰는 매핑이 없어지므로 앞에서 추가한 `lazy-loading-enabled`/`aggressive-lazy-loading` 설정도 필요 없습니다.
+
+### 5. **다운로드 수정**
+
+다운로드는 파일 id 대신 체크섬으로 저장소에서 읽습니다. `Range` 처리는 그대로입니다.
+
+#### FileDownloadService.java (수정)
+
+```java
+    @Autowired
+    private ContentAddressedStore contentStore;
+
+    public void copyContent(FileMetadata file, long offset, long length, OutputStream out) throws IOException {
+        contentStore.copy(file.getChecksum(), offset, length, out);
+    }
+```
+
+#### FileController.java (수정)
+
+```java
+        long offset = start;
+        long count = length;
+        return response.body(out -> fileDownloadService.copyContent(file, offset, count, out));
+```
+
+```java
+    @DeleteMapping("/files/{id}")
+    public ResponseEntity<Void> deleteFile(@PathVariable Long id) {
+        return fileUploadService.deleteFile(id)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+```
+
+ETag는 이제 내용 체크섬(`"\"" + file.getChecksum() + "\""`)을 사용합니다. 내용이 같으면 ETag도 같으므로 `If-Range` 비교가 더 정확해집니다.
+
+#### application.yml (추가)
+
+```yaml
+file-store:
+  # DB: Oracle BLOB (file_blobs.content), FS: sharded directories under root
+  backend: FS
+  root: /var/data/file-store
+  purge-interval-ms: 3600000
+```
+
+### 설명
+
+1. **중복 제거**: 같은 내용의 업로드는 `file_blobs`의 `ref_count`만 1 올리고 `uploaded_files`에 메타데이터 한 행을 넣습니다. 매달 같은 양식을 올려도 내용은 한 번만 저장됩니다.
+2. **스트리밍 중 체크섬 계산**: 업로드 스트림은 `DigestInputStream`을 거쳐 스테이징 파일로 한 번만 복사됩니다. 힙에는 복사 버퍼만 남습니다.
+3. **파일 시스템 백엔드**: `FS`를 선택하면 새 내용은 `root/ab/cd/<checksum>`에 저장되고, DB에는 메타데이터와 참조 횟수만 남습니다. 스테이징 파일이 같은 파일 시스템에 있으므로 저장은 이름 변경 한 번입니다. DB가 작아지고 백업이 빨라지며, 파일은 `rsync` 등으로 따로 백업합니다(내용이 바뀌지 않으므로 증분 백업이 잘 됩니다).
+4. **백엔드 혼용**: 행마다 `storage`를 기록하므로 백엔드를 `DB`에서 `FS`로 바꿔도 기존 내용은 계속 BLOB에서 읽고, 새 내용만 파일로 저장됩니다.
+5. **정리 작업**: `purgeUnreferenced`는 `FOR UPDATE SKIP LOCKED`로 참조가 0인 행을 잠그고 내용과 행을 지웁니다. 여러 서버에서 동시에 실행돼도 같은 행을 두 번 처리하지 않습니다.
+
+### 주의 사항
+
+- **롤백과 파일**: 업로드 트랜잭션이 파일 이동 후에 롤백되면 참조되지 않는 파일이 남습니다. 같은 내용이 다시 올라오면 덮어쓰므로 문제가 되지 않지만, 디스크 사용량을 정확히 맞추려면 `file_blobs`에 없는 파일을 가끔 정리합니다.
+- **해시 충돌**: SHA-256 충돌은 현실적으로 발생하지 않는다고 보고, 내용 비교 없이 체크섬만으로 같은 파일로 처리합니다.
+- **공유 저장소**: 서버가 여러 대면 `file-store.root`는 모든 서버가 공유하는 디스크(NFS 등)여야 합니다.
+- **동시 삭제**: 같은 id에 대한 삭제 요청 두 개가 동시에 메타데이터를 읽을 수 있습니다. `deleteById`가 실제로 행을 지웠을 때(1을 돌려줄 때)만 `release`를 호출하므로, 참조 횟수가 두 번 줄어 다른 파일이 쓰는 내용이 지워지는 일이 없습니다.
+
+
+
+
+
+
+
+CSV 업로드는 압축하면 5~10배 작아지지만 `FileUploadService`는 원본 그대로 저장합니다. 업로드할 때 스트리밍하면서 압축하고, 다운로드할 때 스트리밍하면서 압축을 푸는 압축 단계를 앞의 내용 주소 저장소에 추가합니다. 압축 방식(gzip/deflate, 라이브러리가 있으면 zstd)은 교체할 수 있게 만듭니다. 클라이언트가 `Accept-Encoding: gzip`을 보내면 저장된 압축 바이트를 그대로 보내서 DB 저장 공간과 네트워크 전송량을 함께 줄입니다.
+
+### 1. **테이블 수정**
+
+체크섬과 `file_size`는 계속 원본 내용 기준입니다. 같은 내용이면 압축 여부와 관계없이 중복으로 처리됩니다. 압축 방식과 저장된(압축된) 크기는 `file_blobs`에 기록합니다.
+
+```sql
+ALTER TABLE file_blobs ADD (
+    encoding VARCHAR2(10) DEFAULT 'identity' NOT NULL,
+    stored_size NUMBER(19)
+);
+
+UPDATE file_blobs SET stored_size = file_size WHERE stored_size IS NULL;
+```
+
+### 2. **압축 코덱**
+
+코덱 이름은 HTTP `Content-Encoding` 토큰과 같게 정합니다. 그래서 저장된 바이트를 그대로 응답으로 보낼 수 있습니다.
+
+#### PayloadCodec.java
+
+```java
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public interface PayloadCodec {
+
+    String IDENTITY = "identity";
+
+    /** Content-Encoding token, also stored in file_blobs.encoding. */
+    String name();
+
+    OutputStream compress(OutputStream out) throws IOException;
+
+    InputStream decompress(InputStream in) throws IOException;
+}
+```
+
+#### IdentityCodec.java / GzipCodec.java / DeflateCodec.java
+
+```java
+@Component
+public class IdentityCodec implements PayloadCodec {
+
+    @Override
+    public String name() {
+        return IDENTITY;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out) {
+        return out;
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) {
+        return in;
+    }
+}
+```
+
+```java
+@Component
+public class GzipCodec implements PayloadCodec {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Override
+    public String name() {
+        return "gzip";
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out) throws IOException {
+        return new GZIPOutputStream(out, BUFFER_SIZE);
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) throws IOException {
+        return new GZIPInputStream(in, BUFFER_SIZE);
+    }
+}
+```
+
+HTTP의 `deflate`는 zlib 형식(헤더 포함)이며, `DeflaterOutputStream`의 기본 형식과 같습니다. 생성자에 직접 넘긴 `Deflater`/`Inflater`는 스트림의 `close()`가 `end()`를 호출하지 않아 네이티브 메모리가 GC 때까지 남으므로, `close()`를 재정의해서 직접 해제합니다.
+
+```java
+@Component
+public class DeflateCodec implements PayloadCodec {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Override
+    public String name() {
+        return "deflate";
+    }
+
+    // A Deflater/Inflater passed in is not ended by close(); end it here to free its native memory
+    @Override
+    public OutputStream compress(OutputStream out) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) {
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+}
+```
+
+#### ZstdCodec.java
+
+zstd는 JDK에 없으므로, 순수 Java 구현인 aircompressor(`io.airlift:aircompressor`)가 클래스패스에 있을 때만 등록합니다.
+
+```java
+import io.airlift.compress.zstd.ZstdInputStream;
+import io.airlift.compress.zstd.ZstdOutputStream;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+@Component
+@ConditionalOnClass(name = "io.airlift.compress.zstd.ZstdOutputStream")
+public class ZstdCodec implements PayloadCodec {
+
+    @Override
+    public String name() {
+        return "zstd";
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out) throws IOException {
+        return new ZstdOutputStream(out);
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) {
+        return new ZstdInputStream(in);
+    }
+}
+```
+
+```xml
+<dependency>
+    <groupId>io.airlift</groupId>
+    <artifactId>aircompressor</artifactId>
+    <version>0.25</version>
+</dependency>
+```
+
+#### PayloadCodecs.java
+
+업로드할 파일의 압축 여부를 정합니다. CSV/TSV/TXT와 바이너리 `.xls`는 잘 압축되지만, `.xlsx`는 이미 zip 파일이라 다시 압축해도 거의 줄지 않으므로 그대로 저장합니다. 윈도우에서는 CSV도 `application/vnd.ms-excel`로 올라오는 경우가 많아서 확장자를 먼저 봅니다.
+
+```java
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Component
+public class PayloadCodecs {
+
+    private static final Set<String> COMPRESSIBLE_EXTENSIONS = Set.of("csv", "tsv", "txt", "xls");
+    private static final Set<String> STORED_EXTENSIONS = Set.of("xlsx", "xlsm", "zip", "gz");
+
+    private final Map<String, PayloadCodec> codecsByName;
+    private final PayloadCodec uploadCodec;
+
+    public PayloadCodecs(List<PayloadCodec> codecs, @Value("${file-store.compression:gzip}") String compression) {
+        this.codecsByName = codecs.stream().collect(Collectors.toMap(PayloadCodec::name, Function.identity()));
+        this.uploadCodec = get(compression);
+    }
+
+    public PayloadCodec get(String name) {
+        PayloadCodec codec = codecsByName.get(name);
+        if (codec == null) {
+            throw new IllegalArgumentException("Unsupported encoding: " + name);
+        }
+        return codec;
+    }
+
+    /** Codec for a new upload: the configured codec for compressible files, identity otherwise. */
+    public PayloadCodec forUpload(String contentType, String filename) {
+        String extension = extensionOf(filename);
+        if (STORED_EXTENSIONS.contains(extension)) {
+            return get(PayloadCodec.IDENTITY);
+        }
+        if (COMPRESSIBLE_EXTENSIONS.contains(extension) || (contentType != null && contentType.startsWith("text/"))) {
+            return uploadCodec;
+        }
+        return get(PayloadCodec.IDENTITY);
+    }
+
+    private static String extensionOf(String filename) {
+        int dot = filename == null ? -1 : filename.lastIndexOf('.');
+        return dot < 0 ? "" : filename.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+}
+```
+
+### 3. **업로드 수정**
+
+체크섬은 원본 바이트로 계산하고, 같은 스트림을 바로 코덱에 넣어 압축된 바이트만 스테이징 파일에 씁니다. 파일은 한 번만 읽습니다.
+
+#### FileUploadService.java (수정)
+
+```java
+    @Autowired
+    private PayloadCodecs payloadCodecs;
+
+    @Transactional
+    public Long uploadFile(MultipartFile file) throws IOException {
+        PayloadCodec codec = payloadCodecs.forUpload(file.getContentType(), file.getOriginalFilename());
+        Path staged = Files.createTempFile(contentStore.stagingDirectory(), "upload-", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            long size;
+            try (InputStream in = new DigestInputStream(file.getInputStream(), digest);
+                 OutputStream out = codec.compress(new BufferedOutputStream(Files.newOutputStream(staged), UPLOAD_BUFFER_SIZE))) {
+                size = in.transferTo(out);
+            }
+            String checksum = HexFormat.of().formatHex(digest.digest());
+            contentStore.retain(checksum, size, codec.name(), Files.size(staged), staged);
+
+            FileData fileData = new FileData();
+            fileData.setFilename(file.getOriginalFilename());
+            fileData.setFileType(file.getContentType());
+            fileData.setFileSize(size);
+            fileData.setChecksum(checksum);
+            fileMapper.insertFileMetadata(fileData);
+            return fileData.getId();
+        } finally {
+            // Already moved away if the content was new and stored on the file system
+            Files.deleteIfExists(staged);
+        }
+    }
+```
+
+`UPLOAD_BUFFER_SIZE`(64 KB) 상수를 다시 추가합니다.
+
+#### ContentAddressedStore.java (수정)
+
+새 내용일 때만 압축 방식과 저장 크기를 기록합니다. 압축을 풀면서 읽는 `copyDecoded`를 추가합니다. 백엔드에는 저장된 전체 내용을 스트림으로 여는 `open(checksum)`을 추가합니다(파일 시스템은 `Files.newInputStream`, BLOB은 `Blob.getBinaryStream()`을 닫을 때 `free()`하도록 감싼 스트림).
+
+```java
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    @Transactional
+    public boolean retain(String checksum, long size, String encoding, long storedSize, Path staged) throws IOException {
+        if (fileBlobMapper.incrementRef(checksum) > 0) {
+            // Duplicate: metadata only. Restore the content if an earlier purge removed it
+            StoredBlob existing = fileBlobMapper.findBlob(checksum);
+            ContentStore store = storeFor(existing.getStorage());
+            if (!store.exists(checksum)) {
+                store.save(checksum, storedSize, staged);
+                fileBlobMapper.updateEncoding(checksum, encoding, storedSize);
+            }
+            return false;
+        }
+        try {
+            fileBlobMapper.insertBlob(checksum, size, activeStore.backend(), encoding, storedSize);
+        } catch (DuplicateKeyException e) {
+            // A concurrent upload of the same content inserted the row first
+            fileBlobMapper.incrementRef(checksum);
+            return false;
+        }
+        activeStore.save(checksum, storedSize, staged);
+        return true;
+    }
+
+    /** Copies a slice of the stored (possibly compressed) bytes. */
+    @Transactional(readOnly = true)
+    public void copy(String checksum, long offset, long length, OutputStream out) throws IOException {
+        storeFor(fileBlobMapper.findStorage(checksum)).copy(checksum, offset, length, out);
+    }
+
+    /** Copies a slice of the original content, decompressing while streaming. */
+    @Transactional(readOnly = true)
+    public void copyDecoded(String checksum, PayloadCodec codec, long offset, long length, OutputStream out) throws IOException {
+        ContentStore store = storeFor(fileBlobMapper.findStorage(checksum));
+        // Opened separately so the stored stream is closed even if the codec fails on its header
+        try (InputStream stored = store.open(checksum);
+             InputStream in = codec.decompress(stored)) {
+            in.skipNBytes(offset);
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1) {
+                    throw new EOFException("Content " + checksum + " is shorter than expected");
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+```
+
+#### ContentStore.java (추가)
+
+```java
+    /** Opens the whole stored (possibly compressed) content; the caller closes the stream. */
+    InputStream open(String checksum) throws IOException;
+```
+
+#### FileSystemContentStore.java (추가)
+
+```java
+    @Override
+    public InputStream open(String checksum) throws IOException {
+        return Files.newInputStream(pathOf(checksum));
+    }
+```
+
+#### BlobContentStore.java (추가)
+
+로케이터는 `copy`와 같이 스트림을 다 쓴 뒤 `free()`로 해제해야 하므로, 닫을 때 해제하는 스트림으로 감싸서 돌려줍니다. `copyDecoded`의 `@Transactional` 안에서 열고 닫으므로 스트림을 읽는 동안 연결이 유지됩니다.
+
+```java
+    @Override
+    public InputStream open(String checksum) throws IOException {
+        Blob blob = fileBlobMapper.findContent(checksum);
+        if (blob == null) {
+            throw new IOException("Content " + checksum + " not found");
+        }
+        InputStream in;
+        try {
+            in = blob.getBinaryStream();
+        } catch (SQLException e) {
+            free(blob);
+            throw new IOException("Failed to read content " + checksum, e);
+        }
+        return new FilterInputStream(new BufferedInputStream(in, COPY_BUFFER_SIZE)) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    free(blob);
+                }
+            }
+        };
+    }
+
+    private static void free(Blob blob) {
+        try {
+            blob.free();
+        } catch (SQLException ignored) {
+            // The locator is released with the transaction anyway
+        }
+    }
+```
+
+`java.io.FilterInputStream` import를 추가합니다.
+
+#### FileBlobMapper.java (수정)
+
+```java
+    @Insert("INSERT INTO file_blobs (checksum, file_size, ref_count, storage, encoding, stored_size) " +
+            "VALUES (#{checksum}, #{size}, 1, #{storage}, #{encoding}, #{storedSize})")
+    void insertBlob(@Param("checksum") String checksum, @Param("size") long size, @Param("storage") String storage,
+                    @Param("encoding") String encoding, @Param("storedSize") long storedSize);
+
+    @Update("UPDATE file_blobs SET encoding = #{encoding}, stored_size = #{storedSize} WHERE checksum = #{checksum}")
+    void updateEncoding(@Param("checksum") String checksum, @Param("encoding") String encoding, @Param("storedSize") long storedSize);
+
+    @Select("SELECT checksum, storage, encoding, stored_size FROM file_blobs WHERE checksum = #{checksum}")
+    StoredBlob findBlob(String checksum);
+```
+
+`StoredBlob`은 `checksum`, `storage`, `encoding`, `storedSize` 필드를 가진 단순 객체입니다.
+
+#### FileMapper.java (수정)
+
+다운로드 메타데이터는 `file_blobs`와 조인해서 압축 방식과 저장 크기도 함께 읽습니다. `FileMetadata`에 `encoding`, `storedSize` 필드를 추가합니다.
+
+```java
+    @Select("SELECT f.id, f.filename, f.file_type, f.file_size, f.checksum, f.created_at, b.encoding, b.stored_size " +
+            "FROM uploaded_files f JOIN file_blobs b ON b.checksum = f.checksum WHERE f.id = #{id}")
+    Optional<FileMetadata> findMetadataById(Long id);
+```
+
+### 4. **다운로드 수정**
+
+- 저장된 내용이 압축되어 있고 클라이언트가 그 인코딩을 받을 수 있으면(`Accept-Encoding`), 저장된 바이트를 그대로 보내고 `Content-Encoding`을 붙입니다. 이때 응답 표현은 압축된 바이트이므로 `Content-Length`와 `Range`도 `stored_size` 기준입니다.
+- 클라이언트가 받을 수 없으면 압축을 풀면서 보냅니다. `Content-Length`는 원본 크기(`file_size`)이고, `Range`는 압축을 푼 스트림에서 앞부분을 건너뛰어 처리합니다.
+- 두 표현의 ETag가 달라야 `If-Range`와 캐시가 섞이지 않으므로, 압축 표현에는 인코딩 이름을 붙입니다. 압축된 내용은 `Vary: Accept-Encoding`도 붙입니다.
+
+#### FileDownloadService.java (수정)
+
+```java
+    @Autowired
+    private PayloadCodecs payloadCodecs;
+
+    public void copyStored(FileMetadata file, long offset, long length, OutputStream out) throws IOException {
+        contentStore.copy(file.getChecksum(), offset, length, out);
+    }
+
+    public void copyDecoded(FileMetadata file, long offset, long length, OutputStream out) throws IOException {
+        contentStore.copyDecoded(file.getChecksum(), payloadCodecs.get(file.getEncoding()), offset, length, out);
+    }
+```
+
+#### FileController.java (수정)
+
+```java
+    @GetMapping("/download/{id}")
+    public ResponseEntity<StreamingResponseBody> downloadFile(@PathVariable Long id, @RequestHeader HttpHeaders requestHeaders) {
+        Optional<FileMetadata> metadata = fileDownloadService.getMetadata(id);
+        if (!metadata.isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+        FileMetadata file = metadata.get();
+
+        // Send the stored bytes as-is when the client accepts their encoding
+        boolean encoded = !PayloadCodec.IDENTITY.equals(file.getEncoding());
+        boolean passThrough = encoded && acceptsEncoding(requestHeaders, file.getEncoding());
+        long size = passThrough ? file.getStoredSize() : file.getFileSize();
+        String etag = "\"" + file.getChecksum() + (passThrough ? "-" + file.getEncoding() : "") + "\"";
+
+        long start = 0;
+        long length = size;
+        boolean partial = false;
+        List<HttpRange> ranges = parseRanges(requestHeaders);
+        if (ranges.size() == 1 && ifRangeMatches(requestHeaders, etag)) {
+            HttpRange range = ranges.get(0);
+            try {
+                start = range.getRangeStart(size);
+                length = range.getRangeEnd(size) - start + 1;
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                        .build();
+            }
+            partial = true;
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(partial ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK)
+                .contentType(contentTypeOf(file.getFileType()))
+                .contentLength(length)
+                .eTag(etag)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.CONTENT_DISPOSITION, contentDispositionOf(file.getFilename()));
+        if (partial) {
+            response.header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (start + length - 1) + "/" + size);
+        }
+        if (encoded) {
+            response.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        if (passThrough) {
+            response.header(HttpHeaders.CONTENT_ENCODING, file.getEncoding());
+        }
+
+        long offset = start;
+        long count = length;
+        boolean decode = encoded && !passThrough;
+        return response.body(out -> {
+            if (decode) {
+                fileDownloadService.copyDecoded(file, offset, count, out);
+            } else {
+                fileDownloadService.copyStored(file, offset, count, out);
+            }
+        });
+    }
+
+    // RFC 9110: an explicit coding overrides "*", q=0 means not acceptable, x-gzip is an alias of gzip
+    private static boolean acceptsEncoding(HttpHeaders requestHeaders, String encoding) {
+        Double explicit = null;
+        Double wildcard = null;
+        for (String value : requestHeaders.getValuesAsList(HttpHeaders.ACCEPT_ENCODING)) {
+            String[] parts = value.split(";");
+            String coding = parts[0].trim();
+            if ("x-gzip".equalsIgnoreCase(coding)) {
+                coding = "gzip";
+            }
+            if (coding.equalsIgnoreCase(encoding)) {
+                explicit = Math.max(explicit == null ? 0 : explicit, qualityOf(parts));
+            } else if ("*".equals(coding)) {
+                wildcard = qualityOf(parts);
+            }
+        }
+        Double quality = explicit != null ? explicit : wildcard;
+        return quality != null && quality > 0;
+    }
+
+    // Weight of the q parameter; 1 when absent, 0 when malformed
+    private static double qualityOf(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String[] param = parts[i].split("=", 2);
+            if (param.length == 2 && param[0].trim().equalsIgnoreCase("q")) {
+                try {
+                    return Double.parseDouble(param[1].trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+```
+
+#### application.yml (추가)
+
+```yaml
+file-store:
+  # identity, gzip, deflate or zstd (zstd needs aircompressor on the classpath)
+  compression: gzip
+```
+
+### 설명
+
+1. **업로드**: 업로드 스트림 → `DigestInputStream`(원본 SHA-256) → 코덱 압축 → 스테이징 파일 순서로 한 번에 흐릅니다. 힙에는 버퍼만 남고, 저장소에는 압축된 바이트만 저장됩니다.
+2. **중복 제거와의 관계**: 체크섬은 원본 기준이므로 압축 설정을 바꿔도 같은 내용은 같은 것으로 처리됩니다. 이미 저장된 내용은 처음 저장할 때의 압축 방식을 유지하고, 행마다 `encoding`을 기록하므로 설정을 바꿔도 예전 내용을 읽을 수 있습니다.
+3. **그대로 전달**: 대부분의 브라우저와 `curl --compressed`는 `Accept-Encoding: gzip`을 보내므로, gzip으로 저장된 CSV는 DB에서 읽은 압축 바이트를 그대로 전송합니다. 서버는 압축을 풀지도, 다시 압축하지도 않습니다.
+4. **압축 해제 전달**: `Accept-Encoding`이 없는 클라이언트에는 압축을 풀면서 보냅니다. 원본 크기를 알고 있으므로 `Content-Length`는 계속 정확합니다. 이 경우 `Range`는 앞부분을 압축 해제하면서 건너뛰므로, 오프셋이 클수록 느려집니다.
+5. **xlsx**: 이미 압축된 형식이라 `identity`로 저장하며, 동작은 앞의 다운로드와 같습니다.
+
+### 주의 사항
+
+- **서버 응답 압축**: `server.compression.enabled`를 켜 두었더라도 Tomcat은 이미 `Content-Encoding`이 있는 응답을 다시 압축하지 않습니다. 다만 압축을 풀어서 보내는 응답이 그 설정 때문에 다시 압축될 수는 있습니다. 이 경우 해당 경로를 압축 대상 MIME 타입에서 빼거나 `Accept-Encoding`이 없는 클라이언트에만 해당된다는 점을 감안합니다.
+- **내용 읽기**: 저장된 바이트는 압축되어 있을 수 있으므로 `byte[]`로 돌려주는 접근자는 두지 않습니다(앞에서 lazy `fileData`를 삭제했습니다). 원본은 `copyDecoded`처럼 `PayloadCodecs`로 풀면서 읽습니다.
+- **`Accept-Encoding`**: 각 항목의 `q` 값을 숫자로 읽습니다. `gzip;q=0`처럼 0이면 거부로 보고, 명시된 인코딩이 없으면 `*`의 값을 따르며, `x-gzip`은 `gzip`과 같게 취급합니다.
+- **zstd 버전**: `ZstdOutputStream`은 aircompressor 0.22 이상에 있습니다. HTTP `zstd` 인코딩을 지원하는 클라이언트가 아직 적어서, zstd로 저장하면 대부분 압축 해제 경로로 전송됩니다.
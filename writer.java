@@ -3486,3 +3486,6962 @@ public class FileDownloadController {
     }
 }
 
+
+
+
+
+
+
+대용량 CSV 파일(수 GB)을 `CsvUpdater.updateCsv`로 업데이트하면 `reader.readAll()`이 파일 전체를 `allRows`에 올리기 때문에 힙 메모리가 부족해집니다. 업데이트할 데이터(`List<Map<String, String>>`)만 메모리에 인덱싱하고, 원본 CSV는 한 줄씩 읽으면서 바로 임시 파일에 쓰는 스트리밍 방식으로 바꾸면 메모리 사용량이 파일 크기가 아니라 업데이트 배치 크기에만 비례하게 됩니다.
+
+### 스트리밍 CSV 업데이트 함수
+
+처리 순서는 다음과 같습니다.
+
+1. 업데이트 데이터를 `comparisonKey` 값(소문자)으로 인덱싱합니다.
+2. 원본 CSV의 헤더만 먼저 읽고, 업데이트 데이터에 있는 새 컬럼을 헤더 뒤에 추가합니다.
+3. 원본 CSV를 한 줄씩 읽어 키가 일치하면 그 자리에서 값을 병합한 뒤 임시 파일에 씁니다.
+4. 원본에 없던 키는 마지막에 새 행으로 추가합니다.
+5. 임시 파일을 원본 파일 위치로 원자적으로(`ATOMIC_MOVE`) 이동합니다.
+
+```java
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+public class CsvUpdater {
+
+    public static void updateCsvStreaming(String filePath, String keyColumn, String comparisonKey, List<Map<String, String>> data) throws IOException {
+        // Same charset as the FileReader/FileWriter used by updateCsv
+        updateCsvStreaming(filePath, keyColumn, comparisonKey, data, Charset.defaultCharset());
+    }
+
+    public static void updateCsvStreaming(String filePath, String keyColumn, String comparisonKey, List<Map<String, String>> data, Charset charset) throws IOException {
+        Path source = Paths.get(filePath).toAbsolutePath();
+        Path temp = Files.createTempFile(source.getParent(), source.getFileName().toString(), ".tmp");
+
+        // Index update data by key (only the update batch is kept in memory)
+        Map<String, Map<String, String>> updatesByKey = new LinkedHashMap<>();
+        for (Map<String, String> row : data) {
+            String keyColumnValue = row.get(comparisonKey);
+            if (keyColumnValue == null) {
+                continue;
+            }
+            updatesByKey.computeIfAbsent(keyColumnValue.toLowerCase(), k -> new LinkedHashMap<>()).putAll(row);
+        }
+
+        try (CSVReader reader = new CSVReader(Files.newBufferedReader(source, charset));
+             CSVWriter writer = new CSVWriter(Files.newBufferedWriter(temp, charset))) {
+
+            // Read header only and add new columns from the update data
+            String[] header = reader.readNext();
+            if (header == null) {
+                header = new String[0];
+            }
+            Map<String, Integer> headerIndexMap = new HashMap<>();
+            List<String> newHeader = new ArrayList<>(Arrays.asList(header));
+            for (int i = 0; i < header.length; i++) {
+                headerIndexMap.putIfAbsent(header[i].toLowerCase(), i);
+            }
+            for (Map<String, String> row : updatesByKey.values()) {
+                for (String columnName : row.keySet()) {
+                    if (!headerIndexMap.containsKey(columnName.toLowerCase())) {
+                        headerIndexMap.put(columnName.toLowerCase(), newHeader.size());
+                        newHeader.add(columnName);
+                    }
+                }
+            }
+            int columnCount = newHeader.size();
+            writer.writeNext(newHeader.toArray(new String[0]));
+
+            // Stream existing rows, merging matches on the fly
+            Integer keyIndex = headerIndexMap.get(keyColumn.toLowerCase());
+            Set<String> matchedKeys = new HashSet<>();
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                if (keyIndex == null) {
+                    throw new IllegalArgumentException("Column " + keyColumn + " not found");
+                }
+                String[] outRow = row.length < columnCount ? Arrays.copyOf(row, columnCount) : row;
+                if (keyIndex < row.length && row[keyIndex] != null) {
+                    String keyColumnValue = row[keyIndex].toLowerCase();
+                    Map<String, String> update = updatesByKey.get(keyColumnValue);
+                    if (update != null) {
+                        mergeRow(outRow, update, headerIndexMap);
+                        matchedKeys.add(keyColumnValue);
+                    }
+                }
+                writer.writeNext(outRow);
+            }
+
+            // Append rows whose key was not found in the file
+            for (Map.Entry<String, Map<String, String>> entry : updatesByKey.entrySet()) {
+                if (!matchedKeys.contains(entry.getKey())) {
+                    String[] newRow = new String[columnCount];
+                    mergeRow(newRow, entry.getValue(), headerIndexMap);
+                    writer.writeNext(newRow);
+                }
+            }
+        } catch (CsvValidationException e) {
+            Files.deleteIfExists(temp);
+            throw new IOException("Invalid CSV line in " + filePath, e);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        // Replace the original file with the updated one
+        try {
+            Files.move(temp, source, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, source, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void mergeRow(String[] row, Map<String, String> update, Map<String, Integer> headerIndexMap) {
+        for (Map.Entry<String, String> entry : update.entrySet()) {
+            row[headerIndexMap.get(entry.getKey().toLowerCase())] = entry.getValue();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<Map<String, String>> newData = new ArrayList<>();
+        Map<String, String> row1 = new HashMap<>();
+        row1.put("uid", "1");
+        row1.put("phone", "123-456-7890");
+        newData.add(row1);
+
+        Map<String, String> row2 = new HashMap<>();
+        row2.put("uid", "3");
+        row2.put("fullname", "Alice Johnson");
+        row2.put("email", "alice.johnson@example.com");
+        newData.add(row2);
+
+        updateCsvStreaming("data.csv", "id", "uid", newData);
+    }
+}
+```
+
+### 설명
+
+1. **업데이트 데이터 인덱싱**:
+   - `updatesByKey`는 `comparisonKey` 값을 소문자로 바꾼 키로 업데이트 데이터를 모아 둡니다. 같은 키가 여러 번 나오면 뒤의 값으로 병합됩니다.
+   - 메모리에 남는 것은 이 인덱스뿐이므로 원본 파일이 3~8 GB여도 힙 사용량은 업데이트 배치 크기로 제한됩니다.
+
+2. **헤더 먼저 확정**:
+   - 스트리밍으로 쓰려면 첫 줄(헤더)을 쓰기 전에 최종 컬럼 목록을 알아야 합니다. 그래서 업데이트 데이터의 키를 먼저 훑어 새 컬럼을 헤더 뒤에 붙입니다.
+   - 기존 행은 `Arrays.copyOf`로 길이만 맞춘 뒤 바로 쓰기 때문에 전체 행을 다시 복사하는 작업이 없습니다.
+
+3. **임시 파일과 원자적 이동**:
+   - 결과는 같은 디렉터리의 임시 파일에 쓰고, 끝나면 `Files.move(..., ATOMIC_MOVE)`로 원본을 교체합니다. 중간에 실패하면 임시 파일만 지우므로 원본 파일은 그대로 남습니다.
+   - 파일 시스템이 원자적 이동을 지원하지 않으면 일반 `REPLACE_EXISTING` 이동으로 대체합니다.
+
+4. **인코딩**:
+   - 기본 오버로드는 기존 `FileReader`/`FileWriter`와 같은 플랫폼 기본 인코딩(`Charset.defaultCharset()`)을 사용하므로, Windows에서 MS949로 저장된 기존 파일도 그대로 읽힙니다.
+   - 파일 인코딩이 플랫폼과 다르면 `Charset`을 받는 오버로드로 명시합니다(예: `StandardCharsets.UTF_8`).
+
+기존 `updateCsv`와 결과는 동일하지만, 키 컬럼 값이 같은 행이 원본에 여러 개 있으면 마지막 행만이 아니라 모든 행이 업데이트된다는 점이 다릅니다.
+
+
+
+
+
+
+
+`CsvUpdater.updateCsv`는 업데이트 중 처음 보는 컬럼을 만날 때마다 `allRows`의 모든 행에 `Arrays.copyOf`를 호출합니다. 20만 행에 새 컬럼이 30개면 600만 번의 배열 복사가 일어납니다. 업데이트 데이터에서 최종 헤더를 먼저 확정(schema-first)하고, 실제로 값을 쓰는 행만 한 번 늘리도록 바꾸면 `행 수 × 새 컬럼 수` 항이 없어집니다. 파일 전체를 읽고 쓰는 `O(행 수)` 비용은 그대로 남습니다.
+
+### 1. 스키마 우선 CSV 업데이트 함수
+
+기존 행 배열은 그대로 두고, 업데이트되는 행만 최종 컬럼 수로 한 번 복사합니다. 나머지 행은 파일에 쓸 때 길이만 맞춥니다.
+
+#### CsvUpdater.java
+
+```java
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvException;
+
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.*;
+
+public class CsvUpdater {
+
+    public static void updateCsv(String filePath, String keyColumn, String comparisonKey, List<Map<String, String>> data) throws IOException, CsvException {
+        List<String[]> allRows;
+        try (CSVReader reader = new CSVReader(new FileReader(filePath))) {
+            allRows = reader.readAll();
+        }
+
+        List<String[]> updatedRows = mergeRows(allRows, keyColumn, comparisonKey, data);
+
+        try (CSVWriter writer = new CSVWriter(new FileWriter(filePath))) {
+            writer.writeAll(updatedRows);
+        }
+    }
+
+    public static List<String[]> mergeRows(List<String[]> allRows, String keyColumn, String comparisonKey, List<Map<String, String>> data) {
+        String[] header = allRows.isEmpty() ? new String[0] : allRows.get(0);
+
+        // Schema-first: collect the final header set before touching any row
+        Map<String, Integer> headerIndexMap = new HashMap<>();
+        List<String> finalHeader = new ArrayList<>(Arrays.asList(header));
+        for (int i = 0; i < header.length; i++) {
+            headerIndexMap.putIfAbsent(header[i].toLowerCase(), i);
+        }
+        for (Map<String, String> row : data) {
+            for (String columnName : row.keySet()) {
+                if (!headerIndexMap.containsKey(columnName.toLowerCase())) {
+                    headerIndexMap.put(columnName.toLowerCase(), finalHeader.size());
+                    finalHeader.add(columnName);
+                }
+            }
+        }
+        int columnCount = finalHeader.size();
+
+        // Index existing rows by key column value
+        List<String[]> rows = new ArrayList<>(allRows.size() + data.size());
+        rows.add(finalHeader.toArray(new String[0]));
+        Map<String, Integer> keyColumnValueToRowIndex = new HashMap<>();
+        Integer keyIndex = headerIndexMap.get(keyColumn.toLowerCase());
+        if (keyIndex == null && allRows.size() > 1) {
+            // Existing rows could never match, so every update would be appended as a duplicate
+            throw new IllegalArgumentException("Column " + keyColumn + " not found");
+        }
+        for (int i = 1; i < allRows.size(); i++) {
+            String[] row = allRows.get(i);
+            rows.add(row);
+            if (keyIndex != null && keyIndex < row.length && row[keyIndex] != null) {
+                keyColumnValueToRowIndex.put(row[keyIndex].toLowerCase(), i);
+            }
+        }
+
+        // Add or update data; only rows that receive values are widened, once
+        for (Map<String, String> row : data) {
+            String keyColumnValue = row.get(comparisonKey).toLowerCase();
+            Integer rowIndex = keyColumnValueToRowIndex.get(keyColumnValue);
+
+            String[] target;
+            if (rowIndex != null) {
+                target = rows.get(rowIndex);
+                if (target.length < columnCount) {
+                    target = Arrays.copyOf(target, columnCount);
+                    rows.set(rowIndex, target);
+                }
+            } else {
+                target = new String[columnCount];
+                rows.add(target);
+                keyColumnValueToRowIndex.put(keyColumnValue, rows.size() - 1);
+            }
+            for (Map.Entry<String, String> entry : row.entrySet()) {
+                target[headerIndexMap.get(entry.getKey().toLowerCase())] = entry.getValue();
+            }
+        }
+
+        // Pad untouched rows to the final width (one copy per short row)
+        for (int i = 1; i < rows.size(); i++) {
+            if (rows.get(i).length < columnCount) {
+                rows.set(i, Arrays.copyOf(rows.get(i), columnCount));
+            }
+        }
+        return rows;
+    }
+}
+```
+
+### 2. 벤치마크 (JMH)
+
+기존 `updateCsv`(새 컬럼마다 전체 행 리사이즈)와 스키마 우선 `updateCsv`를 실제 파일 입출력까지 포함해 비교합니다. 기존 구현은 재구현하지 않고 대소문자 무시 버전의 `CsvUpdater.updateCsv`를 클래스 이름만 바꿔 그대로 옮겼습니다.
+
+#### pom.xml
+
+```xml
+<dependency>
+    <groupId>org.openjdk.jmh</groupId>
+    <artifactId>jmh-core</artifactId>
+    <version>1.37</version>
+    <scope>test</scope>
+</dependency>
+<dependency>
+    <groupId>org.openjdk.jmh</groupId>
+    <artifactId>jmh-generator-annprocess</artifactId>
+    <version>1.37</version>
+    <scope>test</scope>
+</dependency>
+```
+
+#### LegacyCsvUpdater.java (추가, 벤치마크 전용)
+
+```java
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.*;
+
+public class LegacyCsvUpdater {
+
+    public static void updateCsv(String filePath, String keyColumn, String comparisonKey, List<Map<String, String>> data) throws IOException {
+        List<String[]> allRows = new ArrayList<>();
+        Map<String, Integer> headerIndexMap = new HashMap<>();
+        Map<String, Integer> keyColumnValueToRowIndex = new HashMap<>();
+        
+        // Read existing CSV file
+        try (CSVReader reader = new CSVReader(new FileReader(filePath))) {
+            List<String[]> csvData = reader.readAll();
+            if (!csvData.isEmpty()) {
+                String[] header = csvData.get(0);
+                allRows.add(header);
+                for (int i = 0; i < header.length; i++) {
+                    headerIndexMap.put(header[i].toLowerCase(), i);
+                }
+
+                for (int i = 1; i < csvData.size(); i++) {
+                    String[] row = csvData.get(i);
+                    allRows.add(row);
+                    keyColumnValueToRowIndex.put(row[headerIndexMap.get(keyColumn.toLowerCase())].toLowerCase(), i);
+                }
+            }
+        }
+
+        // Add or update data
+        for (Map<String, String> row : data) {
+            String keyColumnValue = row.get(comparisonKey);
+            Integer rowIndex = keyColumnValueToRowIndex.get(keyColumnValue.toLowerCase());
+
+            if (rowIndex != null) {
+                // Update existing row
+                String[] existingRow = allRows.get(rowIndex);
+                for (Map.Entry<String, String> entry : row.entrySet()) {
+                    String columnName = entry.getKey();
+                    String value = entry.getValue();
+                    int index = headerIndexMap.getOrDefault(columnName.toLowerCase(), -1);
+                    if (index == -1) {
+                        index = headerIndexMap.size();
+                        headerIndexMap.put(columnName.toLowerCase(), index);
+                        // Resize existing rows to accommodate new column
+                        for (int i = 0; i < allRows.size(); i++) {
+                            allRows.set(i, Arrays.copyOf(allRows.get(i), headerIndexMap.size()));
+                        }
+                        allRows.get(0)[index] = columnName;
+                    }
+                    existingRow[index] = value;
+                }
+            } else {
+                // Add new row
+                String[] newRow = new String[headerIndexMap.size()];
+                for (Map.Entry<String, String> entry : row.entrySet()) {
+                    String columnName = entry.getKey();
+                    String value = entry.getValue();
+                    int index = headerIndexMap.getOrDefault(columnName.toLowerCase(), -1);
+                    if (index == -1) {
+                        index = headerIndexMap.size();
+                        headerIndexMap.put(columnName.toLowerCase(), index);
+                        // Resize existing rows to accommodate new column
+                        for (int i = 0; i < allRows.size(); i++) {
+                            allRows.set(i, Arrays.copyOf(allRows.get(i), headerIndexMap.size()));
+                        }
+                        newRow = Arrays.copyOf(newRow, headerIndexMap.size());
+                        allRows.get(0)[index] = columnName;
+                    }
+                    newRow[index] = value;
+                }
+                allRows.add(newRow);
+                keyColumnValueToRowIndex.put(keyColumnValue.toLowerCase(), allRows.size() - 1);
+            }
+        }
+
+        // Write updated data back to CSV file
+        try (CSVWriter writer = new CSVWriter(new FileWriter(filePath))) {
+            writer.writeAll(allRows);
+        }
+    }
+}
+```
+
+#### CsvMergeBenchmark.java
+
+```java
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class CsvMergeBenchmark {
+
+    @Param({"10000", "50000", "200000"})
+    private int rows;
+
+    @Param({"1", "10", "30"})
+    private int newColumns;
+
+    private Path template;
+    private Path target;
+    private List<Map<String, String>> data;
+
+    @Setup(Level.Trial)
+    public void createTemplate() throws IOException {
+        template = Files.createTempFile("csv-merge-template", ".csv");
+        target = Files.createTempFile("csv-merge-target", ".csv");
+        List<String> lines = new ArrayList<>(rows + 1);
+        lines.add("\"id\",\"name\",\"email\"");
+        for (int i = 0; i < rows; i++) {
+            lines.add("\"" + i + "\",\"name" + i + "\",\"user" + i + "@example.com\"");
+        }
+        Files.write(template, lines);
+
+        // Every update row is a new key and introduces one more new column
+        data = new ArrayList<>();
+        for (int c = 0; c < newColumns; c++) {
+            Map<String, String> row = new HashMap<>();
+            row.put("id", String.valueOf(rows + c));
+            row.put("extra" + c, "value" + c);
+            data.add(row);
+        }
+    }
+
+    // Both methods rewrite the file, so each single-shot iteration starts from a fresh copy
+    @Setup(Level.Iteration)
+    public void resetTarget() throws IOException {
+        Files.copy(template, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        Files.deleteIfExists(template);
+        Files.deleteIfExists(target);
+    }
+
+    @Benchmark
+    public void legacyUpdateCsv() throws IOException {
+        LegacyCsvUpdater.updateCsv(target.toString(), "id", "id", data);
+    }
+
+    @Benchmark
+    public void schemaFirstUpdateCsv() throws Exception {
+        CsvUpdater.updateCsv(target.toString(), "id", "id", data);
+    }
+}
+```
+
+`updateCsv`는 호출할 때마다 파일을 다시 쓰므로 `Mode.SingleShotTime`으로 반복마다 한 번만 호출하고, 원본 복사는 `@Setup(Level.Iteration)`에서 합니다. `@Setup(Level.Invocation)`으로 공유 상태를 매 호출 바꾸는 방식은 호출 시간이 짧을 때 JMH가 측정 오차를 경고하므로 쓰지 않습니다. `mvn test-compile exec:java -Dexec.mainClass=org.openjdk.jmh.Main` 등으로 실행합니다.
+
+기존 구현은 기존 행에 새 컬럼을 쓰면 리사이즈 전 배열(`existingRow`)에 값을 넣으려다 `ArrayIndexOutOfBoundsException`이 나므로, 벤치마크 데이터는 새 키로 행을 추가하면서 새 컬럼을 만듭니다. 두 방식 모두 파일 읽기/쓰기와 전체 행 인덱싱이 `O(행 수)`로 들어가므로 행 수에 대한 증가 추세는 같고, 차이는 `legacyUpdateCsv`에만 있는 `행 수 × 새 컬럼 수` 항에서 납니다.
+
+### 요약
+
+- **스키마 우선 처리**: 업데이트 데이터의 키를 먼저 모아 최종 헤더와 컬럼 수를 확정합니다.
+- **희소 확장**: 기존 행 배열은 그대로 두고, 값이 써지는 행만 한 번 `Arrays.copyOf`로 늘립니다. 새 행은 처음부터 최종 길이로 만듭니다.
+- **쓰기 전 정렬**: 길이가 짧은 나머지 행은 마지막에 한 번만 패딩합니다. 이 패딩은 배치마다 `O(행 수)`이므로 전체 비용은 `O(행 수 + 업데이트 셀 수)`입니다. 새 컬럼 수에 곱해지는 항이 없어질 뿐 배치 비용이 파일 크기와 무관해지지는 않습니다.
+- **벤치마크**: 기존 `updateCsv`를 그대로 옮긴 `LegacyCsvUpdater`와 새 `updateCsv`를 같은 파일 입출력 조건에서 비교합니다.
+
+
+
+
+
+
+
+`ExcelUpdater.updateExcel`은 `new XSSFWorkbook(fileInputStream)`으로 워크북 전체를 DOM으로 읽기 때문에 50 MB짜리 xlsx 파일도 1 GB 이상의 힙을 사용합니다. 읽기는 POI의 이벤트 기반 API(`XSSFReader` + SAX 시트 핸들러)로, 쓰기는 `SXSSFWorkbook`으로 바꾸면 시트의 행이 힙에 쌓이지 않습니다. 단, 공유 문자열 테이블(SST)은 전체를 메모리에 읽으므로 힙 사용량은 SST 크기에 비례합니다.
+
+### 1. 스트리밍 Excel 업데이트 함수
+
+`XSSFSheetXMLHandler`가 시트 XML을 한 행씩 파싱해 `SheetContentsHandler`에 넘겨 주면, 핸들러가 키를 비교해 값을 병합하고 바로 `SXSSFWorkbook`의 행으로 씁니다. `SXSSFWorkbook`은 지정한 개수(`ROW_ACCESS_WINDOW`)의 행만 메모리에 두고 나머지는 임시 파일로 내보냅니다.
+
+#### ExcelUpdater.java
+
+```java
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.ss.util.NumberToTextConverter;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+public class ExcelUpdater {
+
+    private static final int ROW_ACCESS_WINDOW = 100;
+
+    public static void updateExcelStreaming(String filePath, String keyColumn, String comparisonKey, List<Map<String, String>> data) throws IOException {
+        Path source = Paths.get(filePath).toAbsolutePath();
+        Path temp = Files.createTempFile(source.getParent(), source.getFileName().toString(), ".tmp");
+
+        // Index update data by key (only the update batch is kept in memory)
+        Map<String, Map<String, String>> updatesByKey = new LinkedHashMap<>();
+        for (Map<String, String> rowData : data) {
+            String keyColumnValue = rowData.get(comparisonKey);
+            if (keyColumnValue == null) {
+                continue;
+            }
+            updatesByKey.computeIfAbsent(keyColumnValue.toLowerCase(), k -> new LinkedHashMap<>()).putAll(rowData);
+        }
+
+        // compressTmpFiles = true, useSharedStringsTable = false
+        SXSSFWorkbook outWorkbook = new SXSSFWorkbook(null, ROW_ACCESS_WINDOW, true, false);
+        try (OPCPackage pkg = OPCPackage.open(source.toFile(), PackageAccess.READ)) {
+            XSSFReader xssfReader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = xssfReader.getStylesTable();
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+
+            try (InputStream sheetStream = sheets.next()) {
+                // Only one sheet is rewritten, so refuse instead of dropping the others
+                if (sheets.hasNext()) {
+                    throw new IOException(filePath + " has more than one sheet; use updateExcel for multi-sheet workbooks");
+                }
+                Sheet outSheet = outWorkbook.createSheet(sheets.getSheetName());
+                StreamingSheetHandler handler = new StreamingSheetHandler(outSheet, keyColumn, updatesByKey);
+
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new TypedSheetXMLHandler(styles, strings, handler));
+                parser.parse(new InputSource(sheetStream));
+                handler.appendUnmatchedRows();
+            }
+
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                outWorkbook.write(out);
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            Files.deleteIfExists(temp);
+            throw new IOException("Failed to read " + filePath, e);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        } finally {
+            outWorkbook.dispose(); // delete SXSSF temp files
+            outWorkbook.close();
+        }
+
+        try {
+            Files.move(temp, source, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, source, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Rejects formula cells and reports the type and number format of each cell to the row handler
+    private static class TypedSheetXMLHandler extends XSSFSheetXMLHandler {
+        private final StylesTable styles;
+        private final StreamingSheetHandler handler;
+
+        TypedSheetXMLHandler(StylesTable styles, ReadOnlySharedStringsTable strings, StreamingSheetHandler handler) {
+            super(styles, null, strings, handler, new RawNumberFormatter(), false);
+            this.styles = styles;
+            this.handler = handler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            if ("f".equals(localName)) {
+                throw new SAXException("Formula cells are not supported; the rewrite would replace them with cached values");
+            }
+            if ("c".equals(localName)) {
+                String styleIndex = attributes.getValue("s");
+                String format = styleIndex == null ? null : styles.getStyleAt(Integer.parseInt(styleIndex)).getDataFormatString();
+                handler.nextCell(attributes.getValue("t"), format);
+            }
+            super.startElement(uri, localName, qName, attributes);
+        }
+    }
+
+    // Passes numeric cells through as their stored value instead of the display text
+    private static class RawNumberFormatter extends DataFormatter {
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            return NumberToTextConverter.toText(value);
+        }
+    }
+
+    private static class StreamingSheetHandler implements SheetContentsHandler {
+        private final Sheet outSheet;
+        private final String keyColumn;
+        private final Map<String, Map<String, String>> updatesByKey;
+        private final Set<String> matchedKeys = new HashSet<>();
+        private final Map<String, Integer> headerIndexMap = new HashMap<>();
+        private final Map<String, CellStyle> numberStyles = new HashMap<>();
+        private final List<Object> currentRow = new ArrayList<>();
+        private final List<String> currentFormats = new ArrayList<>();
+        private String nextType;
+        private String nextFormat;
+        private Integer keyIndex;
+        private boolean headerWritten;
+        private int currentCol;
+        private int lastRowNum = -1;
+
+        StreamingSheetHandler(Sheet outSheet, String keyColumn, Map<String, Map<String, String>> updatesByKey) {
+            this.outSheet = outSheet;
+            this.keyColumn = keyColumn;
+            this.updatesByKey = updatesByKey;
+        }
+
+        void nextCell(String type, String format) {
+            nextType = type;
+            nextFormat = format;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            currentRow.clear();
+            currentFormats.clear();
+            currentCol = -1;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int col = cellReference == null ? currentCol + 1 : new CellReference(cellReference).getCol();
+            while (currentRow.size() < col) {
+                currentRow.add(null);
+                currentFormats.add(null);
+            }
+            Object value = formattedValue;
+            String format = null;
+            if (formattedValue != null && !formattedValue.isEmpty()) {
+                if (nextType == null || "n".equals(nextType)) {
+                    value = Double.valueOf(formattedValue);
+                    format = nextFormat;
+                } else if ("b".equals(nextType)) {
+                    value = "TRUE".equals(formattedValue);
+                }
+            }
+            currentRow.add(value);
+            currentFormats.add(format);
+            currentCol = col;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (!headerWritten) {
+                writeHeader(rowNum, currentRow);
+                return;
+            }
+
+            Object[] values = currentRow.toArray(new Object[headerIndexMap.size()]);
+            String[] formats = currentFormats.toArray(new String[values.length]);
+            if (keyIndex != null && keyIndex < currentRow.size() && currentRow.get(keyIndex) != null) {
+                String keyColumnValue = text(currentRow.get(keyIndex)).toLowerCase();
+                Map<String, String> update = updatesByKey.get(keyColumnValue);
+                if (update != null) {
+                    if (values.length < headerIndexMap.size()) {
+                        values = Arrays.copyOf(values, headerIndexMap.size());
+                        formats = Arrays.copyOf(formats, headerIndexMap.size());
+                    }
+                    for (Map.Entry<String, String> entry : update.entrySet()) {
+                        values[headerIndexMap.get(entry.getKey().toLowerCase())] = entry.getValue();
+                    }
+                    matchedKeys.add(keyColumnValue);
+                }
+            }
+            writeRow(rowNum, values, formats);
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+            // Not needed
+        }
+
+        void appendUnmatchedRows() {
+            if (!headerWritten) {
+                writeHeader(0, Collections.emptyList());
+            }
+            for (Map.Entry<String, Map<String, String>> entry : updatesByKey.entrySet()) {
+                if (matchedKeys.contains(entry.getKey())) {
+                    continue;
+                }
+                Object[] values = new Object[headerIndexMap.size()];
+                for (Map.Entry<String, String> column : entry.getValue().entrySet()) {
+                    values[headerIndexMap.get(column.getKey().toLowerCase())] = column.getValue();
+                }
+                writeRow(lastRowNum + 1, values, new String[values.length]);
+            }
+        }
+
+        private void writeHeader(int rowNum, List<Object> header) {
+            // Final header = existing header + new columns from the update data
+            List<String> finalHeader = new ArrayList<>();
+            for (int i = 0; i < header.size(); i++) {
+                String name = header.get(i) == null ? null : text(header.get(i));
+                finalHeader.add(name);
+                if (name != null) {
+                    headerIndexMap.putIfAbsent(name.toLowerCase(), i);
+                }
+            }
+            for (Map<String, String> rowData : updatesByKey.values()) {
+                for (String columnName : rowData.keySet()) {
+                    if (!headerIndexMap.containsKey(columnName.toLowerCase())) {
+                        headerIndexMap.put(columnName.toLowerCase(), finalHeader.size());
+                        finalHeader.add(columnName);
+                    }
+                }
+            }
+            keyIndex = headerIndexMap.get(keyColumn.toLowerCase());
+            headerWritten = true;
+            writeRow(rowNum, finalHeader.toArray(new Object[0]), new String[finalHeader.size()]);
+        }
+
+        // Numbers and booleans keep their cell type; numbers also keep their number format
+        private void writeRow(int rowNum, Object[] values, String[] formats) {
+            Row row = outSheet.createRow(rowNum);
+            for (int i = 0; i < values.length; i++) {
+                Object value = values[i];
+                if (value == null) {
+                    continue;
+                }
+                Cell cell = row.createCell(i);
+                if (value instanceof Double) {
+                    cell.setCellValue((Double) value);
+                    CellStyle style = numberStyle(formats[i]);
+                    if (style != null) {
+                        cell.setCellStyle(style);
+                    }
+                } else if (value instanceof Boolean) {
+                    cell.setCellValue((Boolean) value);
+                } else {
+                    cell.setCellValue(value.toString());
+                }
+            }
+            lastRowNum = rowNum;
+        }
+
+        private CellStyle numberStyle(String format) {
+            if (format == null || "General".equals(format)) {
+                return null;
+            }
+            return numberStyles.computeIfAbsent(format, f -> {
+                CellStyle style = outSheet.getWorkbook().createCellStyle();
+                style.setDataFormat(outSheet.getWorkbook().createDataFormat().getFormat(f));
+                return style;
+            });
+        }
+
+        private static String text(Object value) {
+            if (value instanceof Double) {
+                return NumberToTextConverter.toText((Double) value);
+            }
+            if (value instanceof Boolean) {
+                return (Boolean) value ? "TRUE" : "FALSE";
+            }
+            return value.toString();
+        }
+    }
+}
+```
+
+### 2. 사용 예제
+
+```java
+List<Map<String, String>> newData = new ArrayList<>();
+Map<String, String> row1 = new HashMap<>();
+row1.put("uid", "1");
+row1.put("phone", "123-456-7890");
+newData.add(row1);
+
+ExcelUpdater.updateExcelStreaming("data.xlsx", "id", "uid", newData);
+```
+
+### 설명
+
+1. **이벤트 기반 읽기**:
+   - `OPCPackage.open(..., PackageAccess.READ)`로 패키지를 읽기 전용으로 열고, `XSSFReader.getSheetsData()`에서 시트 XML 스트림을 가져옵니다. 시트가 둘 이상이면 `IOException`을 던지고 원본은 건드리지 않습니다.
+   - 셀 데이터는 SAX 파서가 한 행씩 `startRow`/`cell`/`endRow`로 전달하므로 워크북 DOM을 만들지 않습니다. 다만 `ReadOnlySharedStringsTable`은 공유 문자열 전체를 힙에 읽습니다. 고유 문자열이 아주 많은 파일이면 그만큼 메모리가 필요합니다.
+   - `keyColumnValueToRowIndex` 같은 행 인덱스 맵을 따로 만들 필요 없이, 각 행이 끝날 때(`endRow`) 키를 바로 비교해 병합합니다.
+
+2. **스트리밍 쓰기**:
+   - `SXSSFWorkbook(null, ROW_ACCESS_WINDOW, true, false)`은 최근 100행만 메모리에 두고, 임시 파일은 압축하며, 공유 문자열 테이블을 사용하지 않습니다(인라인 문자열).
+   - 작업이 끝나면 `dispose()`로 SXSSF 임시 파일을 지우고, 결과 파일은 임시 파일에서 원본 위치로 원자적으로 이동합니다.
+
+3. **헤더 처리**:
+   - 첫 번째 행(헤더)을 만나면 업데이트 데이터의 새 컬럼을 뒤에 붙여 최종 헤더를 확정합니다. 이후 행은 헤더 인덱스로만 값을 채웁니다.
+
+4. **셀 타입 유지**:
+   - `TypedSheetXMLHandler`가 `<c>` 요소의 `t`/`s` 속성으로 셀 타입과 표시 형식을 알려 주고, `RawNumberFormatter`는 숫자 셀을 화면 표시 문자열 대신 저장된 값으로 넘깁니다.
+   - 기존 숫자/날짜 셀은 숫자 셀로, 불리언 셀은 불리언 셀로 다시 쓰고, 숫자 셀의 표시 형식(날짜 형식 포함)은 같은 형식의 스타일로 복사합니다.
+   - 수식(`<f>`)이 있으면 캐시된 결과값으로 바뀌므로 `SAXException`으로 중단하고 원본을 그대로 둡니다.
+
+### 주의 사항
+
+- 시트가 여러 개이거나 수식이 있는 워크북은 처리하지 않고 `IOException`을 던집니다. 이런 파일은 기존 `updateExcel`(`XSSFWorkbook`)을 사용해야 합니다.
+- 값과 셀 타입, 숫자 표시 형식은 유지하지만 글꼴/채우기/테두리 같은 나머지 스타일, 열 너비, 병합 셀, 메모는 복사하지 않습니다. 서식이 중요한 파일이면 `updateExcel`을 사용합니다.
+- 업데이트로 쓰는 값은 기존 `updateExcel`과 마찬가지로 `setCellValue(String)`으로 쓰므로 문자열 셀이 됩니다.
+
+
+
+
+
+
+
+`ExcelWriter.writeDataToExistingExcel`은 `dataList`의 각 `Map`마다 시트의 모든 행을 다시 훑기 때문에 `O(N×M)`입니다. 시트가 10만 행, 업데이트가 5만 건이면 수 분이 걸립니다. 시트를 한 번만 읽어 `targetColumn` 값 → 행 목록 인덱스를 만들고, 업데이트는 이 인덱스로 바로 찾아가는 해시 조인으로 바꿉니다.
+
+또한 기존 코드는 `targetCell.getNumericCellValue() == mapValue`로 숫자 셀만 비교하므로, 같은 값이 문자열 셀(`"1"`)로 저장되어 있으면 일치하지 않습니다. 인덱스 키를 문자열로 정규화해서 숫자/문자열 셀을 모두 같은 방식으로 비교합니다.
+
+### 1. 해시 조인 방식의 ExcelWriter
+
+#### ExcelWriter.java
+
+```java
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.*;
+
+public class ExcelWriter {
+
+    public static void writeDataToExistingExcel(List<Map<String, Integer>> dataList, String filePath, String mapKey, String targetColumn) throws IOException {
+        Workbook workbook;
+        try (FileInputStream fileInputStream = new FileInputStream(filePath)) {
+            workbook = new XSSFWorkbook(fileInputStream);
+        }
+
+        writeData(workbook.getSheetAt(0), dataList, mapKey, targetColumn);
+
+        try (FileOutputStream fileOut = new FileOutputStream(filePath)) {
+            workbook.write(fileOut);
+        }
+        workbook.close();
+    }
+
+    public static void writeData(Sheet sheet, List<Map<String, Integer>> dataList, String mapKey, String targetColumn) {
+        // Create a map of column indices
+        Map<String, Integer> columnIndices = new HashMap<>();
+        Row headerRow = sheet.getRow(0);
+        if (headerRow == null) {
+            headerRow = sheet.createRow(0);
+        }
+        for (int i = 0; i < headerRow.getLastCellNum(); i++) {
+            Cell cell = headerRow.getCell(i);
+            if (cell != null) {
+                columnIndices.put(cell.getStringCellValue(), i);
+            }
+        }
+
+        Integer targetColumnIndex = columnIndices.get(targetColumn);
+        if (targetColumnIndex == null) {
+            throw new IllegalArgumentException("Column " + targetColumn + " not found");
+        }
+
+        // Build the index once: normalized targetColumn value -> rows
+        Map<String, List<Row>> rowsByKey = new HashMap<>();
+        for (int rowNum = 1; rowNum <= sheet.getLastRowNum(); rowNum++) {
+            Row row = sheet.getRow(rowNum);
+            if (row == null) {
+                continue;
+            }
+            String key = normalizeKey(row.getCell(targetColumnIndex));
+            if (key != null) {
+                rowsByKey.computeIfAbsent(key, k -> new ArrayList<>(1)).add(row);
+            }
+        }
+
+        // Hash join: look up matching rows instead of scanning the sheet
+        for (Map<String, Integer> dataMap : dataList) {
+            Integer mapValue = dataMap.get(mapKey);
+            if (mapValue == null) {
+                continue;
+            }
+            List<Row> matchingRows = rowsByKey.get(mapValue.toString());
+            if (matchingRows == null) {
+                continue;
+            }
+
+            for (Map.Entry<String, Integer> entry : dataMap.entrySet()) {
+                String key = entry.getKey();
+                // Skip the mapKey entry since it's already used for matching
+                if (key.equals(mapKey)) {
+                    continue;
+                }
+
+                // Get or create the column index for this key
+                Integer colIndex = columnIndices.get(key);
+                if (colIndex == null) {
+                    colIndex = Math.max(headerRow.getLastCellNum(), 0);
+                    headerRow.createCell(colIndex).setCellValue(key);
+                    columnIndices.put(key, colIndex);
+                }
+
+                for (Row row : matchingRows) {
+                    row.createCell(colIndex).setCellValue(entry.getValue());
+                }
+            }
+        }
+    }
+
+    static String normalizeKey(Cell cell) {
+        if (cell == null) {
+            return null;
+        }
+        CellType type = cell.getCellType() == CellType.FORMULA ? cell.getCachedFormulaResultType() : cell.getCellType();
+        switch (type) {
+            case NUMERIC:
+                // 1.0 -> "1", 1.5 -> "1.5"
+                return BigDecimal.valueOf(cell.getNumericCellValue()).stripTrailingZeros().toPlainString();
+            case STRING:
+                String value = cell.getStringCellValue().trim();
+                return value.isEmpty() ? null : value;
+            case BOOLEAN:
+                return String.valueOf(cell.getBooleanCellValue());
+            default:
+                return null;
+        }
+    }
+}
+```
+
+### 2. 벤치마크 (JMH)
+
+기존의 중첩 루프(`nestedScan`)와 해시 조인(`hashJoin`)을 같은 메모리 상의 시트로 비교합니다. JMH 의존성은 `jmh-core`, `jmh-generator-annprocess`를 `test` 스코프로 추가합니다.
+
+#### ExcelWriterBenchmark.java
+
+```java
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExcelWriterBenchmark {
+
+    @Param({"10000", "100000"})
+    private int sheetRows;
+
+    @Param({"1000", "50000"})
+    private int updates;
+
+    private Workbook workbook;
+    private Sheet sheet;
+    private List<Map<String, Integer>> dataList;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        workbook = new XSSFWorkbook();
+        sheet = workbook.createSheet();
+        Row header = sheet.createRow(0);
+        header.createCell(0).setCellValue("targetColumn");
+        for (int i = 1; i <= sheetRows; i++) {
+            sheet.createRow(i).createCell(0).setCellValue(i);
+        }
+
+        Random random = new Random(42);
+        dataList = new ArrayList<>(updates);
+        for (int i = 0; i < updates; i++) {
+            Map<String, Integer> map = new HashMap<>();
+            map.put("id", random.nextInt(sheetRows) + 1);
+            map.put("value1", i);
+            dataList.add(map);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+        workbook.close();
+    }
+
+    @Benchmark
+    public void nestedScan() {
+        Row headerRow = sheet.getRow(0);
+        headerRow.createCell(1).setCellValue("value1");
+        for (Map<String, Integer> dataMap : dataList) {
+            Integer mapValue = dataMap.get("id");
+            for (int rowNum = 1; rowNum <= sheet.getLastRowNum(); rowNum++) {
+                Row row = sheet.getRow(rowNum);
+                Cell targetCell = row.getCell(0);
+                if (targetCell != null && targetCell.getCellType() == CellType.NUMERIC && targetCell.getNumericCellValue() == mapValue) {
+                    row.createCell(1).setCellValue(dataMap.get("value1"));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void hashJoin() {
+        ExcelWriter.writeData(sheet, dataList, "id", "targetColumn");
+    }
+}
+```
+
+`SingleShotTime` 모드를 쓰는 이유는 각 측정마다 시트를 새로 만들어야 하기 때문입니다. 결과에서 `nestedScan`은 `sheetRows × updates`에 비례하고, `hashJoin`은 `sheetRows + updates`에 비례하는지 확인합니다.
+
+### 요약
+
+- **인덱스 생성**: 시트를 한 번만 훑어 `targetColumn` 값 → 행 목록(`Map<String, List<Row>>`)을 만듭니다. 같은 값이 여러 행에 있으면 기존 코드처럼 모든 행을 업데이트합니다.
+- **키 정규화**: 숫자 셀은 `BigDecimal`로 `1.0` → `"1"`처럼 변환하고, 문자열 셀은 `trim()`한 값을 사용합니다. `Integer` 값은 `toString()`으로 비교하므로 숫자/문자열 셀 모두 일치합니다.
+- **해시 조인**: 업데이트마다 `rowsByKey.get(...)`으로 바로 행을 찾으므로 전체 비용이 `O(N + M)`이 됩니다.
+- **테스트 가능성**: `writeData(Sheet, ...)`를 파일 입출력과 분리하여 벤치마크와 재사용이 쉬워졌습니다.
+
+
+
+
+
+
+
+`ValueCounter.countValues`는 `HashMap<String, Integer>`에 `getOrDefault(value, 0) + 1`로 값을 세기 때문에 증가할 때마다 `Integer` 박싱이 일어나고, 결과도 값 하나마다 `HashMap`을 새로 만들어 `List<Map<String, Integer>>`로 돌려줍니다. 수천만 행을 세는 경우에는 입력을 Fork/Join 풀로 나눠 병렬로 세고, 각 작업은 박싱 없는 오픈 어드레싱 카운터(`String → int`)를 사용한 뒤 마지막에 병합하도록 바꿉니다.
+
+### 1. 오픈 어드레싱 카운터
+
+키 배열과 `int` 카운트 배열을 나란히 두고 선형 탐사(linear probing)로 찾습니다. 해시값도 배열에 저장해서 비교와 리사이즈 때 `hashCode()`를 다시 계산하지 않습니다.
+
+#### StringIntCounter.java
+
+```java
+import java.util.Arrays;
+
+public class StringIntCounter {
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private String[] keys;
+    private int[] hashes;
+    private int[] counts;
+    private int size;
+    private int mask;
+
+    public StringIntCounter() {
+        this(64);
+    }
+
+    public StringIntCounter(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new String[capacity];
+        hashes = new int[capacity];
+        counts = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    public void increment(String key) {
+        add(key, spread(key.hashCode()), 1);
+    }
+
+    public void merge(StringIntCounter other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != null) {
+                add(other.keys[i], other.hashes[i], other.counts[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public ValueCounts toValueCounts() {
+        String[] values = new String[size];
+        int[] valueCounts = new int[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                values[n] = keys[i];
+                valueCounts[n] = counts[i];
+                n++;
+            }
+        }
+        return new ValueCounts(values, valueCounts);
+    }
+
+    private void add(String key, int hash, int delta) {
+        int slot = hash & mask;
+        while (keys[slot] != null) {
+            if (hashes[slot] == hash && keys[slot].equals(key)) {
+                counts[slot] += delta;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        hashes[slot] = hash;
+        counts[slot] = delta;
+        if (++size > keys.length * LOAD_FACTOR) {
+            resize();
+        }
+    }
+
+    private void resize() {
+        String[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        int[] oldCounts = counts;
+        keys = new String[oldKeys.length << 1];
+        hashes = new int[keys.length];
+        counts = new int[keys.length];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = oldHashes[i] & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        return "StringIntCounter{size=" + size + ", capacity=" + keys.length + "}";
+    }
+}
+```
+
+### 2. 결과 타입
+
+값과 개수를 두 개의 배열로 담는 간단한 결과 타입입니다. `countOf`는 처음 호출될 때 값 → 위치 인덱스를 한 번 만들고 이후에는 해시 조회만 합니다. 기존 코드와의 호환을 위해 `toMapList()`를 제공하며, 예전처럼 수정 가능한 `HashMap`을 돌려줍니다.
+
+#### ValueCounts.java
+
+```java
+import java.util.*;
+
+public class ValueCounts {
+
+    private final String[] values;
+    private final int[] counts;
+    private volatile Map<String, Integer> indexByValue; // built on the first countOf
+
+    public ValueCounts(String[] values, int[] counts) {
+        this.values = values;
+        this.counts = counts;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public String value(int index) {
+        return values[index];
+    }
+
+    public int count(int index) {
+        return counts[index];
+    }
+
+    public int countOf(String value) {
+        Map<String, Integer> index = indexByValue;
+        if (index == null) {
+            index = new HashMap<>(values.length * 4 / 3 + 1);
+            for (int i = 0; i < values.length; i++) {
+                index.put(values[i], i);
+            }
+            indexByValue = index;
+        }
+        Integer i = index.get(value);
+        return i == null ? 0 : counts[i];
+    }
+
+    // Adapter for code that still expects List<Map<String, Integer>>; the maps are mutable like before
+    public List<Map<String, Integer>> toMapList() {
+        List<Map<String, Integer>> result = new ArrayList<>(values.length);
+        for (int i = 0; i < values.length; i++) {
+            Map<String, Integer> map = new HashMap<>();
+            map.put(values[i], counts[i]);
+            result.add(map);
+        }
+        return result;
+    }
+}
+```
+
+### 3. 병렬 ValueCounter
+
+입력 리스트를 인덱스 범위로 나누고, `THRESHOLD` 이하의 범위는 각 작업이 자기 `StringIntCounter`로 셉니다. 작업이 합쳐질 때 카운터를 병합하므로 스레드 간 공유 상태나 락이 없습니다.
+
+#### ValueCounter.java
+
+```java
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class ValueCounter {
+
+    private static final int THRESHOLD = 50_000;
+
+    public static void main(String[] args) {
+        List<Map<String, String>> dataList = new ArrayList<>();
+        for (int i = 0; i < 1_000_000; i++) {
+            Map<String, String> map = new HashMap<>();
+            map.put("key1", "value" + (i % 3));
+            dataList.add(map);
+        }
+
+        ValueCounts valueCounts = countValuesParallel(dataList, "key1");
+        for (int i = 0; i < valueCounts.size(); i++) {
+            System.out.println("Value: " + valueCounts.value(i) + ", Count: " + valueCounts.count(i));
+        }
+    }
+
+    public static ValueCounts countValuesParallel(List<Map<String, String>> dataList, String key) {
+        return countValuesParallel(dataList, key, ForkJoinPool.commonPool());
+    }
+
+    public static ValueCounts countValuesParallel(List<Map<String, String>> dataList, String key, ForkJoinPool pool) {
+        // Index-based splitting needs random access
+        List<Map<String, String>> list = dataList instanceof RandomAccess ? dataList : new ArrayList<>(dataList);
+        return pool.invoke(new CountTask(list, key, 0, list.size())).toValueCounts();
+    }
+
+    // Kept for existing callers
+    public static List<Map<String, Integer>> countValues(List<Map<String, String>> dataList, String key) {
+        return countValuesParallel(dataList, key).toMapList();
+    }
+
+    private static class CountTask extends RecursiveTask<StringIntCounter> {
+        private final List<Map<String, String>> dataList;
+        private final String key;
+        private final int from;
+        private final int to;
+
+        CountTask(List<Map<String, String>> dataList, String key, int from, int to) {
+            this.dataList = dataList;
+            this.key = key;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected StringIntCounter compute() {
+            if (to - from <= THRESHOLD) {
+                StringIntCounter counter = new StringIntCounter();
+                for (int i = from; i < to; i++) {
+                    String value = dataList.get(i).get(key);
+                    if (value != null) {
+                        counter.increment(value);
+                    }
+                }
+                return counter;
+            }
+
+            int mid = (from + to) >>> 1;
+            CountTask left = new CountTask(dataList, key, from, mid);
+            CountTask right = new CountTask(dataList, key, mid, to);
+            left.fork();
+            StringIntCounter rightResult = right.compute();
+            StringIntCounter leftResult = left.join();
+
+            // Merge the smaller counter into the larger one
+            if (leftResult.size() >= rightResult.size()) {
+                leftResult.merge(rightResult);
+                return leftResult;
+            }
+            rightResult.merge(leftResult);
+            return rightResult;
+        }
+    }
+}
+```
+
+### 요약
+
+1. **박싱 제거**: `StringIntCounter`는 `String[]`, `int[]` 배열만 사용하므로 증가할 때 `Integer` 객체가 생기지 않습니다.
+2. **병렬 처리**: `RecursiveTask`가 입력을 `THRESHOLD`(5만 행) 단위로 나눠 Fork/Join 풀에서 세고, 결과 카운터를 작은 쪽에서 큰 쪽으로 병합합니다.
+3. **간결한 결과 타입**: `ValueCounts`는 값 배열과 개수 배열만 가지며, 기존 형식이 필요하면 `toMapList()`로 변환합니다.
+4. **호환성**: 기존 `countValues` 시그니처는 그대로 두고 내부에서 병렬 구현을 사용합니다. 결과 순서는 기존과 마찬가지로 보장되지 않습니다.
+
+
+
+
+
+
+
+`ValueCounter`는 한 번 호출할 때 키 하나만 세고, 입력도 메모리에 모두 올라간 `List<Map<String, String>>`여야 합니다. 그래서 컬럼 5개를 세려면 같은 추출 파일을 5번 읽어야 합니다. 여러 키와 복합 키(예: `key1+key2`)를 한 번의 순회로 세고, 입력은 `Iterator`/`Stream`이나 CSV 파일에서 한 행씩 바로 받는 스트리밍 집계기를 만듭니다. 카운터는 앞에서 만든 `StringIntCounter`를 재사용합니다.
+
+### 1. 스트리밍 집계기
+
+#### ValueAggregator.java
+
+```java
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+public class ValueAggregator {
+
+    // Separator used to join composite key values (ASCII unit separator)
+    public static final char COMPOSITE_SEPARATOR = '\u001F';
+
+    private final List<String[]> dimensions = new ArrayList<>();
+    private final List<StringIntCounter> counters = new ArrayList<>();
+    private final StringBuilder sb = new StringBuilder();
+
+    /**
+     * Adds a dimension to count. One key counts single values, several keys count
+     * their combination, e.g. dimension("key1", "key2").
+     */
+    public ValueAggregator dimension(String... keys) {
+        if (keys.length == 0) {
+            throw new IllegalArgumentException("At least one key is required");
+        }
+        dimensions.add(keys.clone());
+        counters.add(new StringIntCounter());
+        return this;
+    }
+
+    public void accept(Map<String, String> row) {
+        for (int d = 0; d < dimensions.size(); d++) {
+            String[] keys = dimensions.get(d);
+            String value = keys.length == 1 ? row.get(keys[0]) : joinValues(keys, row, sb);
+            if (value != null) {
+                counters.get(d).increment(value);
+            }
+        }
+    }
+
+    public Map<List<String>, ValueCounts> aggregate(Iterator<Map<String, String>> rows) {
+        while (rows.hasNext()) {
+            accept(rows.next());
+        }
+        return results();
+    }
+
+    public Map<List<String>, ValueCounts> aggregate(Stream<Map<String, String>> rows) {
+        rows.forEachOrdered(this::accept);
+        return results();
+    }
+
+    /**
+     * Reads the CSV file row by row and counts every dimension in a single pass,
+     * without building a Map per row.
+     */
+    public Map<List<String>, ValueCounts> aggregateCsv(Path filePath) throws IOException {
+        // Same charset as the FileReader-based readers
+        return aggregateCsv(filePath, Charset.defaultCharset());
+    }
+
+    public Map<List<String>, ValueCounts> aggregateCsv(Path filePath, Charset charset) throws IOException {
+        try (CSVReader reader = new CSVReader(Files.newBufferedReader(filePath, charset))) {
+            String[] header = reader.readNext();
+            if (header == null) {
+                return results();
+            }
+            Map<String, Integer> headerIndexMap = new HashMap<>();
+            for (int i = 0; i < header.length; i++) {
+                headerIndexMap.putIfAbsent(header[i], i);
+            }
+
+            // Resolve column indices once per dimension
+            int[][] columnIndices = new int[dimensions.size()][];
+            for (int d = 0; d < dimensions.size(); d++) {
+                String[] keys = dimensions.get(d);
+                columnIndices[d] = new int[keys.length];
+                for (int k = 0; k < keys.length; k++) {
+                    columnIndices[d][k] = headerIndexMap.getOrDefault(keys[k], -1);
+                }
+            }
+
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                for (int d = 0; d < columnIndices.length; d++) {
+                    String value = csvValue(row, columnIndices[d], sb);
+                    if (value != null) {
+                        counters.get(d).increment(value);
+                    }
+                }
+            }
+        } catch (CsvValidationException e) {
+            throw new IOException("Invalid CSV line in " + filePath, e);
+        }
+        return results();
+    }
+
+    /**
+     * Adds the counts of an aggregator built with the same dimensions, e.g. one
+     * aggregator per thread merged at the end.
+     */
+    public ValueAggregator merge(ValueAggregator other) {
+        if (other.dimensions.size() != dimensions.size()) {
+            throw new IllegalArgumentException("Aggregators have different dimensions");
+        }
+        for (int d = 0; d < dimensions.size(); d++) {
+            if (!Arrays.equals(dimensions.get(d), other.dimensions.get(d))) {
+                throw new IllegalArgumentException("Aggregators have different dimensions");
+            }
+        }
+        for (int d = 0; d < counters.size(); d++) {
+            counters.get(d).merge(other.counters.get(d));
+        }
+        return this;
+    }
+
+    /**
+     * Results keyed by the dimension's key list, e.g. List.of("key1", "key2").
+     */
+    public Map<List<String>, ValueCounts> results() {
+        Map<List<String>, ValueCounts> results = new LinkedHashMap<>();
+        for (int d = 0; d < dimensions.size(); d++) {
+            results.put(List.of(dimensions.get(d)), counters.get(d).toValueCounts());
+        }
+        return results;
+    }
+
+    public static String[] splitComposite(String compositeValue) {
+        return compositeValue.split(String.valueOf(COMPOSITE_SEPARATOR), -1);
+    }
+
+    private static String joinValues(String[] keys, Map<String, String> row, StringBuilder sb) {
+        sb.setLength(0);
+        for (int k = 0; k < keys.length; k++) {
+            String value = row.get(keys[k]);
+            if (value == null) {
+                return null; // skip rows missing any part of the composite key
+            }
+            if (k > 0) {
+                sb.append(COMPOSITE_SEPARATOR);
+            }
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+
+    private static String csvValue(String[] row, int[] indices, StringBuilder sb) {
+        if (indices.length == 1) {
+            int index = indices[0];
+            return index >= 0 && index < row.length ? row[index] : null;
+        }
+        sb.setLength(0);
+        for (int k = 0; k < indices.length; k++) {
+            int index = indices[k];
+            if (index < 0 || index >= row.length) {
+                return null;
+            }
+            if (k > 0) {
+                sb.append(COMPOSITE_SEPARATOR);
+            }
+            sb.append(row[index]);
+        }
+        return sb.toString();
+    }
+}
+```
+
+### 2. 사용 예제
+
+```java
+// CSV 파일을 한 번만 읽어서 세 가지 집계를 동시에 수행
+Map<List<String>, ValueCounts> results = new ValueAggregator()
+        .dimension("key1")
+        .dimension("key2")
+        .dimension("key1", "key2")
+        .aggregateCsv(Paths.get("data.csv"));
+
+ValueCounts byKey1AndKey2 = results.get(List.of("key1", "key2"));
+for (int i = 0; i < byKey1AndKey2.size(); i++) {
+    String[] parts = ValueAggregator.splitComposite(byKey1AndKey2.value(i));
+    System.out.println(parts[0] + " / " + parts[1] + " : " + byKey1AndKey2.count(i));
+}
+
+// 이미 Map 형태의 행 스트림이 있는 경우
+Map<List<String>, ValueCounts> fromStream = new ValueAggregator()
+        .dimension("key1")
+        .dimension("key1", "key2")
+        .aggregate(dataList.stream());
+```
+
+### 설명
+
+1. **한 번의 순회**: `dimension(...)`으로 등록한 모든 집계를 각 행마다 한꺼번에 갱신하므로 파일을 한 번만 읽습니다.
+2. **복합 키**: 여러 키의 값을 `COMPOSITE_SEPARATOR`(`\u001F`)로 이어 붙여 하나의 문자열 키로 셉니다. 일반 데이터에 거의 나오지 않는 제어 문자이므로 구분이 안전하고, `splitComposite`로 다시 나눌 수 있습니다. 일부 키 값이 없는 행은 해당 복합 집계에서 제외됩니다.
+3. **CSV 직접 집계**: `aggregateCsv`는 기존 `FileReader`처럼 플랫폼 기본 인코딩으로 읽고(다르면 `Charset`을 받는 오버로드 사용), 헤더에서 컬럼 인덱스를 한 번만 찾고, 각 행은 `String[]` 그대로 읽어 `Map`을 만들지 않습니다. `StringBuilder`는 집계기 필드 하나를 재사용하고, `Map` 행의 복합 키도 람다나 메서드 참조 없이 `row.get`으로 바로 읽습니다.
+4. **결과**: 집계의 키 목록(`List.of("key1")`, `List.of("key1", "key2")`)을 키로 하는 `Map<List<String>, ValueCounts>`를 반환합니다. 이름을 `"+"`로 이어 붙이지 않으므로 `"a+b"` 컬럼 하나와 `"a"`, `"b"` 복합 키가 섞이지 않습니다.
+
+`ValueAggregator`는 스레드 안전하지 않습니다. 병렬로 세야 하면 앞의 `countValuesParallel`처럼 작업마다 같은 `dimension` 구성의 집계기를 따로 두고, 끝에서 `merge`로 합친 뒤 `results()`를 호출합니다.
+
+
+
+
+
+
+
+이메일이나 사용자 ID처럼 고유값이 매우 많은 컬럼을 `ValueCounter.countValues`로 세면 값마다 `HashMap` 엔트리가 생겨서 메모리가 부족해집니다. 대시보드용으로는 정확한 전체 분포보다 "상위 K개 값"과 "고유값 개수"만 있으면 되므로, 메모리가 고정된 근사 알고리즘을 선택적으로 사용할 수 있게 합니다.
+
+- **상위 K개**: Space-Saving 알고리즘. 카운터 `capacity`개만 유지하며, 각 값의 개수는 최대 `error`만큼 과대 추정됩니다(`error ≤ N / capacity`).
+- **고유값 개수**: HyperLogLog. 레지스터 `2^precision`개(바이트)만 사용하며, 상대 표준 오차는 `1.04 / √(2^precision)`입니다.
+
+### 1. Space-Saving 상위 K개 카운터
+
+값 → 엔트리 `HashMap`과 개수 기준 최소 힙을 함께 둡니다. 힙 인덱스를 엔트리에 저장해서 개수가 늘어날 때 `O(log capacity)`로 힙을 갱신합니다.
+
+#### SpaceSavingTopK.java
+
+```java
+import java.util.*;
+
+public class SpaceSavingTopK {
+
+    public static class Entry {
+        private final String value;
+        private final long count;
+        private final long error;
+
+        Entry(String value, long count, long error) {
+            this.value = value;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        // Upper bound of the true count
+        public long getCount() {
+            return count;
+        }
+
+        // Maximum overestimation; the true count is at least count - error
+        public long getError() {
+            return error;
+        }
+
+        public long getGuaranteedCount() {
+            return count - error;
+        }
+
+        @Override
+        public String toString() {
+            // One-sided: Space-Saving only overestimates
+            return value + "=" + count + " (" + (count - error) + " <= true <= " + count + ")";
+        }
+    }
+
+    private static class Counter {
+        String value;
+        long count;
+        long error;
+        int heapIndex;
+    }
+
+    private final int capacity;
+    private final Map<String, Counter> counters;
+    private final Counter[] heap;
+    private int size;
+    private long total;
+
+    public SpaceSavingTopK(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+        this.heap = new Counter[capacity];
+    }
+
+    public void offer(String value) {
+        total++;
+        Counter counter = counters.get(value);
+        if (counter != null) {
+            counter.count++;
+            siftDown(counter.heapIndex);
+        } else if (size < capacity) {
+            counter = new Counter();
+            counter.value = value;
+            counter.count = 1;
+            counter.heapIndex = size;
+            heap[size++] = counter;
+            counters.put(value, counter);
+            siftUp(counter.heapIndex);
+        } else {
+            // Replace the smallest counter; its count becomes the new value's error
+            counter = heap[0];
+            counters.remove(counter.value);
+            counter.value = value;
+            counter.error = counter.count;
+            counter.count++;
+            counters.put(value, counter);
+            siftDown(0);
+        }
+    }
+
+    public List<Entry> topK(int k) {
+        List<Entry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(new Entry(heap[i].value, heap[i].count, heap[i].error));
+        }
+        entries.sort(Comparator.comparingLong(Entry::getCount).reversed());
+        return entries.subList(0, Math.min(k, entries.size()));
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    // Any value not in the summary occurred at most this many times
+    public long getMaxError() {
+        return size < capacity ? 0 : heap[0].count;
+    }
+
+    /**
+     * Merges another summary into this one, e.g. per-thread or per-file counters.
+     * A value missing from one summary is charged that summary's getMaxError() as both count and error,
+     * so the merged counts stay upper bounds; the largest counters up to this capacity are kept.
+     */
+    public void merge(SpaceSavingTopK other) {
+        long thisMissing = getMaxError();
+        long otherMissing = other.getMaxError();
+        Map<String, Counter> merged = new HashMap<>((size + other.size) * 2);
+        for (int i = 0; i < size; i++) {
+            Counter counter = heap[i];
+            counter.count += otherMissing;
+            counter.error += otherMissing;
+            merged.put(counter.value, counter);
+        }
+        for (int i = 0; i < other.size; i++) {
+            Counter source = other.heap[i];
+            Counter counter = merged.get(source.value);
+            if (counter != null) {
+                // Replace the otherMissing charge with the real count from the other summary
+                counter.count += source.count - otherMissing;
+                counter.error += source.error - otherMissing;
+            } else {
+                counter = new Counter();
+                counter.value = source.value;
+                counter.count = source.count + thisMissing;
+                counter.error = source.error + thisMissing;
+                merged.put(counter.value, counter);
+            }
+        }
+
+        List<Counter> largest = new ArrayList<>(merged.values());
+        largest.sort((a, b) -> Long.compare(b.count, a.count));
+        counters.clear();
+        Arrays.fill(heap, null);
+        size = 0;
+        for (Counter counter : largest.subList(0, Math.min(capacity, largest.size()))) {
+            place(counter, size++);
+            counters.put(counter.value, counter);
+        }
+        for (int i = (size >>> 1) - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+        total += other.total;
+    }
+
+    private void siftUp(int index) {
+        Counter counter = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(counter, index);
+    }
+
+    private void siftDown(int index) {
+        Counter counter = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && heap[right].count < heap[child].count) {
+                child = right;
+            }
+            if (counter.count <= heap[child].count) {
+                break;
+            }
+            place(heap[child], index);
+            index = child;
+        }
+        place(counter, index);
+    }
+
+    private void place(Counter counter, int index) {
+        heap[index] = counter;
+        counter.heapIndex = index;
+    }
+}
+```
+
+### 2. HyperLogLog 고유값 카운터
+
+`String.hashCode()`는 32비트라 고유값이 많으면 충돌이 생기므로 64비트 FNV-1a 해시에 MurmurHash3의 `fmix64`를 적용해 사용합니다.
+
+#### HyperLogLog.java
+
+```java
+public class HyperLogLog {
+
+    private final int precision;
+    private final int registerCount;
+    private final byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("precision must be between 4 and 18");
+        }
+        this.precision = precision;
+        this.registerCount = 1 << precision;
+        this.registers = new byte[registerCount];
+    }
+
+    public void offer(String value) {
+        long hash = hash64(value);
+        int index = (int) (hash >>> (64 - precision));
+        // Rank of the first 1-bit in the remaining bits (1-based)
+        long remaining = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge HyperLogLog with different precision");
+        }
+        for (int i = 0; i < registerCount; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha() * registerCount * registerCount / sum;
+        if (estimate <= 2.5 * registerCount && zeros > 0) {
+            // Small range correction (linear counting)
+            estimate = registerCount * Math.log((double) registerCount / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public double relativeStandardError() {
+        return 1.04 / Math.sqrt(registerCount);
+    }
+
+    private double alpha() {
+        switch (registerCount) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / registerCount);
+        }
+    }
+
+    private static long hash64(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        // fmix64 from MurmurHash3
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb53e1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
+```
+
+### 3. 근사 ValueCounter
+
+한 컬럼에 대해 두 스케치를 함께 갱신하고, 결과에 오차 범위를 담아 돌려줍니다. 입력은 앞의 `ValueAggregator`와 같이 `Iterator`로 받으므로 전체 데이터를 메모리에 올리지 않습니다.
+
+#### ApproximateValueCounter.java
+
+```java
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+public class ApproximateValueCounter {
+
+    private final String key;
+    private final SpaceSavingTopK topK;
+    private final HyperLogLog distinct;
+
+    /**
+     * @param capacity  number of Space-Saving counters (larger = smaller error)
+     * @param precision HyperLogLog precision, 14 uses 16 KB and gives about 0.8% error
+     */
+    public ApproximateValueCounter(String key, int capacity, int precision) {
+        this.key = key;
+        this.topK = new SpaceSavingTopK(capacity);
+        this.distinct = new HyperLogLog(precision);
+    }
+
+    public void accept(Map<String, String> row) {
+        String value = row.get(key);
+        if (value != null) {
+            topK.offer(value);
+            distinct.offer(value);
+        }
+    }
+
+    public ApproximateValueCounter aggregate(Iterator<Map<String, String>> rows) {
+        while (rows.hasNext()) {
+            accept(rows.next());
+        }
+        return this;
+    }
+
+    public List<SpaceSavingTopK.Entry> topK(int k) {
+        return topK.topK(k);
+    }
+
+    public long getTotal() {
+        return topK.getTotal();
+    }
+
+    // Upper bound of the overestimation for every reported count (<= total / capacity)
+    public long getMaxCountError() {
+        return topK.getMaxError();
+    }
+
+    public long getDistinctCount() {
+        return distinct.estimate();
+    }
+
+    /** Merges a counter for the same key, e.g. one filled by another thread. */
+    public void merge(ApproximateValueCounter other) {
+        if (!key.equals(other.key)) {
+            throw new IllegalArgumentException("Cannot merge counters for different keys: " + key + ", " + other.key);
+        }
+        topK.merge(other.topK);
+        distinct.merge(other.distinct);
+    }
+
+    public double getDistinctRelativeError() {
+        return distinct.relativeStandardError();
+    }
+}
+```
+
+### 4. 사용 예제
+
+```java
+ApproximateValueCounter counter = new ApproximateValueCounter("email", 10_000, 14)
+        .aggregate(rows); // Iterator<Map<String, String>>
+
+System.out.println("Total rows: " + counter.getTotal());
+System.out.printf("Distinct emails: %d (±%.2f%%)%n",
+        counter.getDistinctCount(), counter.getDistinctRelativeError() * 100);
+
+for (SpaceSavingTopK.Entry entry : counter.topK(20)) {
+    // Space-Saving only overestimates, so the bound is one-sided
+    System.out.println(entry.getValue() + " : " + entry.getGuaranteedCount() + " <= true <= " + entry.getCount());
+}
+```
+
+### 요약
+
+1. **메모리 고정**: `capacity = 10,000`, `precision = 14`이면 1억 행이어도 Space-Saving 카운터 1만 개와 16 KB 레지스터만 사용합니다.
+2. **오차 범위**:
+   - 상위 K개의 각 값은 실제 개수가 `[count - error, count]` 범위에 있으며, `error`는 `total / capacity`를 넘지 않습니다.
+   - 고유값 개수의 상대 표준 오차는 `1.04 / √(2^precision)`입니다(`precision = 14`에서 약 0.81%).
+3. **선택적 사용**: 정확한 값이 필요하면 기존 `countValues`/`ValueAggregator`를, 고유값이 많은 컬럼은 `ApproximateValueCounter`를 사용합니다.
+4. **병합**: 스레드나 파일마다 `ApproximateValueCounter`를 따로 채운 뒤 `merge`로 합칩니다. 고유값은 `HyperLogLog.merge`(레지스터별 최댓값)로, 상위 K개는 `SpaceSavingTopK.merge`로 합칩니다. 한쪽 요약에 없는 값은 그쪽의 `getMaxError()`를 개수와 오차에 더하므로, 병합 후에도 `count - error ≤ 실제 개수 ≤ count`가 유지됩니다. 두 HyperLogLog의 `precision`은 같아야 합니다.
+
+
+
+
+
+
+
+`ObjectMapperUtils.mapToEntity`는 행마다 `clazz.newInstance()`를 호출하고, 엔트리마다 `getDeclaredField`와 `setAccessible(true)`를 반복하며, 없는 필드는 `NoSuchFieldException`으로 처리합니다. 100만 행을 변환하면 리플렉션만으로 수 초가 걸립니다. (클래스, `fieldMappings`) 쌍마다 생성자와 필드 setter를 `MethodHandle`로 한 번만 만든 매퍼를 행 루프 밖에서 준비하고, 행마다는 준비된 핸들 배열만 호출하도록 바꿉니다.
+
+### 1. 캐시된 매퍼
+
+#### EntityMapper.java
+
+```java
+package com.example.demo.utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public final class EntityMapper<T> {
+
+    private final MethodHandle constructor;
+    private final String[] sourceKeys;
+    private final MethodHandle[] setters;
+
+    private EntityMapper(MethodHandle constructor, String[] sourceKeys, MethodHandle[] setters) {
+        this.constructor = constructor;
+        this.sourceKeys = sourceKeys;
+        this.setters = setters;
+    }
+
+    static <T> EntityMapper<T> create(Class<T> clazz, Map<String, String> fieldMappings) throws IllegalAccessException, InstantiationException {
+        MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(clazz, MethodHandles.lookup());
+        MethodHandle constructor;
+        try {
+            constructor = lookup.findConstructor(clazz, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException e) {
+            throw new InstantiationException(clazz.getName() + " has no default constructor");
+        }
+
+        List<String> keys = new ArrayList<>();
+        List<MethodHandle> handles = new ArrayList<>();
+        for (Field field : clazz.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers())) {
+                continue;
+            }
+            MethodHandle setter = lookup.unreflectSetter(field)
+                    .asType(MethodType.methodType(void.class, Object.class, Object.class));
+
+            // Map keys that are renamed to this field
+            for (Map.Entry<String, String> mapping : fieldMappings.entrySet()) {
+                if (mapping.getValue().equals(field.getName())) {
+                    keys.add(mapping.getKey());
+                    handles.add(setter);
+                }
+            }
+            // Map key with the same name as the field, unless it is renamed to another field
+            if (!fieldMappings.containsKey(field.getName())) {
+                keys.add(field.getName());
+                handles.add(setter);
+            }
+        }
+
+        return new EntityMapper<>(constructor, keys.toArray(new String[0]), handles.toArray(new MethodHandle[0]));
+    }
+
+    @SuppressWarnings("unchecked")
+    public T map(Map<String, String> map) {
+        try {
+            Object entity = constructor.invokeExact();
+            for (int i = 0; i < sourceKeys.length; i++) {
+                String value = map.get(sourceKeys[i]);
+                if (value != null || map.containsKey(sourceKeys[i])) {
+                    setters[i].invokeExact(entity, (Object) value);
+                }
+            }
+            return (T) entity;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to map entity", e);
+        }
+    }
+}
+```
+
+### 2. ObjectMapperUtils 수정
+
+매퍼는 (클래스, `fieldMappings`)마다 한 번만 만들어 캐시합니다. 클래스별로는 `ClassValue`에 두고(앞의 `ColumnExtractor`와 같은 방식), 그 안에서 `fieldMappings`의 불변 복사본(`Map.copyOf`)을 키로 매퍼를 찾습니다. 그래서 행마다 `mapToEntity`를 호출하는 기존 코드도 조회 한 번과 핸들 배열 호출만 하게 됩니다.
+
+#### ObjectMapperUtils.java (수정)
+
+```java
+package com.example.demo.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ObjectMapperUtils {
+
+    // Per class: immutable copy of fieldMappings -> mapper
+    private static final ClassValue<Map<Map<String, String>, EntityMapper<?>>> MAPPERS = new ClassValue<>() {
+        @Override
+        protected Map<Map<String, String>, EntityMapper<?>> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    public static <T> T mapToEntity(Map<String, String> map, Class<T> clazz, Map<String, String> fieldMappings) throws IllegalAccessException, InstantiationException {
+        return mapperFor(clazz, fieldMappings).map(map);
+    }
+
+    /**
+     * Returns the cached mapper for the given class and field mappings, building it on first use.
+     * The mapper is immutable and thread-safe; loops can also hold it and call map() per row.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> EntityMapper<T> mapperFor(Class<T> clazz, Map<String, String> fieldMappings) throws IllegalAccessException, InstantiationException {
+        Map<Map<String, String>, EntityMapper<?>> byMappings = MAPPERS.get(clazz);
+        Map<String, String> key = fieldMappings == null ? Map.of() : fieldMappings;
+        EntityMapper<?> mapper = byMappings.get(key);
+        if (mapper == null) {
+            // Copy so a caller mutating its map later cannot change the key
+            Map<String, String> copy = Map.copyOf(key);
+            mapper = EntityMapper.create(clazz, copy);
+            EntityMapper<?> existing = byMappings.putIfAbsent(copy, mapper);
+            if (existing != null) {
+                mapper = existing;
+            }
+        }
+        return (EntityMapper<T>) mapper;
+    }
+}
+```
+
+### 3. 사용 예제
+
+```java
+Map<String, String> fieldMappings = Map.of(
+    "name", "fullName",
+    "mail", "emailAddress"
+);
+
+// 한 건만 변환할 때는 기존 방식 그대로 사용
+Person person = ObjectMapperUtils.mapToEntity(Map.of("name", "antony", "mail", "antony@naver.com"), Person.class, fieldMappings);
+
+// 여러 행을 변환할 때는 루프 밖에서 매퍼를 한 번 만들어 재사용
+EntityMapper<Person> mapper = ObjectMapperUtils.mapperFor(Person.class, fieldMappings);
+List<Person> data = mapData.stream()
+    .map(mapper::map)
+    .collect(Collectors.toList());
+```
+
+### 설명
+
+1. **메타데이터 재사용**: 생성자 핸들과 필드 setter 핸들은 (클래스, `fieldMappings`)마다 처음 한 번만 만들어지고 캐시됩니다. 이후 `mapToEntity` 호출은 캐시 조회(`fieldMappings` 해시 계산 포함)와 핸들 호출만 합니다. 행 루프 밖에서 `mapperFor`로 받은 매퍼를 쓰면 캐시 조회도 행마다 일어나지 않습니다.
+2. **예외 없는 흐름**: 어떤 맵 키가 어떤 필드에 대응하는지 미리 계산해 두었기 때문에, 행 처리 시에는 `sourceKeys` 배열을 돌며 `map.get`과 `invokeExact`만 수행합니다. 없는 필드를 `NoSuchFieldException`으로 거르는 과정이 없습니다.
+3. **접근 권한**: `MethodHandles.privateLookupIn`(Java 9+)으로 private 필드에 대한 setter를 만듭니다. 모듈을 사용하는 경우 대상 패키지를 `opens`해야 합니다.
+4. **동작 호환**: 기존과 같이 매핑에 없는 키는 같은 이름의 필드에 설정되고, 대응하는 필드가 없는 키는 무시됩니다. `static`/`final` 필드는 설정하지 않습니다.
+5. **캐시**: 클래스별 캐시는 `ClassValue`라서 클래스로더가 정리되면 함께 정리됩니다. 행마다 `mapToEntity`를 호출하는 기존 호출부도 바꾸지 않고 빨라집니다. `Map.copyOf`는 null 키나 값을 허용하지 않으므로 `fieldMappings`에 null을 넣지 않습니다.
+
+
+
+
+
+
+
+`MethodHandle` 캐시를 적용해도 대량 임포트 프로파일에서는 여전히 `ObjectMapperUtils`의 매핑이 상위에 나옵니다. 선택적으로 사용할 수 있는 코드 생성 방식의 매퍼를 추가합니다. `LambdaMetafactory`로 대상 타입(예: `Person`)의 생성자와 setter를 실제 람다 클래스(`Supplier`, `BiConsumer`)로 만들어 JIT가 일반 메서드 호출처럼 인라인할 수 있게 하고, 문자열을 `int`/`long`/`LocalDate` 등 필드 타입으로 변환하는 작업도 함께 처리합니다.
+
+### 1. 문자열 변환기
+
+#### StringConverters.java
+
+```java
+package com.example.demo.utils;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+public final class StringConverters {
+
+    private static final Map<Class<?>, Function<String, ?>> CONVERTERS = new HashMap<>();
+
+    static {
+        CONVERTERS.put(String.class, Function.identity());
+        CONVERTERS.put(int.class, Integer::valueOf);
+        CONVERTERS.put(Integer.class, Integer::valueOf);
+        CONVERTERS.put(long.class, Long::valueOf);
+        CONVERTERS.put(Long.class, Long::valueOf);
+        CONVERTERS.put(double.class, Double::valueOf);
+        CONVERTERS.put(Double.class, Double::valueOf);
+        CONVERTERS.put(boolean.class, StringConverters::parseBoolean);
+        CONVERTERS.put(Boolean.class, StringConverters::parseBoolean);
+        CONVERTERS.put(BigDecimal.class, BigDecimal::new);
+        CONVERTERS.put(LocalDate.class, LocalDate::parse);
+        CONVERTERS.put(LocalDateTime.class, LocalDateTime::parse);
+    }
+
+    private StringConverters() {
+    }
+
+    public static Function<String, ?> forType(Class<?> type) {
+        Function<String, ?> converter = CONVERTERS.get(type);
+        if (converter == null) {
+            throw new IllegalArgumentException("No converter for type " + type.getName());
+        }
+        return converter;
+    }
+
+    public static boolean hasConverter(Class<?> type) {
+        return CONVERTERS.containsKey(type);
+    }
+
+    // Unlike Boolean.valueOf, anything other than true/false is an error instead of false
+    private static Boolean parseBoolean(String value) {
+        if ("true".equalsIgnoreCase(value)) {
+            return Boolean.TRUE;
+        }
+        if ("false".equalsIgnoreCase(value)) {
+            return Boolean.FALSE;
+        }
+        throw new IllegalArgumentException("Not a boolean: " + value);
+    }
+}
+```
+
+### 2. 생성된 매퍼
+
+필드마다 setter 메서드(`setFullName` 등)를 찾아 `LambdaMetafactory`로 `BiConsumer<T, Object>`를 만듭니다. setter가 없는 필드는 필드 setter 핸들을 감싼 람다로 대체합니다. `String`이 아닌 필드(`int`, `Integer`, `Long`, `LocalDate`, `BigDecimal` 등)에 빈 문자열이나 `null`이 오면 값이 없는 것으로 보고 설정하지 않습니다. 기본형은 기본값, 참조형은 `null`로 남으므로 빈 CSV 셀이 `NumberFormatException`이나 `DateTimeParseException`을 일으키지 않습니다.
+
+#### GeneratedEntityMapper.java
+
+```java
+package com.example.demo.utils;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+public final class GeneratedEntityMapper<T> {
+
+    private final Supplier<T> constructor;
+    private final String[] sourceKeys;
+    private final BiConsumer<T, Object>[] setters;
+    private final Function<String, ?>[] converters;
+    private final boolean[] skipBlank; // true when an empty string is treated as null
+
+    private GeneratedEntityMapper(Supplier<T> constructor, String[] sourceKeys, BiConsumer<T, Object>[] setters,
+                                  Function<String, ?>[] converters, boolean[] skipBlank) {
+        this.constructor = constructor;
+        this.sourceKeys = sourceKeys;
+        this.setters = setters;
+        this.converters = converters;
+        this.skipBlank = skipBlank;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> GeneratedEntityMapper<T> create(Class<T> clazz, Map<String, String> fieldMappings) throws IllegalAccessException, InstantiationException {
+        MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(clazz, MethodHandles.lookup());
+        Supplier<T> constructor = generateConstructor(lookup, clazz);
+
+        List<String> keys = new ArrayList<>();
+        List<BiConsumer<T, Object>> setters = new ArrayList<>();
+        List<Function<String, ?>> converters = new ArrayList<>();
+        List<Boolean> skipBlanks = new ArrayList<>();
+
+        for (Field field : clazz.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers())) {
+                continue;
+            }
+
+            boolean explicitlyMapped = false;
+            List<String> fieldKeys = new ArrayList<>();
+            for (Map.Entry<String, String> mapping : fieldMappings.entrySet()) {
+                if (mapping.getValue().equals(field.getName())) {
+                    fieldKeys.add(mapping.getKey());
+                    explicitlyMapped = true;
+                }
+            }
+            if (!fieldMappings.containsKey(field.getName())) {
+                fieldKeys.add(field.getName());
+            }
+            if (fieldKeys.isEmpty()) {
+                continue; // renamed away and nothing maps to it
+            }
+
+            // Only fields named in fieldMappings must have a converter up front; a field reached
+            // through its own name fails only when a row actually carries a value for it
+            Function<String, ?> converter;
+            if (explicitlyMapped || StringConverters.hasConverter(field.getType())) {
+                converter = StringConverters.forType(field.getType());
+            } else {
+                String typeName = field.getType().getName();
+                converter = value -> {
+                    throw new IllegalArgumentException("No converter for type " + typeName + " (field " + field.getName() + ")");
+                };
+            }
+            BiConsumer<T, Object> setter = generateSetter(lookup, clazz, field);
+            for (String key : fieldKeys) {
+                keys.add(key);
+                setters.add(setter);
+                converters.add(converter);
+                // "" means "no value" for every type that is not a string
+                skipBlanks.add(!field.getType().isAssignableFrom(String.class));
+            }
+        }
+
+        boolean[] skipBlank = new boolean[skipBlanks.size()];
+        for (int i = 0; i < skipBlank.length; i++) {
+            skipBlank[i] = skipBlanks.get(i);
+        }
+        return new GeneratedEntityMapper<>(constructor, keys.toArray(new String[0]),
+                setters.toArray(new BiConsumer[0]), converters.toArray(new Function[0]), skipBlank);
+    }
+
+    public T map(Map<String, String> map) {
+        T entity = constructor.get();
+        for (int i = 0; i < sourceKeys.length; i++) {
+            String value = map.get(sourceKeys[i]);
+            if (value == null || (skipBlank[i] && value.isEmpty())) {
+                continue;
+            }
+            setters[i].accept(entity, converters[i].apply(value));
+        }
+        return entity;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Supplier<T> generateConstructor(MethodHandles.Lookup lookup, Class<T> clazz) throws InstantiationException {
+        try {
+            MethodHandle handle = lookup.findConstructor(clazz, MethodType.methodType(void.class));
+            CallSite site = LambdaMetafactory.metafactory(lookup, "get",
+                    MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class),
+                    handle,
+                    MethodType.methodType(clazz));
+            return (Supplier<T>) site.getTarget().invokeExact();
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new InstantiationException(clazz.getName() + " has no accessible default constructor");
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to generate constructor for " + clazz.getName(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> BiConsumer<T, Object> generateSetter(MethodHandles.Lookup lookup, Class<T> clazz, Field field) throws IllegalAccessException {
+        String setterName = "set" + Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+        try {
+            MethodHandle handle = lookup.findVirtual(clazz, setterName, MethodType.methodType(void.class, field.getType()));
+            CallSite site = LambdaMetafactory.metafactory(lookup, "accept",
+                    MethodType.methodType(BiConsumer.class),
+                    MethodType.methodType(void.class, Object.class, Object.class),
+                    handle,
+                    MethodType.methodType(void.class, clazz, box(field.getType())));
+            return (BiConsumer<T, Object>) site.getTarget().invokeExact();
+        } catch (NoSuchMethodException e) {
+            // No setter: fall back to a direct field setter handle
+            MethodHandle fieldSetter = lookup.unreflectSetter(field)
+                    .asType(MethodType.methodType(void.class, Object.class, Object.class));
+            return (entity, value) -> {
+                try {
+                    fieldSetter.invokeExact((Object) entity, value);
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e);
+                }
+            };
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to generate setter for " + field, e);
+        }
+    }
+
+    private static Class<?> box(Class<?> type) {
+        return MethodType.methodType(type).wrap().returnType();
+    }
+}
+```
+
+### 3. ObjectMapperUtils에 생성 방식 추가
+
+기존 `mapperFor`와 같이 전역 캐시 없이 매퍼를 만들어 돌려주고, 호출하는 쪽이 행 루프 밖에서 한 번 만들어 재사용합니다.
+
+#### ObjectMapperUtils.java (추가)
+
+```java
+    /**
+     * Builds a mapper backed by LambdaMetafactory-generated constructor and setters.
+     * Values are converted from String to the field type (int, long, LocalDate, ...).
+     * Create it once outside the row loop and reuse it.
+     */
+    public static <T> GeneratedEntityMapper<T> generatedMapperFor(Class<T> clazz, Map<String, String> fieldMappings) throws IllegalAccessException, InstantiationException {
+        return GeneratedEntityMapper.create(clazz, fieldMappings);
+    }
+```
+
+### 4. 벤치마크 (JMH)
+
+기존 리플렉션 방식, 캐시된 `MethodHandle` 방식, 생성 방식을 비교합니다.
+
+#### ObjectMapperBenchmark.java
+
+```java
+import com.example.demo.Person;
+import com.example.demo.utils.EntityMapper;
+import com.example.demo.utils.GeneratedEntityMapper;
+import com.example.demo.utils.ObjectMapperUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ObjectMapperBenchmark {
+
+    private final Map<String, String> row = Map.of("name", "antony", "mail", "antony@naver.com");
+    private final Map<String, String> fieldMappings = Map.of("name", "fullName", "mail", "emailAddress");
+
+    private EntityMapper<Person> cachedMapper;
+    private GeneratedEntityMapper<Person> generatedMapper;
+
+    @Setup
+    public void setUp() throws Exception {
+        cachedMapper = ObjectMapperUtils.mapperFor(Person.class, fieldMappings);
+        generatedMapper = ObjectMapperUtils.generatedMapperFor(Person.class, fieldMappings);
+    }
+
+    @Benchmark
+    public Person reflective() throws Exception {
+        // Original implementation
+        Person entity = Person.class.getDeclaredConstructor().newInstance();
+        for (Map.Entry<String, String> entry : row.entrySet()) {
+            String fieldName = fieldMappings.getOrDefault(entry.getKey(), entry.getKey());
+            try {
+                Field field = Person.class.getDeclaredField(fieldName);
+                field.setAccessible(true);
+                field.set(entity, entry.getValue());
+            } catch (NoSuchFieldException e) {
+                // ignore
+            }
+        }
+        return entity;
+    }
+
+    @Benchmark
+    public Person cachedHandles() {
+        return cachedMapper.map(row);
+    }
+
+    @Benchmark
+    public Person generated() {
+        return generatedMapper.map(row);
+    }
+}
+```
+
+### 5. 사용 예제
+
+```java
+public class Employee {
+    private String name;
+    private int age;
+    private long salary;
+    private LocalDate hireDate;
+    // Getters and Setters
+}
+
+GeneratedEntityMapper<Employee> mapper = ObjectMapperUtils.generatedMapperFor(Employee.class, Map.of("hire_date", "hireDate"));
+Employee employee = mapper.map(Map.of("name", "lim", "age", "31", "salary", "5000000", "hire_date", "2024-03-02"));
+```
+
+### 요약
+
+1. **코드 생성**: `LambdaMetafactory`가 생성자와 setter마다 전용 람다 클래스를 만들어 주므로, 호출 시 리플렉션이나 `MethodHandle` 호출 없이 일반 인터페이스 호출이 됩니다.
+2. **타입 변환**: 필드 타입별 변환 함수를 미리 선택해 두고 행마다 `converters[i].apply(value)`만 호출합니다. `fieldMappings`로 직접 지정한 필드의 타입을 지원하지 않으면 매퍼 생성 시점에 `IllegalArgumentException`이 발생합니다. 같은 이름 규칙으로만 연결된 필드(예: 매핑하지 않은 `List` 필드)는 매퍼 생성을 막지 않고, 실제로 그 키에 값이 들어온 행에서만 예외가 납니다.
+   - 불리언은 `Boolean.valueOf`와 달리 `true`/`false`(대소문자 무시)만 허용하고, `"yes"`나 오타는 `false`로 바꾸지 않고 `IllegalArgumentException`을 던집니다.
+3. **선택적 사용**: 기존 `mapToEntity`/`mapperFor`는 그대로 두고, 필요한 곳에서만 `generatedMapperFor`를 사용합니다. 기존 방식은 값을 문자열 그대로 설정하고, 생성 방식은 필드 타입으로 변환한다는 점이 다릅니다.
+4. **벤치마크**: `ObjectMapperBenchmark`로 세 가지 방식의 행당 변환 시간을 비교할 수 있습니다.
+
+
+
+
+
+
+
+`ExcelUtils.writeDataToExcel(List<T>, filePath, Class<T>)`은 헤더를 만들 때 엔티티마다 `clazz.getDeclaredFields()`를 호출하고, 데이터를 쓸 때는 셀마다 `getDeclaredField(entry.getKey())`와 `setAccessible(true)`를 호출한 뒤 모든 값을 `toString()`으로 씁니다. 클래스마다 한 번만 컬럼 추출기(컬럼 이름, 캐시된 getter 핸들, 셀 타입)를 만들어 두고, 숫자/날짜/불리언은 문자열이 아닌 해당 타입의 셀로 쓰도록 바꿉니다. 목표는 50만 건 내보내기 기준 10배 속도 향상입니다.
+
+### 1. 클래스별 컬럼 추출기
+
+#### ColumnExtractor.java
+
+```java
+package com.example.demo.utils;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public final class ColumnExtractor<T> {
+
+    enum CellKind { NUMERIC, BOOLEAN, LOCAL_DATE, LOCAL_DATE_TIME, DATE, STRING }
+
+    private static final ClassValue<ColumnExtractor<?>> CACHE = new ClassValue<>() {
+        @Override
+        protected ColumnExtractor<?> computeValue(Class<?> type) {
+            return new ColumnExtractor<>(type);
+        }
+    };
+
+    private final String[] names;
+    private final MethodHandle[] getters;
+    private final CellKind[] kinds;
+
+    private ColumnExtractor(Class<T> clazz) {
+        List<String> names = new ArrayList<>();
+        List<MethodHandle> getters = new ArrayList<>();
+        List<CellKind> kinds = new ArrayList<>();
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(clazz, MethodHandles.lookup());
+            for (Field field : clazz.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                names.add(field.getName());
+                getters.add(lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class)));
+                kinds.add(kindOf(field.getType()));
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot access fields of " + clazz.getName(), e);
+        }
+        this.names = names.toArray(new String[0]);
+        this.getters = getters.toArray(new MethodHandle[0]);
+        this.kinds = kinds.toArray(new CellKind[0]);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> ColumnExtractor<T> forClass(Class<T> clazz) {
+        return (ColumnExtractor<T>) CACHE.get(clazz);
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String name(int column) {
+        return names[column];
+    }
+
+    public boolean isDate(int column) {
+        return kinds[column] == CellKind.LOCAL_DATE || kinds[column] == CellKind.LOCAL_DATE_TIME || kinds[column] == CellKind.DATE;
+    }
+
+    /** Returns the raw field value of the column, or null. */
+    public Object value(T entity, int column) {
+        try {
+            return getters[column].invokeExact((Object) entity);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to read field " + names[column], e);
+        }
+    }
+
+    /**
+     * Writes the column value of the entity into the cell using a typed setter.
+     * LocalDate uses dateStyle, LocalDateTime and Date use dateTimeStyle.
+     * Null values leave the cell blank.
+     */
+    public void writeCell(T entity, int column, Cell cell, CellStyle dateStyle, CellStyle dateTimeStyle) {
+        Object value = value(entity, column);
+        if (value == null) {
+            return;
+        }
+        switch (kinds[column]) {
+            case NUMERIC:
+                Number number = (Number) value;
+                double doubleValue = number.doubleValue();
+                if (isExact(number, doubleValue)) {
+                    cell.setCellValue(doubleValue);
+                } else {
+                    // Above 2^53 a double would round the value; keep the exact digits as text
+                    cell.setCellValue(number.toString());
+                }
+                break;
+            case BOOLEAN:
+                cell.setCellValue((Boolean) value);
+                break;
+            case LOCAL_DATE:
+                cell.setCellValue((LocalDate) value);
+                cell.setCellStyle(dateStyle);
+                break;
+            case LOCAL_DATE_TIME:
+                cell.setCellValue((LocalDateTime) value);
+                cell.setCellStyle(dateTimeStyle);
+                break;
+            case DATE:
+                cell.setCellValue((Date) value);
+                cell.setCellStyle(dateTimeStyle);
+                break;
+            default:
+                cell.setCellValue(value.toString());
+        }
+    }
+
+    /**
+     * Returns a style that differs from the workbook default only by the given data format.
+     * An existing matching style is reused, so repeated appends to one workbook do not pile up
+     * styles toward the 64,000 style limit.
+     */
+    public static CellStyle formatStyle(Workbook workbook, String format) {
+        short dataFormat = workbook.createDataFormat().getFormat(format);
+        CellStyle plain = workbook.getCellStyleAt(0);
+        for (int i = 1; i < workbook.getNumCellStyles(); i++) {
+            CellStyle style = workbook.getCellStyleAt(i);
+            if (style.getDataFormat() == dataFormat && looksLike(style, plain)) {
+                return style;
+            }
+        }
+        CellStyle style = workbook.createCellStyle();
+        style.setDataFormat(dataFormat);
+        return style;
+    }
+
+    // Everything a cell shows apart from the number format
+    private static boolean looksLike(CellStyle style, CellStyle plain) {
+        return style.getFontIndexAsInt() == plain.getFontIndexAsInt()
+                && style.getAlignment() == plain.getAlignment()
+                && style.getVerticalAlignment() == plain.getVerticalAlignment()
+                && style.getFillPattern() == plain.getFillPattern()
+                && style.getBorderTop() == plain.getBorderTop()
+                && style.getBorderBottom() == plain.getBorderBottom()
+                && style.getBorderLeft() == plain.getBorderLeft()
+                && style.getBorderRight() == plain.getBorderRight()
+                && style.getWrapText() == plain.getWrapText()
+                && style.getRotation() == plain.getRotation()
+                && style.getIndention() == plain.getIndention();
+    }
+
+    // True when the double holds the number without rounding
+    private static boolean isExact(Number number, double doubleValue) {
+        if (number instanceof Byte || number instanceof Short || number instanceof Integer
+                || number instanceof Float || number instanceof Double) {
+            return true;
+        }
+        if (number instanceof BigInteger) {
+            return ((BigInteger) number).bitLength() <= 53;
+        }
+        if (number instanceof BigDecimal) {
+            return Double.isFinite(doubleValue) && new BigDecimal(doubleValue).compareTo((BigDecimal) number) == 0;
+        }
+        // Long, AtomicLong and other integral types; Long.MAX_VALUE rounds up to 2^63 and casts back to itself
+        long longValue = number.longValue();
+        return longValue != Long.MAX_VALUE && (long) doubleValue == longValue;
+    }
+
+    private static CellKind kindOf(Class<?> type) {
+        if (type.isPrimitive()) {
+            if (type == boolean.class) {
+                return CellKind.BOOLEAN;
+            }
+            return type == char.class ? CellKind.STRING : CellKind.NUMERIC;
+        }
+        if (Number.class.isAssignableFrom(type)) {
+            return CellKind.NUMERIC;
+        }
+        if (type == Boolean.class) {
+            return CellKind.BOOLEAN;
+        }
+        if (type == LocalDate.class) {
+            return CellKind.LOCAL_DATE;
+        }
+        if (type == LocalDateTime.class) {
+            return CellKind.LOCAL_DATE_TIME;
+        }
+        if (Date.class.isAssignableFrom(type)) {
+            return CellKind.DATE;
+        }
+        return CellKind.STRING;
+    }
+}
+```
+
+### 2. ExcelUtils 수정
+
+헤더는 엔티티 수와 관계없이 추출기에서 한 번만 계산하고, 각 컬럼의 시트 내 위치를 `int[]`로 미리 구해 둡니다. 날짜 셀 스타일도 워크북마다 한 번만 만듭니다.
+
+#### ExcelUtils.java (수정)
+
+```java
+package com.example.demo.utils;
+
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+public class ExcelUtils {
+
+    public static <T> void writeDataToExcel(List<T> data, String filePath, Class<T> clazz) throws IOException {
+        XSSFWorkbook workbook;
+        XSSFSheet sheet;
+        boolean fileExists = new java.io.File(filePath).exists();
+        Map<String, Integer> headerIndexMap = new LinkedHashMap<>();
+        int rowIndex;
+
+        if (fileExists) {
+            try (FileInputStream fileIn = new FileInputStream(filePath)) {
+                workbook = new XSSFWorkbook(fileIn);
+                sheet = workbook.getSheetAt(0);
+                rowIndex = sheet.getLastRowNum() + 1;
+
+                // Read existing headers
+                Row headerRow = sheet.getRow(0);
+                for (Cell cell : headerRow) {
+                    headerIndexMap.put(cell.getStringCellValue(), cell.getColumnIndex());
+                }
+            }
+        } else {
+            workbook = new XSSFWorkbook();
+            sheet = workbook.createSheet("Data");
+            sheet.createRow(0);
+            rowIndex = 1; // Start writing data from the second row (first row is header)
+        }
+
+        // Resolve column positions once per class, adding missing headers
+        ColumnExtractor<T> extractor = ColumnExtractor.forClass(clazz);
+        Row headerRow = sheet.getRow(0);
+        int[] columnIndices = new int[extractor.size()];
+        for (int c = 0; c < extractor.size(); c++) {
+            Integer index = headerIndexMap.get(extractor.name(c));
+            if (index == null) {
+                index = Math.max(headerRow.getLastCellNum(), 0);
+                headerRow.createCell(index).setCellValue(extractor.name(c));
+                headerIndexMap.put(extractor.name(c), index);
+            }
+            columnIndices[c] = index;
+        }
+
+        // Reuses the styles added by earlier appends to this workbook
+        CellStyle dateStyle = ColumnExtractor.formatStyle(workbook, "yyyy-mm-dd");
+        CellStyle dateTimeStyle = ColumnExtractor.formatStyle(workbook, "yyyy-mm-dd hh:mm:ss");
+
+        // Write data rows with typed cells
+        for (T entity : data) {
+            Row row = sheet.createRow(rowIndex++);
+            for (int c = 0; c < columnIndices.length; c++) {
+                extractor.writeCell(entity, c, row.createCell(columnIndices[c]), dateStyle, dateTimeStyle);
+            }
+        }
+
+        // Write to file
+        try (FileOutputStream fileOut = new FileOutputStream(filePath)) {
+            workbook.write(fileOut);
+        }
+        workbook.close();
+    }
+}
+```
+
+### 설명
+
+1. **한 번만 하는 리플렉션**: `ColumnExtractor.forClass`는 `ClassValue`에 캐시되므로 `getDeclaredFields()`와 getter 핸들 생성은 클래스당 한 번입니다. 행을 쓸 때는 `getters[c].invokeExact(entity)`만 호출합니다.
+2. **헤더 계산**: 기존 코드는 엔티티마다 모든 필드를 순회하며 헤더를 확인했지만, 이제는 컬럼 수만큼 한 번만 확인하고 시트 내 위치를 `columnIndices` 배열로 고정합니다.
+3. **타입별 셀**:
+   - 숫자(`int`, `long`, `Integer`, `BigDecimal` 등)는 숫자 셀로, `boolean`은 불리언 셀로 씁니다. 단 `double`로 정확히 표현되지 않는 값(2^53을 넘는 `long`/`BigInteger`, 자릿수가 많은 `BigDecimal`)은 반올림되지 않도록 기존처럼 `toString()` 문자열로 씁니다.
+   - `LocalDate`는 날짜 셀로 쓰고 `yyyy-mm-dd` 서식을, 시각이 있는 `LocalDateTime`과 `Date`는 `yyyy-mm-dd hh:mm:ss` 서식을 적용해 시간이 가려지지 않게 합니다. 스타일은 `ColumnExtractor.formatStyle`이 워크북에서 같은 서식의 기본 모양 스타일을 먼저 찾아 재사용하므로, 같은 파일에 여러 번 추가해도 셀 스타일이 늘어나지 않아 개수 제한(64,000개)에 걸리지 않습니다.
+   - 그 외 타입만 `toString()`을 사용합니다.
+4. **null 처리**: 기존 코드는 `field.get(entity).toString()`에서 값이 `null`이면 `NullPointerException`이 발생했지만, 이제는 빈 셀로 남깁니다.
+5. **예외**: 리플렉션 예외가 더 이상 밖으로 나오지 않으므로 메서드 시그니처에서 `IllegalAccessException`을 제거했습니다. 호출부의 `catch` 블록도 함께 정리합니다.
+
+
+
+
+
+
+
+지금의 CSV 처리 코드(`CsvUpdater`, `CSVUtils`)는 모두 플랫폼 기본 인코딩의 `FileReader`와 OpenCSV/Commons CSV를 거치며, 행마다 `String[]`과 필드마다 `String`을 만듭니다. 키 비교만 하고 버리는 필드도 모두 문자열로 디코딩됩니다. 파일을 `MappedByteBuffer`로 매핑하고 그 위에서 바로 토큰화해서, 필드는 버퍼 안의 (offset, length) 구간으로만 노출하고 문자열 디코딩은 실제로 필요할 때만 하는 CSV 리더를 만듭니다. 키 조회와 조인은 바이트 비교로 처리해서 할당이 없도록 합니다.
+
+프로젝트가 JDK 17 기준이므로 `MemorySegment`(JDK 22에서 정식 기능) 대신 `MappedByteBuffer`를 사용합니다. `MappedByteBuffer`는 한 번에 2 GB까지만 매핑할 수 있으므로, 파일을 일정 크기의 창(window)으로 나눠 매핑하고 레코드가 창 경계에 걸리면 그 레코드 시작 위치부터 다시 매핑합니다.
+
+### 1. 메모리 매핑 CSV 리더
+
+RFC 4180 형식(구분자 `,`, 따옴표 `"`, 따옴표 안의 `""` 이스케이프와 줄바꿈, `\n`/`\r\n` 줄끝)을 지원하며 파일은 UTF-8로 가정합니다.
+
+#### MappedCsvReader.java
+
+```java
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class MappedCsvReader implements Closeable {
+
+    private static final int DEFAULT_WINDOW = 256 * 1024 * 1024;
+    private static final int NEED_MORE = -1;
+    private static final int NO_RECORD = -2;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int windowSize;
+
+    private MappedByteBuffer buffer;
+    private long windowStart;
+    private int position;
+    private int recordStart;
+    private int recordEnd; // end of the last field, before the line break
+
+    // Field slices of the current record, relative to the current buffer
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private boolean[] escaped = new boolean[16];
+    private int fieldCount;
+    private byte[] scratch = new byte[256];
+    private int scratchLength;
+
+    public MappedCsvReader(Path path) throws IOException {
+        this(path, DEFAULT_WINDOW);
+    }
+
+    public MappedCsvReader(Path path, int windowSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        this.windowSize = windowSize;
+        map(0);
+    }
+
+    /**
+     * Advances to the next record. Field slices of the previous record become invalid.
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            int start = position;
+            int end = parseRecord(start);
+            if (end == NO_RECORD) {
+                return false;
+            }
+            if (end != NEED_MORE) {
+                recordStart = start;
+                position = end;
+                return true;
+            }
+            // Record crosses the window boundary: remap from the record start
+            if (position == 0 && buffer.limit() == windowSize) {
+                throw new IOException("Record at offset " + windowStart + " is larger than the mapping window");
+            }
+            map(windowStart + position);
+        }
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    public int fieldLength(int field) {
+        return ends[field] - starts[field];
+    }
+
+    /**
+     * Compares the raw bytes of the field with the key without allocating.
+     */
+    public boolean fieldEquals(int field, byte[] key) {
+        if (escaped[field]) {
+            return Arrays.equals(unescape(field), 0, scratchLength, key, 0, key.length);
+        }
+        int start = starts[field];
+        int length = ends[field] - start;
+        if (length != key.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(start + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int fieldHash(int field) {
+        if (escaped[field]) {
+            return ByteKeyMap.hash(unescape(field), 0, scratchLength);
+        }
+        int h = ByteKeyMap.HASH_SEED;
+        for (int i = starts[field]; i < ends[field]; i++) {
+            h = (h ^ buffer.get(i)) * ByteKeyMap.HASH_PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * Decodes the field as a UTF-8 String. Only call this for fields that are actually needed.
+     */
+    public String getString(int field) {
+        if (escaped[field]) {
+            return new String(unescape(field), 0, scratchLength, StandardCharsets.UTF_8);
+        }
+        int length = ends[field] - starts[field];
+        byte[] bytes = scratch(length);
+        buffer.get(starts[field], bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copies the raw bytes of the current record, without its line break, so unchanged rows
+     * can be written out without decoding or re-quoting.
+     */
+    public void copyRecord(OutputStream out) throws IOException {
+        int length = recordEnd - recordStart;
+        byte[] bytes = scratch(length);
+        buffer.get(recordStart, bytes, 0, length);
+        out.write(bytes, 0, length);
+    }
+
+    public String[] toArray() {
+        String[] row = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            row[i] = getString(i);
+        }
+        return row;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null; // the mapping is released when the buffer is garbage collected
+        channel.close();
+    }
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        long size = Math.min(windowSize, fileSize - start);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        position = 0;
+    }
+
+    private int parseRecord(int start) throws IOException {
+        int limit = buffer.limit();
+        boolean atEof = windowStart + limit == fileSize;
+        int p = start;
+        fieldCount = 0;
+
+        while (true) {
+            if (p >= limit) {
+                if (!atEof) {
+                    return NEED_MORE;
+                }
+                if (fieldCount == 0 && p == start) {
+                    return NO_RECORD;
+                }
+                addField(p, p, false); // last field ends at EOF
+                recordEnd = p;
+                return p;
+            }
+
+            byte b = buffer.get(p);
+            if (b == '"') {
+                int fieldStart = ++p;
+                boolean hasEscapes = false;
+                while (true) {
+                    if (p >= limit) {
+                        if (atEof) {
+                            throw new IOException("Unterminated quoted field at offset " + (windowStart + fieldStart - 1));
+                        }
+                        return NEED_MORE;
+                    }
+                    if (buffer.get(p) == '"') {
+                        if (p + 1 >= limit && !atEof) {
+                            return NEED_MORE;
+                        }
+                        if (p + 1 < limit && buffer.get(p + 1) == '"') {
+                            hasEscapes = true;
+                            p += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    p++;
+                }
+                addField(fieldStart, p, hasEscapes);
+                p++; // closing quote
+            } else {
+                int fieldStart = p;
+                while (p < limit && (b = buffer.get(p)) != ',' && b != '\n' && b != '\r') {
+                    p++;
+                }
+                if (p >= limit) {
+                    if (!atEof) {
+                        return NEED_MORE;
+                    }
+                    addField(fieldStart, p, false);
+                    recordEnd = p;
+                    return p;
+                }
+                addField(fieldStart, p, false);
+            }
+
+            // After a field: delimiter, line end or EOF
+            recordEnd = p;
+            if (p >= limit) {
+                return atEof ? p : NEED_MORE;
+            }
+            b = buffer.get(p);
+            if (b == ',') {
+                p++;
+            } else if (b == '\n') {
+                return p + 1;
+            } else if (b == '\r') {
+                if (p + 1 >= limit) {
+                    return atEof ? p + 1 : NEED_MORE;
+                }
+                return buffer.get(p + 1) == '\n' ? p + 2 : p + 1;
+            } else {
+                throw new IOException("Unexpected character after quoted field at offset " + (windowStart + p));
+            }
+        }
+    }
+
+    private void addField(int start, int end, boolean hasEscapes) {
+        if (fieldCount == starts.length) {
+            starts = Arrays.copyOf(starts, fieldCount * 2);
+            ends = Arrays.copyOf(ends, fieldCount * 2);
+            escaped = Arrays.copyOf(escaped, fieldCount * 2);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        escaped[fieldCount] = hasEscapes;
+        fieldCount++;
+    }
+
+    // Copies the field into the scratch buffer, collapsing "" into "
+    private byte[] unescape(int field) {
+        byte[] bytes = scratch(ends[field] - starts[field]);
+        int n = 0;
+        for (int i = starts[field]; i < ends[field]; i++) {
+            byte b = buffer.get(i);
+            bytes[n++] = b;
+            if (b == '"') {
+                i++; // skip the second quote
+            }
+        }
+        scratchLength = n;
+        return bytes;
+    }
+
+    private byte[] scratch(int length) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        return scratch;
+    }
+}
+```
+
+### 2. 바이트 키 해시 맵
+
+키를 UTF-8 바이트 배열로 저장하고, 조회는 `MappedCsvReader`의 필드 구간을 그대로 사용합니다. 조회 시 `String`이나 `byte[]`를 만들지 않습니다.
+
+#### ByteKeyMap.java
+
+```java
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class ByteKeyMap<V> {
+
+    static final int HASH_SEED = 0x811c9dc5;
+    static final int HASH_PRIME = 0x01000193;
+
+    private byte[][] keys;
+    private int[] hashes;
+    private Object[] values;
+    private int size;
+
+    public ByteKeyMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1;
+        keys = new byte[capacity][];
+        hashes = new int[capacity];
+        values = new Object[capacity];
+    }
+
+    public static int hash(byte[] bytes, int offset, int length) {
+        int h = HASH_SEED;
+        for (int i = offset; i < offset + length; i++) {
+            h = (h ^ bytes[i]) * HASH_PRIME;
+        }
+        return h;
+    }
+
+    public void put(String key, V value) {
+        put(key.getBytes(StandardCharsets.UTF_8), value);
+    }
+
+    public void put(byte[] key, V value) {
+        if ((size + 1) * 2 > keys.length) {
+            resize();
+        }
+        int hash = hash(key, 0, key.length);
+        int mask = keys.length - 1;
+        int slot = hash & mask;
+        while (keys[slot] != null) {
+            if (hashes[slot] == hash && Arrays.equals(keys[slot], key)) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        hashes[slot] = hash;
+        values[slot] = value;
+        size++;
+    }
+
+    /**
+     * Looks up the value for the given field of the current record without allocating.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(MappedCsvReader reader, int field) {
+        int hash = reader.fieldHash(field);
+        int mask = keys.length - 1;
+        int slot = hash & mask;
+        while (keys[slot] != null) {
+            if (hashes[slot] == hash && reader.fieldEquals(field, keys[slot])) {
+                return (V) values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void resize() {
+        byte[][] oldKeys = keys;
+        int[] oldHashes = hashes;
+        Object[] oldValues = values;
+        keys = new byte[oldKeys.length * 2][];
+        hashes = new int[keys.length];
+        values = new Object[keys.length];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = oldHashes[i] & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
+```
+
+### 3. 키 조인 업데이트
+
+업데이트 데이터를 `ByteKeyMap`에 넣어 두고, 원본 CSV를 매핑해서 키가 일치하는 행만 문자열로 디코딩해 병합합니다. 일치하지 않는 행은 디코딩하지 않고 원본 바이트를 그대로 복사합니다(새 컬럼이 생기면 빈 필드만 덧붙입니다). 병합 규칙은 `updateCsvStreaming`과 같습니다: 컬럼 이름은 대소문자를 무시하고, 같은 키의 업데이트는 순서대로 적용되며(`null` 값은 건너뜀), 파일에 없는 키는 끝에 추가합니다.
+
+#### CsvUpdater.java (추가)
+
+```java
+    /**
+     * Upserts like updateCsvStreaming, but matches keys as raw bytes through ByteKeyMap:
+     * only matching rows are decoded, every other row is copied byte for byte.
+     * The file must be UTF-8, and key values are compared exactly (not case-folded).
+     */
+    public static void updateCsvMapped(String filePath, String keyColumn, String comparisonKey, List<Map<String, String>> data) throws IOException {
+        Path source = Paths.get(filePath).toAbsolutePath();
+
+        // One merged update per key, in first-seen order; later non-null values win
+        Map<String, Map<String, String>> updatesInOrder = new LinkedHashMap<>();
+        ByteKeyMap<Map<String, String>> updatesByKey = new ByteKeyMap<>(data.size());
+        for (Map<String, String> row : data) {
+            String key = row.get(comparisonKey);
+            if (key == null) {
+                continue;
+            }
+            Map<String, String> merged = updatesInOrder.get(key);
+            if (merged == null) {
+                merged = new LinkedHashMap<>();
+                updatesInOrder.put(key, merged);
+                updatesByKey.put(key, merged);
+            }
+            for (Map.Entry<String, String> entry : row.entrySet()) {
+                if (entry.getValue() != null) {
+                    merged.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        Set<Map<String, String>> matched = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        Path temp = Files.createTempFile(source.getParent(), source.getFileName().toString(), ".tmp");
+        try (MappedCsvReader reader = new MappedCsvReader(source);
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024)) {
+            boolean hasHeader = reader.next();
+            String[] header = hasHeader ? reader.toArray() : new String[0];
+
+            // Final header: existing columns + new update columns (case-insensitive)
+            Map<String, Integer> indexByName = new HashMap<>();
+            List<String> finalHeader = new ArrayList<>(Arrays.asList(header));
+            int keyIndex = -1;
+            String foldedKeyColumn = keyColumn.toLowerCase();
+            for (int i = 0; i < header.length; i++) {
+                String folded = header[i].toLowerCase();
+                indexByName.putIfAbsent(folded, i);
+                if (keyIndex < 0 && folded.equals(foldedKeyColumn)) {
+                    keyIndex = i;
+                }
+            }
+            for (Map<String, String> update : updatesInOrder.values()) {
+                for (String column : update.keySet()) {
+                    if (indexByName.putIfAbsent(column.toLowerCase(), finalHeader.size()) == null) {
+                        finalHeader.add(column);
+                    }
+                }
+            }
+            int width = finalHeader.size();
+            if (hasHeader && width == header.length) {
+                reader.copyRecord(out);
+            } else {
+                writeLine(out, finalHeader.toArray(new String[0]));
+            }
+            out.write('\n');
+
+            while (reader.next()) {
+                if (keyIndex < 0) {
+                    throw new IllegalArgumentException("Column " + keyColumn + " not found");
+                }
+                Map<String, String> update = keyIndex < reader.fieldCount() ? updatesByKey.get(reader, keyIndex) : null;
+                if (update == null) {
+                    // Unchanged row: raw bytes, padded with empty fields to the new width
+                    reader.copyRecord(out);
+                    for (int i = reader.fieldCount(); i < width; i++) {
+                        out.write(',');
+                    }
+                } else {
+                    String[] row = reader.toArray(); // decode only matching rows
+                    row = Arrays.copyOf(row, Math.max(row.length, width));
+                    apply(row, update, indexByName);
+                    writeLine(out, row);
+                    matched.add(update);
+                }
+                out.write('\n');
+            }
+
+            // Append updates whose key was not found in the file
+            for (Map<String, String> update : updatesInOrder.values()) {
+                if (!matched.contains(update)) {
+                    String[] row = new String[width];
+                    apply(row, update, indexByName);
+                    writeLine(out, row);
+                    out.write('\n');
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        try {
+            Files.move(temp, source, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, source, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void apply(String[] row, Map<String, String> update, Map<String, Integer> indexByName) {
+        for (Map.Entry<String, String> entry : update.entrySet()) {
+            row[indexByName.get(entry.getKey().toLowerCase())] = entry.getValue();
+        }
+    }
+
+    // Same quoting as CSVWriter: every non-null field quoted, quotes doubled
+    private static void writeLine(OutputStream out, String[] row) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            if (row[i] != null) {
+                sb.append('"').append(row[i].replace("\"", "\"\"")).append('"');
+            }
+        }
+        out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+```
+
+`java.io.BufferedOutputStream`, `java.io.OutputStream`, `java.nio.charset.StandardCharsets` import를 추가합니다.
+
+```java
+CsvUpdater.updateCsvMapped("data.csv", "id", "uid", data);
+```
+
+### 설명
+
+1. **제로 카피 토큰화**: 필드는 매핑된 버퍼 안의 `starts[i]`/`ends[i]` 구간으로만 기록됩니다. 필드 배열은 재사용되므로 행마다 객체가 생기지 않습니다.
+2. **필요할 때만 디코딩**: `getString`/`toArray`를 호출할 때만 UTF-8 문자열을 만듭니다. `""` 이스케이프가 있는 필드만 스크래치 버퍼에서 따옴표를 정리합니다.
+3. **바이트 비교**: `fieldHash`와 `fieldEquals`는 버퍼의 바이트를 직접 읽으므로, `ByteKeyMap.get(reader, field)`로 조인 키를 할당 없이 조회할 수 있습니다. 비교는 바이트 단위이므로 기존 `updateCsv`처럼 대소문자를 무시해야 하는 경우에는 키를 미리 정규화해 둔 파일에 사용하거나 디코딩 후 비교해야 합니다.
+4. **대용량 파일**: 기본 256 MB 창 단위로 매핑하며, 창 경계에 걸린 레코드는 그 레코드 시작 위치부터 다시 매핑해서 처리합니다. 하나의 레코드는 창 크기보다 작아야 합니다.
+5. **인코딩**: 파일을 UTF-8로 가정합니다. 기존처럼 플랫폼 기본 인코딩으로 작성된 파일(예: Windows의 MS949)에는 사용하지 않습니다.
+6. **해제 시점**: JDK 17의 `MappedByteBuffer`는 명시적으로 해제할 수 없어 GC 시점에 매핑이 해제됩니다. Windows에서는 그 전까지 원본 파일을 교체(`Files.move`)할 수 없으므로, Windows 서버에서는 `updateCsvMapped` 대신 `updateCsvStreaming`을 사용합니다.
+7. **조인 업데이트**: `updateCsvMapped`는 일치하는 행만 디코딩하고 나머지는 `copyRecord`로 원본 바이트를 복사하므로, 업데이트가 적은 큰 파일에서 행마다 `String[]`을 만들지 않습니다. 바뀐 행은 `CSVWriter`와 같이 모든 필드를 따옴표로 감싸서 씁니다. 키 비교는 바이트 단위라서 `updateCsvStreaming`과 달리 대소문자를 구분합니다.
+
+
+
+
+
+
+
+5 GB CSV 파일을 `CsvUpdater.updateCsvFile`은 한 스레드로만 파싱합니다. 파일을 바이트 구간(chunk)으로 나누고, 따옴표 안의 줄바꿈까지 고려해 안전한 레코드 경계를 찾은 뒤, 각 구간을 Fork/Join 풀에서 병렬로 파싱하는 리더를 만듭니다. 파싱 결과는 순서를 유지하거나(ordered) 순서 없이(unordered) 행 묶음(batch)으로 업데이트 코드에 넘겨줍니다. 구간 파싱은 앞에서 만든 `MappedCsvReader`를 재사용합니다.
+
+### 1. 레코드 경계 찾기
+
+임의의 바이트 위치에서는 그 위치가 따옴표 안인지 밖인지 알 수 없습니다. 그래서 다음 3단계로 처리합니다.
+
+1. **병렬 스캔**: 구간마다 따옴표(`"`) 개수와, "구간 시작이 따옴표 밖일 때"와 "따옴표 안일 때" 각각의 첫 번째 레코드 끝(`\n`) 위치를 기록합니다. `""` 이스케이프는 따옴표 2개이므로 홀짝에 영향을 주지 않습니다.
+2. **순차 보정**: 첫 구간은 따옴표 밖에서 시작합니다. 앞 구간의 따옴표 개수 홀짝으로 다음 구간의 시작 상태를 정하고, 그 상태에 맞는 첫 줄바꿈 바로 뒤를 레코드 경계로 사용합니다. 구간 수만큼의 단순 계산이라 비용이 거의 없습니다.
+3. **병렬 파싱**: 보정된 경계 `[start, end)`마다 `MappedCsvReader`로 파싱합니다.
+
+### 2. MappedCsvReader에 구간 읽기 추가
+
+`fileSize`를 "읽기 끝 위치"로 사용하므로, 시작/끝 위치를 받는 생성자와 현재 위치를 알려 주는 메서드만 추가하면 됩니다.
+
+#### MappedCsvReader.java (추가)
+
+```java
+    /**
+     * Reads only the records in [start, end). start must be a record boundary.
+     */
+    public MappedCsvReader(Path path, long start, long end, int windowSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileSize = Math.min(end, channel.size());
+        this.windowSize = windowSize;
+        map(start);
+    }
+
+    // File offset of the next record
+    public long offset() {
+        return windowStart + position;
+    }
+```
+
+### 3. 병렬 CSV 리더
+
+#### ParallelCsvReader.java
+
+```java
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+public class ParallelCsvReader {
+
+    private static final long MIN_CHUNK = 4L * 1024 * 1024;
+    private static final long MAX_CHUNK = 128L * 1024 * 1024;
+    private static final int BATCH_SIZE = 10_000;
+    // Source bytes whose parsed rows may be held at once in ordered mode
+    private static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 256L * 1024 * 1024;
+
+    private final Path path;
+    private final ForkJoinPool pool;
+    private final long maxInFlightBytes;
+    private String[] header;
+
+    public ParallelCsvReader(Path path, ForkJoinPool pool) {
+        this(path, pool, DEFAULT_MAX_IN_FLIGHT_BYTES);
+    }
+
+    public ParallelCsvReader(Path path, ForkJoinPool pool, long maxInFlightBytes) {
+        this.path = path;
+        this.pool = pool;
+        this.maxInFlightBytes = maxInFlightBytes;
+    }
+
+    public String[] getHeader() {
+        return header;
+    }
+
+    /**
+     * Parses the data rows in parallel. In ordered mode the consumer is called from the
+     * calling thread in file order; otherwise it is called from worker threads in any
+     * order and must be thread-safe.
+     */
+    public void read(boolean ordered, Consumer<List<String[]>> batchConsumer) throws IOException {
+        long dataStart;
+        long fileSize;
+        try (MappedCsvReader reader = new MappedCsvReader(path)) {
+            header = reader.next() ? reader.toArray() : new String[0];
+            dataStart = reader.offset();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            fileSize = channel.size();
+        }
+        if (dataStart >= fileSize) {
+            return;
+        }
+
+        // Ordered mode holds whole parsed ranges, so split finer to keep every core busy within the byte budget
+        long maxChunk = ordered
+                ? Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, maxInFlightBytes / (pool.getParallelism() * 2L)))
+                : MAX_CHUNK;
+        try {
+            List<long[]> ranges = findRecordRanges(dataStart, fileSize, maxChunk);
+            if (ordered) {
+                readOrdered(ranges, batchConsumer);
+            } else {
+                CompletableFuture<?>[] futures = new CompletableFuture<?>[ranges.size()];
+                for (int i = 0; i < ranges.size(); i++) {
+                    long[] range = ranges.get(i);
+                    futures[i] = CompletableFuture.runAsync(() -> parseRange(range, batchConsumer), pool);
+                }
+                CompletableFuture.allOf(futures).join();
+            }
+        } catch (CompletionException e) {
+            // join() wraps worker failures; rethrow IO and parse errors as the declared IOException
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void readOrdered(List<long[]> ranges, Consumer<List<String[]>> batchConsumer) {
+        // Bound memory by the source bytes of the ranges in flight (always at least one range)
+        Deque<CompletableFuture<List<List<String[]>>>> inFlight = new ArrayDeque<>();
+        Deque<Long> inFlightSizes = new ArrayDeque<>();
+        long inFlightBytes = 0;
+        int next = 0;
+        while (next < ranges.size() || !inFlight.isEmpty()) {
+            while (next < ranges.size()) {
+                long[] range = ranges.get(next);
+                long size = range[1] - range[0];
+                if (!inFlight.isEmpty() && inFlightBytes + size > maxInFlightBytes) {
+                    break;
+                }
+                next++;
+                inFlightBytes += size;
+                inFlightSizes.add(size);
+                inFlight.add(CompletableFuture.supplyAsync(() -> {
+                    List<List<String[]>> batches = new ArrayList<>();
+                    parseRange(range, batches::add);
+                    return batches;
+                }, pool));
+            }
+            for (List<String[]> batch : inFlight.poll().join()) {
+                batchConsumer.accept(batch);
+            }
+            inFlightBytes -= inFlightSizes.poll();
+        }
+    }
+
+    private void parseRange(long[] range, Consumer<List<String[]>> batchConsumer) {
+        long size = range[1] - range[0];
+        if (size > Integer.MAX_VALUE) {
+            throw new UncheckedIOException(new IOException("Record range at offset " + range[0] + " is " + size
+                    + " bytes; a single record cannot exceed 2 GB (missing line breaks or an unterminated quote?)"));
+        }
+        try (MappedCsvReader reader = new MappedCsvReader(path, range[0], range[1], (int) size)) {
+            List<String[]> batch = new ArrayList<>(BATCH_SIZE);
+            while (reader.next()) {
+                batch.add(reader.toArray());
+                if (batch.size() == BATCH_SIZE) {
+                    batchConsumer.accept(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) {
+                batchConsumer.accept(batch);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<long[]> findRecordRanges(long dataStart, long fileSize, long maxChunk) {
+        long chunkSize = Math.max(MIN_CHUNK, Math.min(maxChunk, (fileSize - dataStart) / (pool.getParallelism() * 4L) + 1));
+        List<long[]> chunks = new ArrayList<>();
+        for (long start = dataStart; start < fileSize; start += chunkSize) {
+            chunks.add(new long[]{start, Math.min(start + chunkSize, fileSize)});
+        }
+
+        // 1) Parallel scan: quote count and first line end for both starting states
+        List<CompletableFuture<ChunkScan>> scans = new ArrayList<>();
+        for (long[] chunk : chunks) {
+            scans.add(CompletableFuture.supplyAsync(() -> scan(chunk[0], chunk[1]), pool));
+        }
+
+        // 2) Sequential fix-up of the quote state at each chunk start
+        List<long[]> ranges = new ArrayList<>();
+        long rangeStart = dataStart;
+        int insideQuotes = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            ChunkScan scan = scans.get(i).join();
+            if (i > 0) {
+                long lineEnd = scan.firstLineEnd[insideQuotes];
+                if (lineEnd >= 0) {
+                    // The record ending at lineEnd belongs to the previous range
+                    ranges.add(new long[]{rangeStart, lineEnd + 1});
+                    rangeStart = lineEnd + 1;
+                }
+            }
+            insideQuotes ^= (int) (scan.quoteCount & 1);
+        }
+        if (rangeStart < fileSize) {
+            ranges.add(new long[]{rangeStart, fileSize});
+        }
+        return ranges;
+    }
+
+    private ChunkScan scan(long start, long end) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            ChunkScan scan = new ChunkScan();
+            int parity = 0;
+            for (int i = 0; i < buffer.limit(); i++) {
+                byte b = buffer.get(i);
+                if (b == '"') {
+                    scan.quoteCount++;
+                    parity ^= 1;
+                } else if (b == '\n') {
+                    // parity 0 -> outside quotes if the chunk started outside,
+                    // parity 1 -> outside quotes if the chunk started inside
+                    if (scan.firstLineEnd[parity] < 0) {
+                        scan.firstLineEnd[parity] = start + i;
+                    }
+                }
+            }
+            return scan;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static class ChunkScan {
+        long quoteCount;
+        // index 0: chunk starts outside quotes, index 1: chunk starts inside quotes
+        final long[] firstLineEnd = {-1, -1};
+    }
+}
+```
+
+### 4. 업데이트 코드에 연결하기
+
+순서를 유지하는 모드로 읽으면서, 앞의 스트리밍 업데이트(`updateCsvStreaming`)와 같은 규칙(`mergeRow` 재사용)으로 키가 일치하는 행을 병합해 임시 파일에 씁니다. 파싱은 여러 코어에서, 병합과 쓰기는 호출 스레드에서 순서대로 진행됩니다. 풀을 받지 않는 오버로드는 호출마다 풀을 만들고 끝나면 종료하며, 여러 번 호출하는 쪽은 자기 풀을 넘겨서 재사용합니다(이때 종료는 호출한 쪽의 책임입니다).
+
+#### CsvUpdater.java (추가)
+
+```java
+    public static void updateCsvParallel(String filePath, String keyColumn, String comparisonKey, List<Map<String, String>> data) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            updateCsvParallel(filePath, keyColumn, comparisonKey, data, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Same upsert as updateCsvStreaming, with the rows parsed by ParallelCsvReader on the given pool.
+     * The pool is not shut down. ParallelCsvReader reads UTF-8, so the output is written as UTF-8 too.
+     */
+    public static void updateCsvParallel(String filePath, String keyColumn, String comparisonKey, List<Map<String, String>> data,
+                                         ForkJoinPool pool) throws IOException {
+        Path source = Paths.get(filePath).toAbsolutePath();
+
+        // Index update data by key (only the update batch is kept in memory)
+        Map<String, Map<String, String>> updatesByKey = new LinkedHashMap<>();
+        for (Map<String, String> row : data) {
+            String keyColumnValue = row.get(comparisonKey);
+            if (keyColumnValue == null) {
+                continue;
+            }
+            updatesByKey.computeIfAbsent(keyColumnValue.toLowerCase(), k -> new LinkedHashMap<>()).putAll(row);
+        }
+
+        // The header decides the output columns before any batch arrives
+        String[] header;
+        try (MappedCsvReader reader = new MappedCsvReader(source)) {
+            header = reader.next() ? reader.toArray() : new String[0];
+        }
+        Map<String, Integer> headerIndexMap = new HashMap<>();
+        List<String> newHeader = new ArrayList<>(Arrays.asList(header));
+        for (int i = 0; i < header.length; i++) {
+            headerIndexMap.putIfAbsent(header[i].toLowerCase(), i);
+        }
+        Integer keyIndex = headerIndexMap.get(keyColumn.toLowerCase());
+        for (Map<String, String> row : updatesByKey.values()) {
+            for (String columnName : row.keySet()) {
+                if (!headerIndexMap.containsKey(columnName.toLowerCase())) {
+                    headerIndexMap.put(columnName.toLowerCase(), newHeader.size());
+                    newHeader.add(columnName);
+                }
+            }
+        }
+        int columnCount = newHeader.size();
+
+        Path temp = Files.createTempFile(source.getParent(), source.getFileName().toString(), ".tmp");
+        Set<String> matchedKeys = new HashSet<>();
+        try (CSVWriter writer = new CSVWriter(Files.newBufferedWriter(temp, StandardCharsets.UTF_8))) {
+            writer.writeNext(newHeader.toArray(new String[0]));
+
+            // Ordered mode: the consumer runs on this thread in file order
+            new ParallelCsvReader(source, pool).read(true, batch -> {
+                for (String[] row : batch) {
+                    if (keyIndex == null) {
+                        throw new IllegalArgumentException("Column " + keyColumn + " not found");
+                    }
+                    String[] outRow = row.length < columnCount ? Arrays.copyOf(row, columnCount) : row;
+                    if (keyIndex < row.length && row[keyIndex] != null) {
+                        String keyColumnValue = row[keyIndex].toLowerCase();
+                        Map<String, String> update = updatesByKey.get(keyColumnValue);
+                        if (update != null) {
+                            mergeRow(outRow, update, headerIndexMap);
+                            matchedKeys.add(keyColumnValue);
+                        }
+                    }
+                    writer.writeNext(outRow);
+                }
+            });
+
+            // Append rows whose key was not found in the file
+            for (Map.Entry<String, Map<String, String>> entry : updatesByKey.entrySet()) {
+                if (!matchedKeys.contains(entry.getKey())) {
+                    String[] newRow = new String[columnCount];
+                    mergeRow(newRow, entry.getValue(), headerIndexMap);
+                    writer.writeNext(newRow);
+                }
+            }
+            if (writer.checkError()) {
+                throw new IOException("Failed to write " + temp);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        try {
+            Files.move(temp, source, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, source, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+```
+
+`java.util.concurrent.ForkJoinPool`과 `java.nio.charset.StandardCharsets` import를 추가합니다.
+
+```java
+// A long-lived pool shared by repeated updates; shut it down with the application
+ForkJoinPool csvPool = new ForkJoinPool(16);
+CsvUpdater.updateCsvParallel("data.csv", "id", "uid", data, csvPool);
+```
+
+행 순서가 필요 없는 집계(예: `ValueAggregator`)는 unordered 모드를 사용하고, 스레드마다 집계기를 따로 둔 뒤 마지막에 병합합니다.
+
+### 요약
+
+1. **안전한 경계**: 구간마다 따옴표 홀짝과 두 가지 시작 상태별 첫 줄바꿈을 기록한 뒤, 순차적으로 실제 상태를 결정하므로 따옴표 안의 줄바꿈에서 레코드가 잘리지 않습니다. `""` 이스케이프도 올바르게 처리됩니다.
+2. **병렬 파싱**: 보정된 구간마다 `MappedCsvReader`가 독립적으로 파싱하므로 스레드 간 공유 상태가 없습니다. 구간 크기는 병렬도의 4배 개수가 되도록 4~128 MB 사이에서 정합니다. 경계를 찾지 못해 한 구간이 2 GB를 넘으면 `int` 변환에서 넘치지 않도록 구간 위치와 크기를 담은 `IOException`으로 중단합니다.
+3. **순서 유지/무관**: ordered 모드는 파싱을 마친 구간을 통째로 들고 있어야 하므로, 처리 중인 구간의 원본 바이트 합을 `maxInFlightBytes`(기본 256 MB)로 제한하고 구간 크기도 `maxInFlightBytes / (병렬도 × 2)` 이하로 줄여 코어 수와 관계없이 힙 사용량의 상한을 둡니다. 파싱된 행은 원본보다 몇 배 크므로 힙 크기에 맞게 이 값을 조정합니다. 결과는 파일 순서대로 전달합니다. unordered 모드는 작업 스레드에서 `BATCH_SIZE` 단위로 바로 전달합니다.
+4. **예외**: 작업 스레드의 실패는 `join()`에서 `CompletionException`으로 감싸져 나오므로 원인을 꺼내, 입출력 오류와 "닫히지 않은 따옴표" 같은 파싱 오류를 선언한 `IOException`으로 다시 던집니다.
+5. **확장성**: 스캔과 파싱은 모두 병렬이며, 순차 부분은 구간 수만큼의 계산뿐입니다. 단, ordered 모드에서 소비자(병합·쓰기)가 한 스레드이므로 쓰기 속도가 병목이 되면 코어 수를 늘려도 속도가 더 오르지 않습니다. 스캔 단계에서 파일을 한 번 더 읽으므로, OS 페이지 캐시에 파일이 올라갈 수 있는 메모리가 있을 때 효과가 가장 좋습니다.
+
+
+
+
+
+
+
+같은 대용량 CSV에 하루에도 수십 번 `CsvUpdater.updateCsv`로 upsert를 하는데, 호출할 때마다 파일 전체를 읽어 `keyColumnValueToRowIndex`를 처음부터 다시 만듭니다. 키 → (바이트 위치, 행 길이)를 담은 인덱스 파일(sidecar)을 디스크에 저장해 두고, 다음 호출에서는 이 인덱스로 바꿀 행만 찾아가도록 합니다. 인덱스는 CSV 파일의 크기/수정 시각/체크섬이 달라지면 무효로 보고 다시 만듭니다.
+
+### 1. 설계
+
+- **인덱스 파일**: `data.csv` 옆에 `data.csv.idx`를 만듭니다. 고정 크기(1 KB) 헤더에는 CSV 파일 크기, 수정 시각, 샘플 체크섬(파일 앞뒤 64 KB의 CRC32), 키 컬럼 이름, 인코딩을 저장합니다. 본문은 디스크 위의 해시 테이블입니다. 슬롯마다 `offset, length, 키(소문자)의 hashCode`를 16바이트로 저장하고, 선형 탐사(linear probing)로 찾습니다.
+- **메모리에 올리지 않음**: 인덱스 파일을 `MappedByteBuffer`로 매핑해서 조회할 키의 슬롯만 읽고 씁니다. 키 개수와 관계없이 힙을 쓰지 않으며, 업데이트 건수만큼의 슬롯만 페이지 캐시로 읽습니다. 해시가 같은 슬롯을 찾으면 CSV에서 그 행을 읽어 키를 비교하므로, 해시 충돌이 나도 다른 행을 고치지 않습니다. 채움률이 75%를 넘으면 두 배 크기의 테이블로 다시 해시합니다.
+- **갱신 중 무효화**: 인덱스를 열면 먼저 헤더의 파일 크기를 -1로 써서 무효로 표시하고, 업데이트가 끝나 `save`를 호출할 때 실제 값을 씁니다. 도중에 중단되면 다음 호출에서 인덱스를 다시 만듭니다.
+- **같은 길이면 제자리 수정**: 병합한 새 행을 인코딩한 바이트 길이가 기존 행과 같으면 그 위치에 그대로 덮어씁니다(상태 코드, 플래그, 같은 자릿수 숫자 변경 등).
+- **길이가 다르면 tombstone + 추가**: 기존 행 자리는 공백으로 채운 tombstone 행으로 바꾸고, 새 행은 파일 끝에 추가한 뒤 인덱스를 새 위치로 갱신합니다. 공백만 있는 행은 인덱스를 만들 때와 전체 재작성(`rewriteIndexed`) 때 건너뜁니다.
+- **인코딩**: 행은 `CSVWriter` 기본값과 같이 모든 필드를 따옴표로 감싸 씁니다. 파일을 쓴 쪽과 같은 규칙이어야 값이 바뀌지 않은 필드의 길이가 그대로 유지되어 제자리 수정이 실제로 일어납니다.
+- **새 컬럼**: 헤더가 바뀌어야 하므로 제자리 수정이 불가능합니다. 이때는 tombstone 행을 버리면서 전체를 임시 파일에 다시 쓰고, 정리된 파일로 인덱스를 재생성합니다.
+
+### 2. 키 인덱스
+
+인덱스와 재작성 경로가 UTF-8이 아닌 파일도 읽을 수 있도록, `MappedCsvReader`에 인코딩을 받는 디코딩 메서드를 추가합니다. 구분자·따옴표·줄바꿈은 바이트로 찾으므로 이 바이트가 ASCII와 같은 인코딩(ISO-8859-1, MS949/EUC-KR 등)이어야 하며, UTF-16은 지원하지 않습니다.
+
+#### MappedCsvReader.java (추가)
+
+```java
+    public String getString(int field, Charset charset) {
+        if (escaped[field]) {
+            return new String(unescape(field), 0, scratchLength, charset);
+        }
+        int length = ends[field] - starts[field];
+        byte[] bytes = scratch(length);
+        buffer.get(starts[field], bytes, 0, length);
+        return new String(bytes, 0, length, charset);
+    }
+
+    public String[] toArray(Charset charset) {
+        String[] row = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            row[i] = getString(i, charset);
+        }
+        return row;
+    }
+```
+
+`java.nio.charset.Charset` import를 추가합니다.
+
+#### CsvKeyIndex.java
+
+```java
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Open-addressing hash table of key -> (offset, length) stored in a memory-mapped sidecar file.
+ * Only the probed slots are touched, so the index is never loaded into the heap.
+ */
+public class CsvKeyIndex implements Closeable {
+
+    private static final int MAGIC = 0x43534958; // "CSIX"
+    private static final int VERSION = 2;
+    private static final int SAMPLE_SIZE = 64 * 1024;
+    private static final int HEADER_SIZE = 1024;
+    // Slot layout: offset (long), length (int), hash of the lowercase key (int).
+    // Offset 0 is the CSV header, never a data row, so it marks an empty slot.
+    private static final int SLOT_SIZE = 16;
+    private static final int INITIAL_SLOTS = 1 << 16;
+    private static final int MAX_SLOTS = 1 << 30;
+    // A MappedByteBuffer is limited to 2 GB: map the table in 1 GB segments
+    private static final int SEGMENT_SHIFT = 26;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+    private final Path indexPath;
+    private final String keyColumn;
+    private final int keyIndex;
+    private final Charset charset;
+
+    private FileChannel channel;
+    private MappedByteBuffer[] segments;
+    private int slotCount;
+    private int size;
+
+    private CsvKeyIndex(Path indexPath, String keyColumn, int keyIndex, Charset charset, int slotCount, int size) throws IOException {
+        this.indexPath = indexPath;
+        this.keyColumn = keyColumn;
+        this.keyIndex = keyIndex;
+        this.charset = charset;
+        this.size = size;
+        this.channel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map(slotCount);
+    }
+
+    public static Path indexPath(Path csvPath) {
+        return csvPath.resolveSibling(csvPath.getFileName() + ".idx");
+    }
+
+    /**
+     * Opens the sidecar index if it still matches the CSV file, otherwise rebuilds it.
+     * The index stays marked invalid on disk until save is called.
+     */
+    public static CsvKeyIndex loadOrBuild(Path csvPath, String keyColumn, Charset charset) throws IOException {
+        Path indexPath = indexPath(csvPath);
+        if (Files.exists(indexPath)) {
+            int[] layout = null; // keyIndex, slotCount, size
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+                if (in.readInt() == MAGIC && in.readInt() == VERSION
+                        && in.readLong() == Files.size(csvPath)
+                        && in.readLong() == Files.getLastModifiedTime(csvPath).toMillis()
+                        && in.readLong() == sampleChecksum(csvPath)
+                        && in.readUTF().equalsIgnoreCase(keyColumn)
+                        && in.readUTF().equals(charset.name())) {
+                    layout = new int[]{in.readInt(), in.readInt(), in.readInt()};
+                }
+            } catch (EOFException | UTFDataFormatException e) {
+                // Corrupt index: rebuild below
+            }
+            if (layout != null && Files.size(indexPath) == HEADER_SIZE + (long) layout[1] * SLOT_SIZE) {
+                CsvKeyIndex index = new CsvKeyIndex(indexPath, keyColumn, layout[0], charset, layout[1], layout[2]);
+                try {
+                    index.writeHeader(-1, -1, -1);
+                } catch (IOException e) {
+                    index.close();
+                    throw e;
+                }
+                return index;
+            }
+        }
+        return build(csvPath, keyColumn, charset);
+    }
+
+    public static CsvKeyIndex build(Path csvPath, String keyColumn, Charset charset) throws IOException {
+        Path indexPath = indexPath(csvPath);
+        try (MappedCsvReader reader = new MappedCsvReader(csvPath);
+             FileChannel csv = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+            int keyIndex = -1;
+            if (reader.next()) {
+                for (int i = 0; i < reader.fieldCount(); i++) {
+                    if (reader.getString(i, charset).equalsIgnoreCase(keyColumn)) {
+                        keyIndex = i;
+                        break;
+                    }
+                }
+                if (keyIndex == -1) {
+                    throw new IllegalArgumentException("Column " + keyColumn + " not found");
+                }
+            }
+
+            Files.deleteIfExists(indexPath);
+            CsvKeyIndex index = new CsvKeyIndex(indexPath, keyColumn, keyIndex, charset, INITIAL_SLOTS, 0);
+            try {
+                index.writeHeader(-1, -1, -1);
+                long start = reader.offset();
+                while (reader.next()) {
+                    long end = reader.offset();
+                    // Decode only the key field; tombstone rows are skipped
+                    if (keyIndex < reader.fieldCount() && !isTombstone(reader)) {
+                        String key = reader.getString(keyIndex, charset);
+                        long[] entry = index.get(csv, key);
+                        if (entry != null) {
+                            index.replace(entry, start, (int) (end - start)); // the last row wins
+                        } else {
+                            index.put(key, start, (int) (end - start));
+                        }
+                    }
+                    start = end;
+                }
+            } catch (IOException | RuntimeException e) {
+                index.close();
+                throw e;
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Returns {offset, length, slot} of the row with this key, or null. Slots with the same hash
+     * are confirmed by reading the key back from the CSV, so a collision never returns another row.
+     */
+    public long[] get(FileChannel csv, String key) throws IOException {
+        String lowerKey = key.toLowerCase();
+        int hash = lowerKey.hashCode();
+        for (int slot = home(hash); ; slot = (slot + 1) & (slotCount - 1)) {
+            long offset = offsetAt(slot);
+            if (offset == 0) {
+                return null;
+            }
+            if (hashAt(slot) == hash) {
+                int length = lengthAt(slot);
+                if (lowerKey.equals(keyAt(csv, offset, length))) {
+                    return new long[]{offset, length, slot};
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a key that get did not find.
+     */
+    public void put(String key, long offset, int length) throws IOException {
+        if ((size + 1) * 4L > slotCount * 3L) {
+            grow();
+        }
+        insert(key.toLowerCase().hashCode(), offset, length);
+    }
+
+    /**
+     * Moves the row returned by get to a new location.
+     */
+    public void replace(long[] entry, long offset, int length) {
+        int slot = (int) entry[2];
+        writeSlot(slot, offset, length, hashAt(slot));
+    }
+
+    /**
+     * Flushes the table and stamps the header with the current state of the CSV file.
+     */
+    public void save(Path csvPath) throws IOException {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+        writeHeader(Files.size(csvPath), Files.getLastModifiedTime(csvPath).toMillis(), sampleChecksum(csvPath));
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        segments = null; // the mapping is released when the buffers are garbage collected
+        channel.close();
+    }
+
+    static boolean isTombstone(MappedCsvReader reader) {
+        return reader.fieldCount() == 1 && reader.getString(0).isBlank();
+    }
+
+    // FileChannel.read may return fewer bytes than requested; loop until the buffer is full
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of file at offset " + (start + buffer.position()));
+            }
+        }
+    }
+
+    // CRC32 of the first and last 64 KB; detects rewrites that keep size and mtime
+    static long sampleChecksum(Path csvPath) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(SAMPLE_SIZE, size));
+            readFully(channel, buffer, 0);
+            crc.update(buffer.flip());
+            if (size > SAMPLE_SIZE) {
+                long tailStart = Math.max(SAMPLE_SIZE, size - SAMPLE_SIZE);
+                buffer.clear().limit((int) (size - tailStart));
+                readFully(channel, buffer, tailStart);
+                crc.update(buffer.flip());
+            }
+        }
+        return crc.getValue();
+    }
+
+    // Rehashes into a table twice the size using the stored hashes; the CSV is not read
+    private void grow() throws IOException {
+        if (slotCount == MAX_SLOTS) {
+            throw new IOException("Too many keys for " + indexPath);
+        }
+        Path temp = Files.createTempFile(indexPath.toAbsolutePath().getParent(), indexPath.getFileName().toString(), ".tmp");
+        CsvKeyIndex larger = new CsvKeyIndex(temp, keyColumn, keyIndex, charset, slotCount * 2, 0);
+        try {
+            for (int slot = 0; slot < slotCount; slot++) {
+                long offset = offsetAt(slot);
+                if (offset != 0) {
+                    larger.insert(hashAt(slot), offset, lengthAt(slot));
+                }
+            }
+            larger.writeHeader(-1, -1, -1);
+            larger.close();
+        } catch (IOException | RuntimeException e) {
+            larger.close();
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        close();
+        Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING);
+        channel = FileChannel.open(indexPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map(larger.slotCount);
+    }
+
+    private void insert(int hash, long offset, int length) {
+        int slot = home(hash);
+        while (offsetAt(slot) != 0) {
+            slot = (slot + 1) & (slotCount - 1);
+        }
+        writeSlot(slot, offset, length, hash);
+        size++;
+    }
+
+    private String keyAt(FileChannel csv, long offset, int length) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        readFully(csv, bytes, offset);
+        try (CSVReader reader = new CSVReader(new StringReader(new String(bytes.array(), charset)))) {
+            String[] row = reader.readNext();
+            if (row == null || keyIndex >= row.length || (row.length == 1 && row[0].isBlank())) {
+                return null; // tombstone
+            }
+            return row[keyIndex].toLowerCase();
+        } catch (CsvValidationException e) {
+            throw new IOException("Invalid CSV row at offset " + offset, e);
+        }
+    }
+
+    private int home(int hash) {
+        return (hash ^ (hash >>> 16)) & (slotCount - 1);
+    }
+
+    private long offsetAt(int slot) {
+        return segments[slot >>> SEGMENT_SHIFT].getLong((slot & SEGMENT_MASK) * SLOT_SIZE);
+    }
+
+    private int lengthAt(int slot) {
+        return segments[slot >>> SEGMENT_SHIFT].getInt((slot & SEGMENT_MASK) * SLOT_SIZE + 8);
+    }
+
+    private int hashAt(int slot) {
+        return segments[slot >>> SEGMENT_SHIFT].getInt((slot & SEGMENT_MASK) * SLOT_SIZE + 12);
+    }
+
+    private void writeSlot(int slot, long offset, int length, int hash) {
+        MappedByteBuffer segment = segments[slot >>> SEGMENT_SHIFT];
+        int position = (slot & SEGMENT_MASK) * SLOT_SIZE;
+        segment.putLong(position, offset);
+        segment.putInt(position + 8, length);
+        segment.putInt(position + 12, hash);
+    }
+
+    // Mapping READ_WRITE past the end grows the file with zeros, i.e. empty slots
+    private void map(int slotCount) throws IOException {
+        this.slotCount = slotCount;
+        int segmentSlots = Math.min(slotCount, 1 << SEGMENT_SHIFT);
+        segments = new MappedByteBuffer[slotCount / segmentSlots];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_SIZE + (long) i * segmentSlots * SLOT_SIZE, (long) segmentSlots * SLOT_SIZE);
+        }
+    }
+
+    // A csvSize of -1 marks the index invalid while it is being changed
+    private void writeHeader(long csvSize, long modified, long checksum) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(csvSize);
+            out.writeLong(modified);
+            out.writeLong(checksum);
+            out.writeUTF(keyColumn);
+            out.writeUTF(charset.name());
+            out.writeInt(keyIndex);
+            out.writeInt(slotCount);
+            out.writeInt(size);
+        }
+        if (bytes.size() > HEADER_SIZE) {
+            throw new IOException("Key column name is too long for the index header: " + keyColumn);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+        channel.force(false);
+    }
+}
+```
+
+### 3. 인덱스를 사용하는 업데이트 함수
+
+#### CsvUpdater.java (추가)
+
+```java
+    public static void updateCsvIndexed(String filePath, String keyColumn, String comparisonKey, List<Map<String, String>> data) throws IOException {
+        updateCsvIndexed(filePath, keyColumn, comparisonKey, data, Charset.defaultCharset());
+    }
+
+    public static void updateCsvIndexed(String filePath, String keyColumn, String comparisonKey, List<Map<String, String>> data,
+                                        Charset charset) throws IOException {
+        Path source = Paths.get(filePath).toAbsolutePath();
+
+        // Merge update rows by key
+        Map<String, Map<String, String>> updatesByKey = new LinkedHashMap<>();
+        for (Map<String, String> row : data) {
+            String keyColumnValue = row.get(comparisonKey);
+            if (keyColumnValue != null) {
+                updatesByKey.computeIfAbsent(keyColumnValue.toLowerCase(), k -> new LinkedHashMap<>()).putAll(row);
+            }
+        }
+
+        // Lock a sidecar file first: the CSV itself may be replaced by a rewrite,
+        // and the header and index must be read under the same lock as the writes
+        try (FileChannel lockChannel = FileChannel.open(lockPath(source), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = lockChannel.lock()) {
+            String[] header = readHeader(source, charset);
+            Map<String, Integer> headerIndexMap = new HashMap<>();
+            for (int i = 0; i < header.length; i++) {
+                headerIndexMap.putIfAbsent(header[i].toLowerCase(), i);
+            }
+
+            // New columns change the header: fall back to a full rewrite
+            boolean hasNewColumns = updatesByKey.values().stream()
+                    .flatMap(row -> row.keySet().stream())
+                    .anyMatch(column -> !headerIndexMap.containsKey(column.toLowerCase()));
+            if (header.length == 0 || hasNewColumns) {
+                rewriteIndexed(source, header, keyColumn, updatesByKey, charset);
+                return;
+            }
+
+            try (CsvKeyIndex index = CsvKeyIndex.loadOrBuild(source, keyColumn, charset);
+                 FileChannel channel = FileChannel.open(source, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long fileEnd = channel.size();
+                if (fileEnd > 0 && !endsWithLineBreak(channel)) {
+                    fileEnd += channel.write(ByteBuffer.wrap(new byte[]{'\n'}), fileEnd);
+                }
+
+                for (Map.Entry<String, Map<String, String>> update : updatesByKey.entrySet()) {
+                    long[] entry = index.get(channel, update.getKey());
+                    String[] row;
+                    String lineEnd = "\n";
+                    if (entry != null) {
+                        // Read again after the key check in get; served from the page cache
+                        ByteBuffer oldBytes = ByteBuffer.allocate((int) entry[1]);
+                        CsvKeyIndex.readFully(channel, oldBytes, entry[0]);
+                        String oldLine = new String(oldBytes.array(), charset);
+                        lineEnd = oldLine.endsWith("\r\n") ? "\r\n" : "\n";
+                        row = Arrays.copyOf(parseLine(oldLine), header.length);
+                    } else {
+                        row = new String[header.length];
+                    }
+                    for (Map.Entry<String, String> column : update.getValue().entrySet()) {
+                        row[headerIndexMap.get(column.getKey().toLowerCase())] = column.getValue();
+                    }
+                    byte[] newBytes = (encodeRow(row) + lineEnd).getBytes(charset);
+
+                    if (entry != null && newBytes.length == entry[1]) {
+                        // Same length: patch in place
+                        channel.write(ByteBuffer.wrap(newBytes), entry[0]);
+                        continue;
+                    }
+                    if (entry != null) {
+                        // Different length: overwrite the old row with a blank tombstone row
+                        byte[] tombstone = new byte[(int) entry[1]];
+                        Arrays.fill(tombstone, (byte) ' ');
+                        byte[] end = lineEnd.getBytes(charset);
+                        System.arraycopy(end, 0, tombstone, tombstone.length - end.length, end.length);
+                        channel.write(ByteBuffer.wrap(tombstone), entry[0]);
+                    }
+                    channel.write(ByteBuffer.wrap(newBytes), fileEnd);
+                    if (entry != null) {
+                        index.replace(entry, fileEnd, newBytes.length);
+                    } else {
+                        index.put(update.getKey(), fileEnd, newBytes.length);
+                    }
+                    fileEnd += newBytes.length;
+                }
+                channel.force(false);
+                index.save(source);
+            }
+        }
+    }
+
+    /**
+     * Rewrites the file without tombstone rows and rebuilds the index.
+     */
+    public static void compactIndexed(String filePath, String keyColumn) throws IOException {
+        compactIndexed(filePath, keyColumn, Charset.defaultCharset());
+    }
+
+    public static void compactIndexed(String filePath, String keyColumn, Charset charset) throws IOException {
+        Path source = Paths.get(filePath).toAbsolutePath();
+        try (FileChannel lockChannel = FileChannel.open(lockPath(source), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = lockChannel.lock()) {
+            rewriteIndexed(source, readHeader(source, charset), keyColumn, Collections.emptyMap(), charset);
+        }
+    }
+
+    // Full rewrite for header changes and compaction; tombstone rows are dropped, not copied
+    private static void rewriteIndexed(Path source, String[] header, String keyColumn,
+                                       Map<String, Map<String, String>> updatesByKey, Charset charset) throws IOException {
+        Map<String, Integer> headerIndexMap = new HashMap<>();
+        List<String> finalHeader = new ArrayList<>(Arrays.asList(header));
+        for (int i = 0; i < header.length; i++) {
+            headerIndexMap.putIfAbsent(header[i].toLowerCase(), i);
+        }
+        for (Map<String, String> row : updatesByKey.values()) {
+            for (String column : row.keySet()) {
+                if (!headerIndexMap.containsKey(column.toLowerCase())) {
+                    headerIndexMap.put(column.toLowerCase(), finalHeader.size());
+                    finalHeader.add(column);
+                }
+            }
+        }
+        Integer keyIndex = headerIndexMap.get(keyColumn.toLowerCase());
+
+        Path temp = Files.createTempFile(source.getParent(), source.getFileName().toString(), ".tmp");
+        try (MappedCsvReader reader = new MappedCsvReader(source);
+             CSVWriter writer = new CSVWriter(Files.newBufferedWriter(temp, charset))) {
+            writer.writeNext(finalHeader.toArray(new String[0]));
+            Set<String> matchedKeys = new HashSet<>();
+            if (reader.next()) { // skip the old header
+                while (reader.next()) {
+                    if (CsvKeyIndex.isTombstone(reader)) {
+                        continue;
+                    }
+                    String[] row = Arrays.copyOf(reader.toArray(charset), finalHeader.size());
+                    if (keyIndex != null && row[keyIndex] != null) {
+                        String key = row[keyIndex].toLowerCase();
+                        Map<String, String> update = updatesByKey.get(key);
+                        if (update != null) {
+                            applyUpdate(row, headerIndexMap, update);
+                            matchedKeys.add(key);
+                        }
+                    }
+                    writer.writeNext(row);
+                }
+            }
+            for (Map.Entry<String, Map<String, String>> update : updatesByKey.entrySet()) {
+                if (!matchedKeys.contains(update.getKey())) {
+                    String[] row = new String[finalHeader.size()];
+                    applyUpdate(row, headerIndexMap, update.getValue());
+                    writer.writeNext(row);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        try {
+            Files.move(temp, source, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, source, StandardCopyOption.REPLACE_EXISTING);
+        }
+        // Rebuilt from the cleaned file, so no offset points at a dropped tombstone
+        try (CsvKeyIndex index = CsvKeyIndex.build(source, keyColumn, charset)) {
+            index.save(source);
+        }
+    }
+
+    private static void applyUpdate(String[] row, Map<String, Integer> headerIndexMap, Map<String, String> update) {
+        for (Map.Entry<String, String> column : update.entrySet()) {
+            row[headerIndexMap.get(column.getKey().toLowerCase())] = column.getValue();
+        }
+    }
+
+    private static Path lockPath(Path source) {
+        return source.resolveSibling(source.getFileName() + ".lock");
+    }
+
+    private static String[] readHeader(Path source, Charset charset) throws IOException {
+        try (MappedCsvReader reader = new MappedCsvReader(source)) {
+            return reader.next() ? reader.toArray(charset) : new String[0];
+        }
+    }
+
+    // Same quoting policy as CSVWriter's defaults (every non-null field quoted), so a row
+    // re-encoded without changes keeps its byte length and can be patched in place
+    private static String encodeRow(String[] row) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                sb.append(CSVWriter.DEFAULT_SEPARATOR);
+            }
+            if (row[i] != null) {
+                sb.append(CSVWriter.DEFAULT_QUOTE_CHARACTER)
+                        .append(row[i].replace("\"", "\"\""))
+                        .append(CSVWriter.DEFAULT_QUOTE_CHARACTER);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String[] parseLine(String line) throws IOException {
+        try (CSVReader reader = new CSVReader(new StringReader(line))) {
+            String[] row = reader.readNext();
+            return row == null ? new String[0] : row;
+        } catch (CsvValidationException e) {
+            throw new IOException("Invalid CSV line: " + line, e);
+        }
+    }
+
+    private static boolean endsWithLineBreak(FileChannel channel) throws IOException {
+        ByteBuffer last = ByteBuffer.allocate(1);
+        CsvKeyIndex.readFully(channel, last, channel.size() - 1);
+        return last.get(0) == '\n';
+    }
+```
+
+### 4. 정리(compaction)
+
+tombstone 행이 많이 쌓이면 주기적으로(예: 야간 배치) `compactIndexed`를 호출합니다. 새 컬럼 때문에 전체를 다시 쓰는 경로와 같은 `rewriteIndexed`를 사용하므로, 공백 행을 버리고 다시 쓴 뒤 정리된 파일로 인덱스를 재생성합니다.
+
+```java
+CsvUpdater.compactIndexed(filePath, "id");
+```
+
+`updateCsvStreaming`이나 `updateCsv`는 tombstone 행을 모르기 때문에 빈 데이터 행으로 복사합니다. 인덱스 방식으로 관리하는 파일은 `updateCsvIndexed`/`compactIndexed`로만 다시 씁니다.
+
+### 요약
+
+1. **인덱스 재사용**: 두 번째 호출부터는 `data.csv.idx`를 매핑해서 업데이트할 키의 슬롯만 찾아가므로 원본 파일 전체를 스캔하지 않고, 인덱스 전체를 힙에 올리지도 않습니다. 인덱스 크기는 키당 16바이트(채움률 75% 이하)이며, 행 내용과 키 문자열은 담지 않습니다.
+2. **무효화**: 파일 크기, 수정 시각, 앞뒤 64 KB 체크섬 중 하나라도 다르면 인덱스를 다시 만듭니다. 다른 프로그램이 파일을 바꿔도 잘못된 위치에 쓰지 않습니다.
+3. **쓰기 방식**: 같은 길이의 행은 제자리에 덮어쓰고, 길이가 달라지면 기존 자리는 공백 tombstone으로 바꾼 뒤 파일 끝에 추가합니다. 새 키도 파일 끝에 추가합니다.
+4. **안전성**: 헤더와 인덱스를 읽기 전에 `data.csv.lock` 파일을 `FileLock`으로 잠그므로, 다른 업데이트가 그 사이에 파일을 바꿔 오프셋이 어긋나는 일이 없습니다. 전체 재작성은 원본 파일을 교체하므로 원본이 아닌 별도의 lock 파일을 잠급니다. 끝나면 `force`로 디스크에 반영한 뒤 인덱스를 저장합니다. 짧게 읽히는 경우에 대비해 행을 읽을 때는 버퍼가 찰 때까지 `read`를 반복합니다. 제자리 수정은 원자적이지 않으므로, 읽는 쪽과 동시에 실행되어야 하면 앞의 임시 파일 + 원자적 이동 방식(`updateCsvStreaming`)을 사용합니다.
+5. **제약**: 인코딩은 기본적으로 플랫폼 기본 인코딩이고, `Charset`을 받는 오버로드로 지정할 수 있습니다. 구분자·따옴표·줄바꿈이 ASCII와 같은 바이트인 인코딩이어야 하며, 인덱스는 만든 인코딩을 기록해 다른 인코딩으로 열면 다시 만듭니다. 새 컬럼이 추가되는 업데이트는 전체 재작성으로 처리됩니다. 키가 같은 행이 여러 개면 인덱스에는 마지막 행만 남습니다(기존 `updateCsv`와 동일).
+
+
+
+
+
+
+
+Commons CSV를 사용하는 `CsvUpdater.updateCsvFile(Path, data, adjacentColumnName)`에는 정확성 문제가 있습니다.
+
+- `records.get(i)`와 `data.get(i)`를 **위치로** 짝지어서, 데이터 순서가 파일과 다르면 엉뚱한 행에 값이 들어갑니다. 파일보다 많은 데이터 행은 버려집니다.
+- `parser.getRecords()`로 모든 레코드를 메모리에 올립니다.
+- 읽고 있는 파일을 `new FileWriter(filePath.toFile())`로 열어서 바로 잘라(truncate) 버립니다. 도중에 실패하면 원본이 사라지고, 같은 파일을 읽는 다른 프로세스는 빈 파일이나 쓰다 만 파일을 보게 됩니다.
+- `createOrFindNewHeaders`가 새 컬럼을 `adjacentColumnIndex + 1`에 넣지만 기존 컬럼의 인덱스를 밀어내지 않아 인덱스가 겹치고, `withHeader(...)`와 `printRecord(newHeaders)`로 헤더가 두 번 출력됩니다.
+
+조인 키를 지정할 수 있는 키 기반 스트리밍 병합으로 다시 작성하고, 결과는 임시 파일에 쓴 뒤 원자적으로 이름을 바꿉니다.
+
+### CsvUpdater.java (Commons CSV, 수정)
+
+```java
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+public class CsvUpdater {
+
+    /**
+     * Merges data into the CSV file by joinKey. New columns are inserted right after
+     * adjacentColumnName, rows without a matching key are appended at the end.
+     * The file is read and written in the platform default charset, like the original FileReader/FileWriter.
+     */
+    public void updateCsvFile(Path filePath, List<Map<String, String>> data, String adjacentColumnName, String joinKey) throws IOException {
+        updateCsvFile(filePath, data, adjacentColumnName, joinKey, Charset.defaultCharset());
+    }
+
+    public void updateCsvFile(Path filePath, List<Map<String, String>> data, String adjacentColumnName, String joinKey,
+                              Charset charset) throws IOException {
+        // Index update data by join key
+        Map<String, Map<String, String>> updatesByKey = new LinkedHashMap<>();
+        for (Map<String, String> rowData : data) {
+            String key = rowData.get(joinKey);
+            if (key == null) {
+                throw new IllegalArgumentException("Row has no value for join key " + joinKey + ": " + rowData);
+            }
+            updatesByKey.computeIfAbsent(key, k -> new LinkedHashMap<>()).putAll(rowData);
+        }
+
+        Path source = filePath.toAbsolutePath();
+        Path temp = Files.createTempFile(source.getParent(), source.getFileName().toString(), ".tmp");
+
+        try (BufferedReader reader = Files.newBufferedReader(source, charset);
+             CSVParser parser = new CSVParser(reader, CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
+
+            List<String> headers = parser.getHeaderNames();
+            if (!headers.contains(adjacentColumnName)) {
+                throw new IllegalArgumentException("Column " + adjacentColumnName + " not found");
+            }
+            if (!headers.contains(joinKey)) {
+                throw new IllegalArgumentException("Column " + joinKey + " not found");
+            }
+
+            List<String> newHeaders = insertNewHeaders(headers, updatesByKey.values(), adjacentColumnName);
+            CSVFormat updatedFormat = CSVFormat.DEFAULT.withHeader(newHeaders.toArray(new String[0]));
+
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, charset);
+                 CSVPrinter printer = new CSVPrinter(writer, updatedFormat)) {
+
+                // Stream existing records, joining on the key
+                Set<String> matchedKeys = new HashSet<>();
+                for (CSVRecord record : parser) {
+                    Map<String, String> update = record.isSet(joinKey) ? updatesByKey.get(record.get(joinKey)) : null;
+                    if (update != null) {
+                        matchedKeys.add(record.get(joinKey));
+                    }
+                    List<String> newRow = new ArrayList<>(newHeaders.size());
+                    for (String header : newHeaders) {
+                        if (update != null && update.containsKey(header)) {
+                            newRow.add(update.get(header));
+                        } else {
+                            newRow.add(record.isSet(header) ? record.get(header) : "");
+                        }
+                    }
+                    printer.printRecord(newRow);
+                }
+
+                // Append rows whose key is not in the file
+                for (Map.Entry<String, Map<String, String>> entry : updatesByKey.entrySet()) {
+                    if (matchedKeys.contains(entry.getKey())) {
+                        continue;
+                    }
+                    List<String> newRow = new ArrayList<>(newHeaders.size());
+                    for (String header : newHeaders) {
+                        newRow.add(entry.getValue().getOrDefault(header, ""));
+                    }
+                    printer.printRecord(newRow);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        // Readers of the original file see either the old or the new version
+        try {
+            Files.move(temp, source, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, source, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private List<String> insertNewHeaders(List<String> headers, Collection<Map<String, String>> data, String adjacentColumnName) {
+        Set<String> newColumns = new LinkedHashSet<>();
+        for (Map<String, String> rowData : data) {
+            for (String key : rowData.keySet()) {
+                if (!headers.contains(key)) {
+                    newColumns.add(key);
+                }
+            }
+        }
+        List<String> newHeaders = new ArrayList<>(headers);
+        newHeaders.addAll(headers.indexOf(adjacentColumnName) + 1, newColumns);
+        return newHeaders;
+    }
+}
+```
+
+### Main.java 호출부 수정
+
+조인 키를 명시적으로 넘깁니다. 사용자 데이터는 `ID` 컬럼으로 연결합니다.
+
+```java
+            // Update the CSV file with data, joined on the ID column
+            Path csvPath = Paths.get("path/to/your/file.csv");
+            csvUpdater.updateCsvFile(csvPath, data, adjacentColumnName, "ID");
+```
+
+### 설명
+
+1. **키 기반 조인**: 업데이트 데이터를 `joinKey` 값으로 인덱싱하고, 파일의 각 레코드는 같은 키의 데이터와만 병합합니다. 데이터의 순서나 개수가 파일과 달라도 결과가 올바릅니다.
+2. **스트리밍**: `parser.getRecords()` 대신 `for (CSVRecord record : parser)`로 한 레코드씩 읽고 바로 씁니다. 메모리에는 업데이트 데이터만 남으므로 메모리보다 큰 파일도 처리할 수 있습니다.
+3. **임시 파일 + 이름 변경**: 원본은 읽기만 하고 결과는 같은 디렉터리의 임시 파일에 씁니다. 완료되면 `ATOMIC_MOVE`로 교체하므로 동시에 읽는 쪽은 항상 완전한 파일을 보고, 실패하면 원본이 그대로 남습니다.
+4. **헤더 수정**: 새 컬럼은 `adjacentColumnName` 바로 뒤에 **삽입**하고 기존 컬럼은 뒤로 밀립니다. 값은 인덱스가 아니라 컬럼 이름으로 옮기므로 겹침이 없고, 헤더는 `withHeader`로 한 번만 출력됩니다.
+5. **일치하지 않는 키**: 파일에 없는 키의 데이터는 버리지 않고 파일 끝에 새 행으로 추가합니다.
+6. **인코딩**: 기존 `FileReader`/`FileWriter`와 같이 플랫폼 기본 인코딩으로 읽고 씁니다. 다른 인코딩의 파일은 `Charset`을 받는 오버로드를 사용합니다.
+
+
+
+
+
+
+
+기존 파일과 업데이트 데이터가 **둘 다** 메모리보다 크면 `CsvUpdater`, `ExcelUpdater`, `ExcelWriter` 어느 것도 처리할 수 없습니다(지금까지의 스트리밍 방식도 업데이트 데이터는 메모리에 인덱싱합니다). 이 경우에는 외부 정렬(external sort) 기반의 정렬-병합 조인을 사용합니다.
+
+1. 양쪽 입력을 메모리 예산만큼씩 읽어 키로 정렬한 뒤, 정렬된 run 파일로 임시 디렉터리에 내보냅니다.
+2. 각 쪽의 run 파일들을 k-way 병합해서 키 순서의 스트림으로 만듭니다.
+3. 키 순서로 정렬된 두 스트림을 한 번에 훑으며 병합 조인하고, 결과를 바로 CSV(또는 SXSSF Excel)로 씁니다.
+
+메모리 예산과 임시 디렉터리는 설정으로 받습니다.
+
+### 1. 외부 정렬기
+
+행을 하나씩 `add`로 넣으면(push 방식) 메모리 예산을 넘을 때마다 정렬된 run 파일을 씁니다. CSV는 `CSVReader`로, Excel은 앞의 SAX 핸들러(`endRow`)에서 바로 `add`를 호출하면 되므로 두 형식 모두에 사용할 수 있습니다. 키는 기존 업데이트 함수들과 같이 소문자로 정규화해서 run 파일의 첫 번째 컬럼에 저장해 두고, 병합할 때 다시 계산하지 않습니다.
+
+#### ExternalSorter.java
+
+```java
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+public class ExternalSorter implements Closeable {
+
+    // Run files merged at once; more runs are merged in several passes
+    public static final int DEFAULT_MAX_FAN_IN = 64;
+
+    private final int keyIndex;
+    private final long memoryBudget;
+    private final Path tempDir;
+    private final int maxFanIn;
+
+    private final List<String[]> buffer = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+    private final List<CSVReader> openReaders = new ArrayList<>();
+    private long bufferedBytes;
+
+    public ExternalSorter(int keyIndex, long memoryBudget, Path tempDir) {
+        this(keyIndex, memoryBudget, tempDir, DEFAULT_MAX_FAN_IN);
+    }
+
+    public ExternalSorter(int keyIndex, long memoryBudget, Path tempDir, int maxFanIn) {
+        if (maxFanIn < 2) {
+            throw new IllegalArgumentException("maxFanIn must be at least 2");
+        }
+        this.keyIndex = keyIndex;
+        this.memoryBudget = memoryBudget;
+        this.tempDir = tempDir;
+        this.maxFanIn = maxFanIn;
+    }
+
+    public void add(String[] row) throws IOException {
+        String key = keyIndex < row.length && row[keyIndex] != null ? row[keyIndex].toLowerCase() : "";
+        String[] keyed = new String[row.length + 1];
+        keyed[0] = key;
+        System.arraycopy(row, 0, keyed, 1, row.length);
+        buffer.add(keyed);
+        bufferedBytes += estimateSize(keyed);
+        if (bufferedBytes >= memoryBudget) {
+            spill();
+        }
+    }
+
+    /**
+     * Returns a k-way merge over all runs. Each call to readNext() returns the next row
+     * in key order (without the key column), or null at the end.
+     */
+    public SortedRows sorted() throws IOException {
+        if (!buffer.isEmpty()) {
+            spill();
+        }
+        // Merge consecutive groups of runs until at most maxFanIn files remain,
+        // so the number of open files stays bounded; group order keeps the merge stable
+        while (runs.size() > maxFanIn) {
+            List<Path> merged = new ArrayList<>();
+            try {
+                for (int from = 0; from < runs.size(); from += maxFanIn) {
+                    List<Path> group = runs.subList(from, Math.min(from + maxFanIn, runs.size()));
+                    merged.add(group.size() == 1 ? group.get(0) : mergeRuns(group));
+                }
+            } catch (IOException | RuntimeException e) {
+                for (Path run : merged) {
+                    if (!runs.contains(run)) {
+                        Files.deleteIfExists(run);
+                    }
+                }
+                throw e;
+            }
+            runs.clear();
+            runs.addAll(merged);
+        }
+        return merge(runs, openReaders);
+    }
+
+    private Path mergeRuns(List<Path> group) throws IOException {
+        Path merged = Files.createTempFile(tempDir, "sort-run-", ".csv");
+        List<CSVReader> readers = new ArrayList<>();
+        try (CSVWriter writer = new CSVWriter(Files.newBufferedWriter(merged, StandardCharsets.UTF_8))) {
+            SortedRows rows = merge(group, readers);
+            String[] row;
+            while ((row = rows.readNext()) != null) {
+                writer.writeNext(row);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(merged);
+            throw e;
+        } finally {
+            for (CSVReader reader : readers) {
+                reader.close();
+            }
+        }
+        for (Path run : group) {
+            Files.deleteIfExists(run);
+        }
+        return merged;
+    }
+
+    // k-way merge over the given runs; ties keep run order
+    private static SortedRows merge(List<Path> runFiles, List<CSVReader> readers) throws IOException {
+        PriorityQueue<RunCursor> queue = new PriorityQueue<>(Math.max(1, runFiles.size()),
+                Comparator.comparing((RunCursor c) -> c.current[0]).thenComparingInt(c -> c.runIndex));
+        for (int i = 0; i < runFiles.size(); i++) {
+            CSVReader reader = new CSVReader(Files.newBufferedReader(runFiles.get(i), StandardCharsets.UTF_8));
+            readers.add(reader);
+            RunCursor cursor = new RunCursor(reader, i);
+            if (cursor.advance()) {
+                queue.add(cursor);
+            }
+        }
+        return () -> {
+            RunCursor cursor = queue.poll();
+            if (cursor == null) {
+                return null;
+            }
+            String[] keyed = cursor.current;
+            if (cursor.advance()) {
+                queue.add(cursor);
+            }
+            return keyed;
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (CSVReader reader : openReaders) {
+            reader.close();
+        }
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+    }
+
+    private void spill() throws IOException {
+        buffer.sort(Comparator.comparing(row -> row[0]));
+        Path run = Files.createTempFile(tempDir, "sort-run-", ".csv");
+        try (CSVWriter writer = new CSVWriter(Files.newBufferedWriter(run, StandardCharsets.UTF_8))) {
+            for (String[] row : buffer) {
+                writer.writeNext(row);
+            }
+        }
+        runs.add(run);
+        buffer.clear();
+        bufferedBytes = 0;
+    }
+
+    // Rough heap size of a String[] row
+    private static long estimateSize(String[] row) {
+        long size = 16 + 4L * row.length;
+        for (String value : row) {
+            size += value == null ? 0 : 40 + value.length();
+        }
+        return size;
+    }
+
+    /** Sorted row stream; each row starts with the normalized key. */
+    public interface SortedRows {
+        String[] readNext() throws IOException;
+    }
+
+    private static class RunCursor {
+        final CSVReader reader;
+        final int runIndex;
+        String[] current;
+
+        RunCursor(CSVReader reader, int runIndex) {
+            this.reader = reader;
+            this.runIndex = runIndex;
+        }
+
+        boolean advance() throws IOException {
+            try {
+                current = reader.readNext();
+            } catch (CsvValidationException e) {
+                throw new IOException("Invalid sort run", e);
+            }
+            return current != null;
+        }
+    }
+}
+```
+
+### 2. 정렬-병합 조인
+
+두 정렬 스트림의 키를 비교하면서 진행합니다. 업데이트 쪽에 같은 키가 여러 행 있으면 하나로 병합하고(뒤의 값 우선), 기존 쪽에 같은 키가 여러 행 있으면 모두 업데이트합니다. 기존 파일에 없는 키는 키 순서 위치에 새 행으로 들어갑니다.
+
+#### SortMergeUpdater.java
+
+```java
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvValidationException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+public class SortMergeUpdater {
+
+    private static final int ROW_ACCESS_WINDOW = 100;
+
+    public interface RowSink {
+        void write(String[] row) throws IOException;
+    }
+
+    private final long memoryBudget;
+    private final Path tempDir;
+
+    /**
+     * @param memoryBudget bytes of rows kept in memory per side before spilling a sorted run
+     * @param tempDir      directory for sorted run files
+     */
+    public SortMergeUpdater(long memoryBudget, Path tempDir) {
+        this.memoryBudget = memoryBudget;
+        this.tempDir = tempDir;
+    }
+
+    public void updateCsv(Path baseCsv, String keyColumn, Path updatesCsv, String comparisonKey, Path output) throws IOException {
+        updateCsv(baseCsv, keyColumn, updatesCsv, comparisonKey, output, Charset.defaultCharset());
+    }
+
+    /**
+     * Reads both inputs and writes the output in the given charset. The intermediate run files
+     * are private to ExternalSorter and always use UTF-8.
+     */
+    public void updateCsv(Path baseCsv, String keyColumn, Path updatesCsv, String comparisonKey, Path output,
+                          Charset charset) throws IOException {
+        try (CSVReader updateReader = new CSVReader(Files.newBufferedReader(updatesCsv, charset))) {
+            String[] updateHeader = updateReader.readNext();
+            if (updateHeader == null) {
+                throw new IllegalArgumentException("Both files need a header row");
+            }
+            try (ExternalSorter updateSorter = new ExternalSorter(indexOf(updateHeader, comparisonKey), memoryBudget, tempDir)) {
+                String[] row;
+                while ((row = updateReader.readNext()) != null) {
+                    updateSorter.add(row);
+                }
+                updateCsv(baseCsv, keyColumn, updateHeader, updateSorter, output, charset);
+            }
+        } catch (CsvValidationException e) {
+            throw new IOException("Invalid CSV input", e);
+        }
+    }
+
+    /**
+     * Merges update rows that were already added to a sorter (for example straight from a
+     * database cursor) into the base file. The caller owns and closes the sorter.
+     */
+    public void updateCsv(Path baseCsv, String keyColumn, String[] updateHeader, ExternalSorter updates, Path output,
+                          Charset charset) throws IOException {
+        try (CSVReader baseReader = new CSVReader(Files.newBufferedReader(baseCsv, charset));
+             CSVWriter writer = new CSVWriter(Files.newBufferedWriter(output, charset))) {
+            String[] baseHeader = baseReader.readNext();
+            if (baseHeader == null) {
+                throw new IllegalArgumentException("Both files need a header row");
+            }
+
+            try (ExternalSorter baseSorter = new ExternalSorter(indexOf(baseHeader, keyColumn), memoryBudget, tempDir)) {
+                String[] row;
+                while ((row = baseReader.readNext()) != null) {
+                    baseSorter.add(row);
+                }
+                join(baseHeader, baseSorter.sorted(), updateHeader, updates.sorted(), writer::writeNext);
+            }
+        } catch (CsvValidationException e) {
+            throw new IOException("Invalid CSV input", e);
+        }
+    }
+
+    /**
+     * Same merge for the first sheet of an XLSX file. The base sheet is read with SAX into a sorter
+     * and the result is written with SXSSF, so neither side is held in memory. Cells are read as
+     * their formatted text and written back as text.
+     */
+    public void updateExcel(Path baseXlsx, String keyColumn, String[] updateHeader, ExternalSorter updates,
+                            Path output) throws IOException {
+        SheetSorter baseRows = new SheetSorter(keyColumn);
+        // compressTmpFiles = true, useSharedStringsTable = false
+        SXSSFWorkbook workbook = new SXSSFWorkbook(null, ROW_ACCESS_WINDOW, true, false);
+        try (OPCPackage pkg = OPCPackage.open(baseXlsx.toFile(), PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            Sheet sheet;
+            try (InputStream sheetStream = sheets.next()) {
+                // Only one sheet is rewritten, so refuse instead of dropping the others
+                if (sheets.hasNext()) {
+                    throw new IOException(baseXlsx + " has more than one sheet");
+                }
+                sheet = workbook.createSheet(sheets.getSheetName());
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(), null,
+                        new ReadOnlySharedStringsTable(pkg), baseRows, new DataFormatter(), false));
+                parser.parse(new InputSource(sheetStream));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (baseRows.header == null) {
+                throw new IllegalArgumentException("Both files need a header row");
+            }
+
+            int[] rowNum = {0};
+            join(baseRows.header, baseRows.sorter.sorted(), updateHeader, updates.sorted(), values -> {
+                Row row = sheet.createRow(rowNum[0]++);
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] != null) {
+                        row.createCell(i).setCellValue(values[i]);
+                    }
+                }
+            });
+            try (OutputStream out = Files.newOutputStream(output)) {
+                workbook.write(out);
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Failed to read " + baseXlsx, e);
+        } finally {
+            if (baseRows.sorter != null) {
+                baseRows.sorter.close();
+            }
+            workbook.dispose(); // delete SXSSF temp files
+            workbook.close();
+        }
+    }
+
+    public void join(String[] baseHeader, ExternalSorter.SortedRows base,
+                     String[] updateHeader, ExternalSorter.SortedRows updates, RowSink sink) throws IOException {
+        // Final header: base columns + update columns not in base
+        Map<String, Integer> headerIndexMap = new HashMap<>();
+        List<String> finalHeader = new ArrayList<>(Arrays.asList(baseHeader));
+        for (int i = 0; i < baseHeader.length; i++) {
+            headerIndexMap.putIfAbsent(baseHeader[i].toLowerCase(), i);
+        }
+        int[] updateColumnTarget = new int[updateHeader.length];
+        for (int i = 0; i < updateHeader.length; i++) {
+            Integer index = headerIndexMap.get(updateHeader[i].toLowerCase());
+            if (index == null) {
+                index = finalHeader.size();
+                headerIndexMap.put(updateHeader[i].toLowerCase(), index);
+                finalHeader.add(updateHeader[i]);
+            }
+            updateColumnTarget[i] = index;
+        }
+        int width = finalHeader.size();
+        sink.write(finalHeader.toArray(new String[0]));
+
+        String[] baseRow = base.readNext();
+        UpdateStream updateStream = new UpdateStream(updates);
+        String[] updateRow = updateStream.next();
+
+        while (baseRow != null || updateRow != null) {
+            int cmp = baseRow == null ? 1 : updateRow == null ? -1 : baseRow[0].compareTo(updateRow[0]);
+            if (cmp < 0) {
+                sink.write(widen(baseRow, width));
+                baseRow = base.readNext();
+            } else if (cmp > 0) {
+                // Key only in updates: new row
+                sink.write(apply(new String[width], updateRow, updateColumnTarget));
+                updateRow = updateStream.next();
+            } else {
+                // Same key: apply to every base row with this key
+                String key = updateRow[0];
+                while (baseRow != null && baseRow[0].equals(key)) {
+                    sink.write(apply(widen(baseRow, width), updateRow, updateColumnTarget));
+                    baseRow = base.readNext();
+                }
+                updateRow = updateStream.next();
+            }
+        }
+    }
+
+    // Collapses consecutive update rows with the same key; later non-empty values win
+    private static class UpdateStream {
+        private final ExternalSorter.SortedRows updates;
+        private String[] lookahead;
+        private boolean started;
+
+        UpdateStream(ExternalSorter.SortedRows updates) {
+            this.updates = updates;
+        }
+
+        String[] next() throws IOException {
+            String[] merged = started ? lookahead : updates.readNext();
+            started = true;
+            if (merged == null) {
+                return null;
+            }
+            String[] row;
+            while ((row = updates.readNext()) != null && row[0].equals(merged[0])) {
+                merged = Arrays.copyOf(merged, Math.max(merged.length, row.length));
+                for (int i = 1; i < row.length; i++) {
+                    if (row[i] != null && !row[i].isEmpty()) {
+                        merged[i] = row[i];
+                    }
+                }
+            }
+            lookahead = row;
+            return merged;
+        }
+    }
+
+    // Drops the key column and pads the row to the final width
+    private static String[] widen(String[] keyedRow, int width) {
+        String[] row = new String[width];
+        System.arraycopy(keyedRow, 1, row, 0, Math.min(keyedRow.length - 1, width));
+        return row;
+    }
+
+    // Blank update cells keep the base value, the same as UpdateStream and the putAll-based updaters
+    private static String[] apply(String[] row, String[] keyedUpdate, int[] updateColumnTarget) {
+        for (int i = 1; i < keyedUpdate.length && i - 1 < updateColumnTarget.length; i++) {
+            if (keyedUpdate[i] != null && !keyedUpdate[i].isEmpty()) {
+                row[updateColumnTarget[i - 1]] = keyedUpdate[i];
+            }
+        }
+        return row;
+    }
+
+    private static int indexOf(String[] header, String column) {
+        for (int i = 0; i < header.length; i++) {
+            if (header[i].equalsIgnoreCase(column)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Column " + column + " not found");
+    }
+
+    // The first row becomes the header; every later row goes straight into a sorter on the key column
+    private class SheetSorter implements SheetContentsHandler {
+        private final String keyColumn;
+        private final List<String> currentRow = new ArrayList<>();
+        String[] header;
+        ExternalSorter sorter;
+
+        SheetSorter(String keyColumn) {
+            this.keyColumn = keyColumn;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            currentRow.clear();
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int col = cellReference == null ? currentRow.size() : new CellReference(cellReference).getCol();
+            while (currentRow.size() < col) {
+                currentRow.add(null);
+            }
+            currentRow.add(formattedValue);
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            String[] row = currentRow.toArray(new String[0]);
+            if (header == null) {
+                header = row;
+                sorter = new ExternalSorter(indexOf(header, keyColumn), memoryBudget, tempDir);
+                return;
+            }
+            try {
+                sorter.add(row);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+            // Not needed
+        }
+    }
+}
+```
+
+### 3. Excel 입력/출력
+
+`updateExcel`은 기존 통합 문서의 첫 시트를 SAX(`XSSFSheetXMLHandler`)로 읽으면서 행마다 바로 `ExternalSorter`에 넣고, 병합 결과는 `RowSink`를 `SXSSFWorkbook` 시트에 연결해서 씁니다. 어느 쪽도 시트 전체를 메모리에 올리지 않습니다. 셀은 `DataFormatter`가 만든 표시 문자열로 읽어 문자열로 다시 쓰므로 숫자·날짜 서식은 유지되지 않습니다. 서식을 유지해야 하고 업데이트가 메모리에 들어가면 앞의 `ExcelUpdater.updateExcelStreaming`을 사용합니다.
+
+업데이트 쪽은 파일 대신 이미 채운 `ExternalSorter`를 받는 `updateCsv`/`updateExcel` 오버로드로 넘길 수 있습니다. DB 커서에서 읽은 행을 바로 정렬기에 넣는 경우에 사용하며, 정렬기는 호출한 쪽이 닫습니다. `sorted()`는 여러 번 호출할 수 있으므로 같은 업데이트를 CSV와 Excel에 차례로 병합할 수 있습니다.
+
+### 4. 사용 예제
+
+```java
+SortMergeUpdater updater = new SortMergeUpdater(512L * 1024 * 1024, Paths.get("/data/tmp"));
+updater.updateCsv(Paths.get("base.csv"), "id", Paths.get("updates.csv"), "uid", Paths.get("merged.csv"));
+```
+
+### 요약
+
+1. **메모리 예산**: 각 정렬기는 `memoryBudget`만큼만 행을 모았다가 정렬해서 run 파일로 내보냅니다. 병합 단계에서는 run마다 현재 행 하나씩만 메모리에 둡니다.
+2. **k-way 병합**: `PriorityQueue`로 run들의 현재 행 중 가장 작은 키를 꺼냅니다. 키가 같으면 run 순서(입력 순서)를 유지합니다. run이 `maxFanIn`(기본 64)개보다 많으면 연속한 run을 `maxFanIn`개씩 묶어 중간 run으로 병합하는 단계를 반복하므로, 입력이 아무리 커도 동시에 여는 파일 수는 `maxFanIn`개를 넘지 않습니다. 이 경우 run 파일을 한 번 더 읽고 쓰는 비용이 듭니다.
+3. **병합 조인**: 두 정렬 스트림을 한 번씩만 읽습니다. 업데이트 쪽 중복 키는 하나로 합치고, 기존 쪽 중복 키는 모두 업데이트합니다. 업데이트 파일의 빈 셀은 기존 값을 지우지 않습니다.
+4. **결과 순서**: 결과 파일은 원래 행 순서가 아니라 키 순서입니다. 원래 순서가 필요하면 입력에 행 번호 컬럼을 추가하고 결과를 행 번호로 한 번 더 외부 정렬합니다.
+5. **임시 파일**: run 파일은 `tempDir`에 만들어지고 `ExternalSorter.close()`에서 삭제됩니다. 입력 크기만큼의 여유 공간이 필요합니다.
+6. **인코딩**: 기존 파일, 업데이트 파일, 결과 파일은 다른 `CsvUpdater` 함수들과 같이 플랫폼 기본 인코딩을 사용하며, `Charset`을 받는 오버로드로 바꿀 수 있습니다. run 파일은 `ExternalSorter` 내부용이므로 항상 UTF-8입니다.
+
+
+
+
+
+
+
+`ExcelUtils.writeDataToExcel`과 `Main`(CommandLineRunner)의 엑셀 내보내기는 모든 행을 `XSSFWorkbook` 메모리에 만든 다음에 `workbook.write`를 호출합니다. 사용자 100만 건을 내보내면 행과 셀 객체가 모두 힙에 올라가고, 마지막 행을 만들 때까지 파일에는 한 바이트도 써지지 않습니다. `SXSSFWorkbook` 기반의 스트리밍 쓰기 모드를 추가합니다.
+
+- 최근 N개 행(row access window)만 메모리에 두고, 나머지는 임시 파일로 내보냅니다.
+- 임시 파일 압축 여부를 설정할 수 있습니다.
+- 공유 문자열 테이블(SST)을 쓰지 않고 인라인 문자열로 씁니다.
+
+### 1. 내보내기 옵션
+
+#### SxssfExportOptions.java
+
+```java
+package com.example.demo.utils;
+
+public class SxssfExportOptions {
+
+    public static final SxssfExportOptions DEFAULT = new SxssfExportOptions(100, true, false);
+
+    private final int rowAccessWindow;
+    private final boolean compressTempFiles;
+    private final boolean useSharedStrings;
+
+    /**
+     * @param rowAccessWindow   rows kept in memory before older rows are flushed to the temp file
+     * @param compressTempFiles gzip the temp sheet files (less disk, a little more CPU)
+     * @param useSharedStrings  keep a shared strings table; false writes inline strings
+     */
+    public SxssfExportOptions(int rowAccessWindow, boolean compressTempFiles, boolean useSharedStrings) {
+        if (rowAccessWindow <= 0) {
+            throw new IllegalArgumentException("rowAccessWindow must be positive");
+        }
+        this.rowAccessWindow = rowAccessWindow;
+        this.compressTempFiles = compressTempFiles;
+        this.useSharedStrings = useSharedStrings;
+    }
+
+    public int getRowAccessWindow() {
+        return rowAccessWindow;
+    }
+
+    public boolean isCompressTempFiles() {
+        return compressTempFiles;
+    }
+
+    public boolean isUseSharedStrings() {
+        return useSharedStrings;
+    }
+}
+```
+
+### 2. 스트리밍 엑셀 작성기
+
+엔티티를 한 건씩 `write`로 넣는 push 방식이므로 `List`뿐 아니라 커서나 다른 스트림에서 받은 데이터도 그대로 쓸 수 있습니다. 셀 쓰기는 앞에서 만든 `ColumnExtractor`를 그대로 사용합니다.
+
+기존 파일에 추가할 때는 `XSSFWorkbook`으로 기존 시트를 읽고 헤더를 보완한 뒤 `SXSSFWorkbook`으로 감쌉니다. 기존 행은 메모리에 남지만, 새로 추가하는 행은 창 크기만큼만 메모리에 둡니다.
+
+#### ExcelStreamWriter.java
+
+```java
+package com.example.demo.utils;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ExcelStreamWriter<T> implements Closeable {
+
+    private final SXSSFWorkbook workbook;
+    private final Sheet sheet;
+    private final ColumnExtractor<T> extractor;
+    private final int[] columnIndices;
+    private final CellStyle dateStyle;
+    private final CellStyle dateTimeStyle;
+    private int rowIndex;
+
+    private ExcelStreamWriter(SXSSFWorkbook workbook, Sheet sheet, ColumnExtractor<T> extractor,
+                              int[] columnIndices, int firstRow) {
+        this.workbook = workbook;
+        this.sheet = sheet;
+        this.extractor = extractor;
+        this.columnIndices = columnIndices;
+        this.rowIndex = firstRow;
+        // Reuses the styles an earlier append left in the workbook instead of adding two per run
+        this.dateStyle = ColumnExtractor.formatStyle(workbook, "yyyy-mm-dd");
+        this.dateTimeStyle = ColumnExtractor.formatStyle(workbook, "yyyy-mm-dd hh:mm:ss");
+    }
+
+    /** Starts a new workbook with a single "Data" sheet. */
+    public static <T> ExcelStreamWriter<T> create(Class<T> clazz, SxssfExportOptions options) {
+        ColumnExtractor<T> extractor = ColumnExtractor.forClass(clazz);
+        SXSSFWorkbook workbook = new SXSSFWorkbook(null, options.getRowAccessWindow(),
+                options.isCompressTempFiles(), options.isUseSharedStrings());
+        Sheet sheet = workbook.createSheet("Data");
+        Row headerRow = sheet.createRow(0);
+        int[] columnIndices = new int[extractor.size()];
+        for (int c = 0; c < extractor.size(); c++) {
+            headerRow.createCell(c).setCellValue(extractor.name(c));
+            columnIndices[c] = c;
+        }
+        return new ExcelStreamWriter<>(workbook, sheet, extractor, columnIndices, 1);
+    }
+
+    /** Opens an existing workbook and appends rows after the last row of its first sheet. */
+    public static <T> ExcelStreamWriter<T> append(Path existing, Class<T> clazz, SxssfExportOptions options) throws IOException {
+        ColumnExtractor<T> extractor = ColumnExtractor.forClass(clazz);
+        XSSFWorkbook base;
+        try (InputStream in = Files.newInputStream(existing)) {
+            base = new XSSFWorkbook(in);
+        }
+        Sheet xssfSheet = base.getSheetAt(0);
+        Row headerRow = xssfSheet.getRow(0) != null ? xssfSheet.getRow(0) : xssfSheet.createRow(0);
+        Map<String, Integer> headerIndexMap = new HashMap<>();
+        for (Cell cell : headerRow) {
+            headerIndexMap.put(cell.getStringCellValue(), cell.getColumnIndex());
+        }
+        int[] columnIndices = new int[extractor.size()];
+        for (int c = 0; c < extractor.size(); c++) {
+            Integer index = headerIndexMap.get(extractor.name(c));
+            if (index == null) {
+                index = Math.max(headerRow.getLastCellNum(), 0);
+                headerRow.createCell(index).setCellValue(extractor.name(c));
+                headerIndexMap.put(extractor.name(c), index);
+            }
+            columnIndices[c] = index;
+        }
+        int firstRow = xssfSheet.getLastRowNum() + 1;
+
+        // Header changes must be made before wrapping; existing rows are not accessible afterwards
+        SXSSFWorkbook workbook = new SXSSFWorkbook(base, options.getRowAccessWindow(),
+                options.isCompressTempFiles(), options.isUseSharedStrings());
+        return new ExcelStreamWriter<>(workbook, workbook.getSheetAt(0), extractor, columnIndices, firstRow);
+    }
+
+    public void write(T entity) {
+        Row row = sheet.createRow(rowIndex++);
+        for (int c = 0; c < columnIndices.length; c++) {
+            extractor.writeCell(entity, c, row.createCell(columnIndices[c]), dateStyle, dateTimeStyle);
+        }
+    }
+
+    public int getRowCount() {
+        return rowIndex;
+    }
+
+    /** Writes the workbook to the stream. Call once, after the last row. */
+    public void finish(OutputStream out) throws IOException {
+        workbook.write(out);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Deletes the temp sheet files
+        workbook.dispose();
+        workbook.close();
+    }
+}
+```
+
+### 3. ExcelUtils 수정
+
+스트리밍 버전은 `Iterable<T>`를 받습니다. 기존 `List<T>` 시그니처는 기본 옵션으로 이 메서드를 호출하도록 바꿉니다. `writeDataToExcel`은 기존과 같이 파일이 있으면 뒤에 추가하고, 매번 새 파일로 내보내는 `exportToExcel`을 따로 둡니다. 결과는 임시 파일에 먼저 쓰고 원자적으로 교체하므로, 내보내기가 중간에 실패해도 기존 파일이 깨지지 않습니다.
+
+#### ExcelUtils.java (수정)
+
+```java
+package com.example.demo.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+public class ExcelUtils {
+
+    public static <T> void writeDataToExcel(List<T> data, String filePath, Class<T> clazz) throws IOException {
+        writeDataToExcel(data, filePath, clazz, SxssfExportOptions.DEFAULT);
+    }
+
+    /**
+     * Appends the data to the first sheet of an existing workbook (the existing rows are
+     * loaded into memory), or creates the workbook if the file does not exist.
+     */
+    public static <T> void writeDataToExcel(Iterable<T> data, String filePath, Class<T> clazz,
+                                            SxssfExportOptions options) throws IOException {
+        write(data, Paths.get(filePath), clazz, options, true);
+    }
+
+    /**
+     * Writes the data to a new workbook and replaces the file. Existing contents are
+     * neither read nor kept, so heap use depends only on the row access window.
+     */
+    public static <T> void exportToExcel(Iterable<T> data, String filePath, Class<T> clazz,
+                                         SxssfExportOptions options) throws IOException {
+        write(data, Paths.get(filePath), clazz, options, false);
+    }
+
+    private static <T> void write(Iterable<T> data, Path target, Class<T> clazz,
+                                  SxssfExportOptions options, boolean append) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        Path tempFile = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+
+        try (ExcelStreamWriter<T> writer = append && Files.exists(target)
+                ? ExcelStreamWriter.append(target, clazz, options)
+                : ExcelStreamWriter.create(clazz, options)) {
+            for (T entity : data) {
+                writer.write(entity);
+            }
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                writer.finish(out);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+
+        try {
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
+```
+
+### 4. Main 수정
+
+기존 `file.xlsx`/`file.csv`의 키 병합 업데이트(`updateExcelFile`, `updateCsvFile`)는 그대로 둡니다. 스트리밍 내보내기는 이 파일들에 추가하지 않고 별도의 `users-export.xlsx`를 `exportToExcel`로 매번 새로 씁니다. 기존 파일에 추가하면 실행할 때마다 모든 사용자가 다시 붙고, 헤더도 필드 이름(`id`/`name`/`email`)이라 `ID`/`Name`/`Email` 옆에 중복 컬럼이 생기기 때문입니다. 사용자 목록은 `Map`으로 바꾸지 않고 `User` 엔티티를 그대로 작성기에 넘깁니다. 100만 건 기준으로 창 크기는 기본값 100이면 충분하며, 디스크가 느린 환경이 아니면 임시 파일 압축을 켭니다.
+
+#### Main.java (수정)
+
+```java
+import com.example.demo.utils.ExcelUtils;
+import com.example.demo.utils.SxssfExportOptions;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Component
+public class Main implements CommandLineRunner {
+
+    private static final SxssfExportOptions EXPORT_OPTIONS = new SxssfExportOptions(100, true, false);
+
+    @Autowired
+    private UserService userService;
+
+    @Override
+    public void run(String... args) throws Exception {
+        ExcelUpdater excelUpdater = new ExcelUpdater();
+        CsvUpdater csvUpdater = new CsvUpdater();
+
+        List<User> users = userService.getAllUsers();
+
+        try {
+            // Update the Excel and CSV files with data, joined on the ID column
+            List<Map<String, String>> data = users.stream().map(user -> {
+                Map<String, String> map = new HashMap<>();
+                map.put("ID", String.valueOf(user.getId()));
+                map.put("Name", user.getName());
+                map.put("Email", user.getEmail());
+                return map;
+            }).collect(Collectors.toList());
+            String adjacentColumnName = "Name";
+
+            Path excelPath = Paths.get("path/to/your/file.xlsx");
+            excelUpdater.updateExcelFile(excelPath, data, adjacentColumnName);
+
+            Path csvPath = Paths.get("path/to/your/file.csv");
+            csvUpdater.updateCsvFile(csvPath, data, adjacentColumnName, "ID");
+
+            // Full export to a separate file with the streaming writer, replaced on every run
+            ExcelUtils.exportToExcel(users, "path/to/your/users-export.xlsx", User.class, EXPORT_OPTIONS);
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
+```
+
+### 설명
+
+1. **메모리 사용량**: `SXSSFWorkbook`은 창 크기(`rowAccessWindow`)만큼의 행만 힙에 두고, 창을 넘어간 행은 시트별 임시 XML 파일로 내보냅니다. 그래서 `exportToExcel`의 작성기 쪽 힙 사용량은 행 수와 관계없이 거의 일정합니다. 다만 이 `Main`은 기존 업데이트 때문에 `getAllUsers()`로 목록 전체를 읽으므로 전체 힙은 사용자 수에 비례합니다. DB 커서에서 바로 넘기는 방법은 다음 항목에서 다룹니다.
+2. **공유 문자열 미사용**: `useSharedStrings = false`이면 문자열이 셀 안에 인라인으로 쓰입니다. SST는 모든 고유 문자열을 끝까지 메모리에 들고 있으므로, 이메일처럼 값이 거의 다 다른 컬럼에서는 SST를 쓰면 힙이 행 수에 비례해서 늘어납니다. 대신 같은 문자열이 많으면 파일이 조금 커질 수 있습니다.
+3. **임시 파일 압축**: `compressTempFiles = true`이면 임시 시트 파일을 gzip으로 씁니다. 100만 행 내보내기에서는 임시 파일이 수백 MB가 될 수 있으므로 기본값으로 켭니다.
+4. **임시 파일 정리**: `close()`에서 `dispose()`를 호출해 임시 시트 파일을 지웁니다. try-with-resources로 닫으므로 예외가 나도 남지 않습니다.
+5. **첫 바이트까지의 시간**: 행을 만드는 동안 이미 디스크로 내보내므로, `finish`에서는 임시 시트 파일을 zip에 복사하기만 합니다. HTTP 응답으로 바로 내보내는 방법은 다음 항목에서 다룹니다.
+
+### 주의 사항
+
+- `SXSSFSheet`에서는 창 밖으로 나간 행에 다시 접근할 수 없습니다(`getRow`가 `null`을 반환). 헤더처럼 나중에 수정해야 하는 행은 감싸기 전이나 첫 행을 쓰기 전에 완성해야 합니다.
+- `writeDataToExcel`로 기존 파일에 추가하는 경우 기존 행은 `XSSFWorkbook`으로 모두 읽히고, 호출할 때마다 행이 계속 추가됩니다. 날짜 스타일은 `ColumnExtractor.formatStyle`로 기존 통합 문서(`base.getStylesSource()`를 공유)에 있는 같은 형식의 스타일을 다시 사용하므로, 추가할 때마다 셀 스타일이 늘어나 64,000개 한도에 다가가지 않습니다. 전체 내보내기는 `exportToExcel`로 새 파일에 쓰고, 아주 큰 기존 파일을 키로 갱신해야 하면 앞의 `ExcelUpdater.updateExcelStreaming`처럼 SAX로 읽어서 새 파일을 쓰는 방식을 사용합니다.
+- `autoSizeColumn`은 창 안의 행만 보고 계산하므로, 필요하면 `trackAllColumnsForAutoSizing()`을 먼저 호출해야 합니다. 100만 행에서는 비용이 크므로 고정 너비를 권장합니다.
+
+
+
+
+
+
+
+`FileDownloadController.downloadFile`은 디스크에 이미 있는 파일만 내려줄 수 있고, `Main.run`의 내보내기는 먼저 `path/to/your/file.xlsx`에 파일을 만든 다음에 이를 내려받는 구조입니다. DB 커서에서 읽은 데이터를 `StreamingResponseBody`로 HTTP 응답에 바로 쓰는 내보내기 엔드포인트를 추가합니다.
+
+- 형식은 CSV와 SXSSF XLSX를 지원합니다.
+- `Content-Length` 없이 청크 전송(chunked transfer)하고, 선택적으로 gzip 압축을 합니다.
+- 전체 목록을 메모리에 만들지 않으며, CSV는 임시 파일도 만들지 않습니다.
+
+### 1. 커서 조회 추가
+
+MyBatis `Cursor`는 결과를 한 행씩 꺼내며, `fetchSize`만큼씩 DB에서 가져옵니다. 커서는 SQL 세션(트랜잭션)이 열려 있는 동안에만 읽을 수 있습니다.
+
+#### UserMapper.java (수정)
+
+```java
+import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.ResultSetType;
+
+import java.util.List;
+
+@Mapper
+public interface UserMapper {
+
+    @Insert("INSERT INTO users (name, email) VALUES (#{name}, #{email})")
+    @Options(useGeneratedKeys = true, keyProperty = "id")
+    void insertUser(User user);
+
+    @Select("SELECT * FROM users WHERE id = #{id}")
+    User getUserById(int id);
+
+    @Select("SELECT * FROM users")
+    List<User> getAllUsers();
+
+    @Select("SELECT id, name, email FROM users ORDER BY id")
+    @Options(fetchSize = 1000, resultSetType = ResultSetType.FORWARD_ONLY)
+    Cursor<User> streamAllUsers();
+
+    @Update("UPDATE users SET name = #{name}, email = #{email} WHERE id = #{id}")
+    void updateUser(User user);
+
+    @Delete("DELETE FROM users WHERE id = #{id}")
+    void deleteUser(int id);
+}
+```
+
+#### UserService.java (수정)
+
+`StreamingResponseBody`는 컨트롤러 메서드가 반환된 뒤 별도의 비동기 스레드에서 실행됩니다. 그래서 컨트롤러에 `@Transactional`을 붙여도 소용이 없고, 스트리밍 스레드 안에서 호출되는 서비스 메서드가 트랜잭션을 열어야 합니다.
+
+```java
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+@Service
+public class UserService {
+
+    @Autowired
+    private UserMapper userMapper;
+
+    // ... insertUser, getUserById, getAllUsers, updateUser, deleteUser unchanged
+
+    /**
+     * Reads all users through a database cursor and passes them to the action one by one.
+     * The cursor stays open only for the duration of this call.
+     */
+    @Transactional(readOnly = true)
+    public void forEachUser(Consumer<User> action) {
+        try (Cursor<User> cursor = userMapper.streamAllUsers()) {
+            cursor.forEach(action);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
+```
+
+### 2. 내보내기 컨트롤러
+
+#### UserExportController.java
+
+```java
+package com.example.demo;
+
+import com.example.demo.utils.ColumnExtractor;
+import com.example.demo.utils.ExcelStreamWriter;
+import com.example.demo.utils.SxssfExportOptions;
+import com.opencsv.CSVWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+@RestController
+@RequestMapping("/api/export")
+public class UserExportController {
+
+    private static final int FLUSH_INTERVAL = 1000;
+    private static final MediaType XLSX = MediaType.parseMediaType(
+            "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+
+    @Autowired
+    private UserService userService;
+
+    @GetMapping("/users")
+    public ResponseEntity<StreamingResponseBody> exportUsers(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            @RequestHeader HttpHeaders requestHeaders) {
+
+        boolean xlsx = "xlsx".equalsIgnoreCase(format);
+        if (!xlsx && !"csv".equalsIgnoreCase(format)) {
+            return ResponseEntity.badRequest().build();
+        }
+        // XLSX is already a zip archive; compressing it again saves nothing
+        boolean compress = gzip && !xlsx && acceptsEncoding(requestHeaders, "gzip");
+
+        StreamingResponseBody body = xlsx ? this::writeXlsx : out -> writeCsv(out, compress);
+
+        // No Content-Length: the container falls back to chunked transfer encoding
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(xlsx ? XLSX : new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"users." + (xlsx ? "xlsx" : "csv") + "\"");
+        if (gzip && !xlsx) {
+            // The body depends on Accept-Encoding, so caches must key on it
+            response.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        if (compress) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
+    private void writeCsv(OutputStream out, boolean compress) throws IOException {
+        // The servlet stream belongs to the container; nonClosing lets writer.close() end the gzip stream only
+        OutputStream target = StreamUtils.nonClosing(out);
+        if (compress) {
+            // syncFlush lets each flush() push the compressed bytes written so far to the client
+            target = new GZIPOutputStream(target, 8192, true);
+        }
+        CSVWriter writer = new CSVWriter(new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8)));
+
+        // Same columns and header names as the XLSX export
+        ColumnExtractor<User> extractor = ColumnExtractor.forClass(User.class);
+        String[] row = new String[extractor.size()];
+        for (int c = 0; c < row.length; c++) {
+            row[c] = extractor.name(c);
+        }
+        writer.writeNext(row);
+        writer.flush();
+
+        int[] count = {0};
+        try {
+            userService.forEachUser(user -> {
+                for (int c = 0; c < row.length; c++) {
+                    Object value = extractor.value(user, c);
+                    row[c] = value == null ? null : value.toString();
+                }
+                writer.writeNext(row);
+                if (++count[0] % FLUSH_INTERVAL == 0) {
+                    flush(writer);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        // Writes the gzip trailer and releases the deflater; the servlet stream stays open
+        writer.close();
+    }
+
+    private void writeXlsx(OutputStream out) throws IOException {
+        try (ExcelStreamWriter<User> writer = ExcelStreamWriter.create(User.class, SxssfExportOptions.DEFAULT)) {
+            userService.forEachUser(writer::write);
+            writer.finish(out);
+        }
+    }
+
+    private static void flush(CSVWriter writer) {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            // Usually the client went away; stop reading the cursor
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // RFC 9110: an explicit coding overrides "*", q=0 means not acceptable, x-gzip is an alias of gzip
+    private static boolean acceptsEncoding(HttpHeaders requestHeaders, String encoding) {
+        Double explicit = null;
+        Double wildcard = null;
+        for (String value : requestHeaders.getValuesAsList(HttpHeaders.ACCEPT_ENCODING)) {
+            String[] parts = value.split(";");
+            String coding = parts[0].trim();
+            if ("x-gzip".equalsIgnoreCase(coding)) {
+                coding = "gzip";
+            }
+            if (coding.equalsIgnoreCase(encoding)) {
+                explicit = Math.max(explicit == null ? 0 : explicit, qualityOf(parts));
+            } else if ("*".equals(coding)) {
+                wildcard = qualityOf(parts);
+            }
+        }
+        Double quality = explicit != null ? explicit : wildcard;
+        return quality != null && quality > 0;
+    }
+
+    // Weight of the q parameter; 1 when absent, 0 when malformed
+    private static double qualityOf(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String[] param = parts[i].split("=", 2);
+            if (param.length == 2 && param[0].trim().equalsIgnoreCase("q")) {
+                try {
+                    return Double.parseDouble(param[1].trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
+```
+
+### 3. 비동기 요청 설정
+
+`StreamingResponseBody`는 Spring MVC의 비동기 요청으로 처리됩니다. 기본 비동기 타임아웃(보통 30초)이 지나면 큰 내보내기가 중간에 끊기고, 기본 실행기(`SimpleAsyncTaskExecutor`)는 요청마다 스레드를 새로 만듭니다. 타임아웃과 스레드 풀을 지정합니다. 스레드 풀은 빈으로 등록해서 애플리케이션 종료 시 Spring이 함께 종료하도록 합니다.
+
+#### AsyncWebConfig.java
+
+```java
+package com.example.demo;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class AsyncWebConfig implements WebMvcConfigurer {
+
+    // A bean, so Spring initializes it and shuts the pool down with the context
+    @Bean
+    public ThreadPoolTaskExecutor exportTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(8);
+        executor.setQueueCapacity(50);
+        executor.setThreadNamePrefix("export-");
+        return executor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(exportTaskExecutor());
+        configurer.setDefaultTimeout(30 * 60 * 1000L);
+    }
+}
+```
+
+### 4. 사용 예제
+
+```
+GET /api/export/users?format=csv
+GET /api/export/users?format=csv&gzip=true      (Accept-Encoding: gzip 필요)
+GET /api/export/users?format=xlsx
+```
+
+```
+curl -H "Accept-Encoding: gzip" --compressed -o users.csv "http://localhost:8080/api/export/users?format=csv&gzip=true"
+```
+
+### 설명
+
+1. **첫 바이트까지의 시간**: CSV는 헤더를 쓰자마자 `flush()`하므로, 쿼리가 첫 fetch를 가져오기 전에도 응답 헤더와 첫 줄이 클라이언트에 도착합니다. 이후 1,000행마다 flush합니다.
+2. **메모리**: 커서는 `fetchSize`(1,000)행씩 DB에서 가져오고, 행 배열(`row`)은 하나를 재사용합니다. 행 수가 늘어나도 힙 사용량은 늘어나지 않습니다.
+3. **청크 전송**: `Content-Length`를 지정하지 않았으므로 서블릿 컨테이너가 `Transfer-Encoding: chunked`로 보냅니다. 전체 크기를 미리 알 필요가 없습니다.
+4. **gzip**: `GZIPOutputStream`을 `syncFlush = true`로 만들어서 flush할 때마다 그때까지 압축된 데이터가 실제로 전송됩니다. 클라이언트의 `Accept-Encoding`이 gzip을 허용할 때만 압축하고(`gzip`/`x-gzip`이나 `*`, 명시한 코딩이 `*`보다 우선하며 `q=0`은 거부로 처리), `Content-Encoding: gzip` 헤더를 붙입니다. 응답이 `Accept-Encoding`에 따라 달라지므로 `Vary: Accept-Encoding`도 붙여 캐시가 압축본과 원본을 섞지 않게 합니다. `writer.close()`는 gzip 트레일러를 쓰고 닫지만, `StreamUtils.nonClosing`으로 감쌌기 때문에 서블릿 출력 스트림은 닫지 않고 컨테이너에 맡깁니다.
+5. **트랜잭션 범위**: 커서는 `forEachUser` 안에서만 열려 있습니다. 클라이언트가 연결을 끊으면 flush에서 `IOException`이 발생하고, 이를 `UncheckedIOException`으로 던져 커서 순회를 멈추므로 DB 연결이 바로 반환됩니다.
+6. **헤더**: CSV와 XLSX 모두 `ColumnExtractor`의 컬럼(`id`, `name`, `email`)을 같은 순서, 같은 이름으로 씁니다.
+
+### 주의 사항
+
+- **XLSX**: XLSX는 zip 파일이고 SXSSF는 시트 XML을 임시 파일에 모았다가 `finish`에서 zip으로 묶기 때문에, 첫 바이트는 마지막 행을 쓴 뒤에 나갑니다. 임시 파일은 압축되어 있으며 `close()`에서 지워집니다. 진짜 스트리밍과 빠른 첫 바이트가 필요하면 CSV 형식을 사용합니다.
+- **MySQL**: MySQL Connector/J는 `fetchSize`를 무시하고 결과를 모두 가져옵니다. 연결 URL에 `useCursorFetch=true`를 추가해야 fetch 단위로 가져옵니다(H2, PostgreSQL, Oracle은 `fetchSize`만으로 동작하며, PostgreSQL은 트랜잭션 안이어야 합니다).
+- **기존 다운로드 엔드포인트**: `FileDownloadController`의 `/api/download`는 그대로 두고, 내보내기는 `/api/export/users`를 사용합니다.
+
+
+
+
+
+
+
+`Main.run`은 `userService.getAllUsers()`로 사용자 전체를 `List<User>`로 가져오고, 다시 사용자마다 `"ID"`/`"Name"`/`"Email"` 키의 `HashMap`을 만들어 또 하나의 `List`에 모은 다음 `ExcelUpdater`/`CsvUpdater`에 넘깁니다. 그래서 사용자 수만큼의 `User`와 `HashMap`이 동시에 힙에 올라갑니다. MyBatis `ResultHandler`/`Cursor`와 fetch size 설정으로 사용자를 한 건씩 CSV/엑셀 작성기에 바로 흘려보내는 파이프라인으로 바꿉니다. 행 객체는 재사용하고, 메모리에는 fetch 한 번 분량 이상을 두지 않습니다.
+
+### 1. fetch size 설정
+
+JDBC 드라이버가 한 번에 가져오는 행 수는 MyBatis 전역 기본값으로 설정합니다. 애노테이션의 `fetchSize`는 상수만 받기 때문에, 환경마다 바꾸려면 설정 파일에 두는 편이 낫습니다. 기존 `application.yml`에서는 `mybatis`가 `spring` 아래에 들어가 있어 적용되지 않았으므로 최상위로 옮깁니다.
+
+#### application.yml (수정)
+
+```yaml
+spring:
+  datasource:
+    url: jdbc:h2:mem:testdb
+    driver-class-name: org.h2.Driver
+    username: sa
+    password:
+  h2:
+    console:
+      enabled: true
+
+mybatis:
+  mapper-locations: classpath:mappers/*.xml
+  configuration:
+    # Rows fetched per round trip for every statement without its own fetchSize
+    default-fetch-size: 1000
+```
+
+### 2. UserMapper 수정
+
+`ResultHandler`를 받는 조회를 추가합니다. 반환 타입이 `void`이므로 MyBatis는 결과를 리스트에 모으지 않고 행마다 핸들러를 호출합니다. 앞에서 추가한 `streamAllUsers`도 고정값 대신 전역 fetch size를 쓰도록 `fetchSize`를 뺍니다.
+
+#### UserMapper.java (수정)
+
+```java
+import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.util.List;
+
+@Mapper
+public interface UserMapper {
+
+    // ... insertUser, getUserById, getAllUsers, updateUser, deleteUser unchanged
+
+    @Select("SELECT id, name, email FROM users ORDER BY id")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY)
+    Cursor<User> streamAllUsers();
+
+    @Select("SELECT id, name, email FROM users ORDER BY id")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY)
+    @ResultType(User.class)
+    void scanAllUsers(ResultHandler<User> handler);
+}
+```
+
+#### UserService.java (수정)
+
+```java
+    /**
+     * Passes every user to the handler as it is read; nothing is collected.
+     */
+    @Transactional(readOnly = true)
+    public void scanUsers(ResultHandler<User> handler) {
+        userMapper.scanAllUsers(handler);
+    }
+```
+
+### 3. 내보내기 파이프라인
+
+DB를 한 번만 읽으면서 두 가지 일을 합니다. 컬럼과 헤더 이름은 HTTP 내보내기와 같이 `ColumnExtractor`에서 가져오고, 행 배열(`String[]`)은 하나를 만들어 재사용합니다. 결과 파일은 모두 임시 파일에 쓴 뒤 원자적으로 교체합니다.
+
+- `export`: CSV와 엑셀 파일을 새로 씁니다. 엑셀은 앞에서 만든 `ExcelStreamWriter`가 `User`를 바로 셀로 씁니다.
+- `mergeById`: 기존 `Main`과 같이 `file.csv`/`file.xlsx`를 ID로 갱신합니다. 사용자를 `ExternalSorter`에 바로 넣고, 앞의 `SortMergeUpdater`로 두 파일에 차례로 병합합니다. 기존 파일도 업데이트도 메모리에 올리지 않습니다.
+
+#### UserExportPipeline.java
+
+```java
+package com.example.demo;
+
+import com.example.demo.utils.ColumnExtractor;
+import com.example.demo.utils.ExcelStreamWriter;
+import com.example.demo.utils.SxssfExportOptions;
+import com.opencsv.CSVWriter;
+import org.apache.ibatis.session.ResultHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+@Component
+public class UserExportPipeline {
+
+    private static final String ID_COLUMN = "id";
+
+    @Autowired
+    private UserService userService;
+
+    /**
+     * Streams all users into a CSV file and an XLSX file in a single pass over the table.
+     *
+     * @return number of exported users
+     */
+    public long export(Path csvPath, Path excelPath, SxssfExportOptions options) throws IOException {
+        Path csvTemp = Files.createTempFile(csvPath.toAbsolutePath().getParent(), csvPath.getFileName().toString(), ".tmp");
+        Path excelTemp = Files.createTempFile(excelPath.toAbsolutePath().getParent(), excelPath.getFileName().toString(), ".tmp");
+        long[] count = {0};
+
+        try (CSVWriter csvWriter = new CSVWriter(Files.newBufferedWriter(csvTemp, StandardCharsets.UTF_8));
+             ExcelStreamWriter<User> excelWriter = ExcelStreamWriter.create(User.class, options)) {
+            // Same columns and header names as the XLSX export
+            ColumnExtractor<User> extractor = ColumnExtractor.forClass(User.class);
+            csvWriter.writeNext(header(extractor));
+
+            // Reused for every row; CSVWriter copies the values into its buffer
+            String[] row = new String[extractor.size()];
+            ResultHandler<User> handler = context -> {
+                fill(row, extractor, context.getResultObject());
+                csvWriter.writeNext(row);
+                excelWriter.write(user);
+                count[0]++;
+            };
+            userService.scanUsers(handler);
+
+            if (csvWriter.checkError()) {
+                throw new IOException("Failed to write " + csvPath);
+            }
+            try (OutputStream out = Files.newOutputStream(excelTemp)) {
+                excelWriter.finish(out);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(csvTemp);
+            Files.deleteIfExists(excelTemp);
+            throw e;
+        }
+
+        replace(csvTemp, csvPath);
+        replace(excelTemp, excelPath);
+        return count[0];
+    }
+
+    /**
+     * Updates the existing CSV and XLSX files by the ID column, like the original List-based
+     * updaters, with the users streamed from the cursor into an external sorter.
+     *
+     * @return number of users merged
+     */
+    public long mergeById(Path csvPath, Path excelPath, long memoryBudget, Path tempDir) throws IOException {
+        ColumnExtractor<User> extractor = ColumnExtractor.forClass(User.class);
+        String[] header = header(extractor);
+        int keyIndex = -1;
+        for (int c = 0; c < header.length; c++) {
+            if (header[c].equalsIgnoreCase(ID_COLUMN)) {
+                keyIndex = c;
+            }
+        }
+        if (keyIndex == -1) {
+            throw new IllegalStateException("User has no " + ID_COLUMN + " field");
+        }
+
+        SortMergeUpdater updater = new SortMergeUpdater(memoryBudget, tempDir);
+        Path csvTemp = Files.createTempFile(csvPath.toAbsolutePath().getParent(), csvPath.getFileName().toString(), ".tmp");
+        Path excelTemp = Files.createTempFile(excelPath.toAbsolutePath().getParent(), excelPath.getFileName().toString(), ".tmp");
+        long[] count = {0};
+
+        try (ExternalSorter updates = new ExternalSorter(keyIndex, memoryBudget, tempDir)) {
+            // add copies the row, so one array is reused for every user
+            String[] row = new String[header.length];
+            try {
+                userService.scanUsers(context -> {
+                    fill(row, extractor, context.getResultObject());
+                    try {
+                        updates.add(row);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    count[0]++;
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            // Both merges read the same sorted runs; "ID" in the files matches "id" case-insensitively
+            updater.updateCsv(csvPath, ID_COLUMN, header, updates, csvTemp, Charset.defaultCharset());
+            updater.updateExcel(excelPath, ID_COLUMN, header, updates, excelTemp);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(csvTemp);
+            Files.deleteIfExists(excelTemp);
+            throw e;
+        }
+
+        replace(csvTemp, csvPath);
+        replace(excelTemp, excelPath);
+        return count[0];
+    }
+
+    private static String[] header(ColumnExtractor<User> extractor) {
+        String[] header = new String[extractor.size()];
+        for (int c = 0; c < header.length; c++) {
+            header[c] = extractor.name(c);
+        }
+        return header;
+    }
+
+    private static void fill(String[] row, ColumnExtractor<User> extractor, User user) {
+        for (int c = 0; c < row.length; c++) {
+            Object value = extractor.value(user, c);
+            row[c] = value == null ? null : value.toString();
+        }
+    }
+
+    private static void replace(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
+```
+
+### 4. Main 수정
+
+기존 `Main`은 사용자 목록으로 `file.xlsx`와 `file.csv`를 ID 기준으로 갱신했습니다. 같은 동작을 `mergeById`로 유지하되, `List<User>`와 `List<Map<String, String>>`을 만들지 않고 커서에서 읽은 행을 정렬기로 바로 넘깁니다. 파일을 통째로 새로 쓰는 `export`는 따로 필요한 경우(예: 별도의 `users-export.csv`)에만 호출합니다. 출력은 `System.out`/`printStackTrace` 대신 로거로 남깁니다.
+
+#### Main.java (수정)
+
+```java
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+@Component
+public class Main implements CommandLineRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(Main.class);
+
+    // Rows kept in memory per side before a sorted run is spilled
+    private static final long MERGE_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+    @Autowired
+    private UserExportPipeline userExportPipeline;
+
+    @Override
+    public void run(String... args) throws Exception {
+        try {
+            // Update the CSV and Excel files with the users, joined on the ID column
+            long merged = userExportPipeline.mergeById(
+                    Paths.get("path/to/your/file.csv"),
+                    Paths.get("path/to/your/file.xlsx"),
+                    MERGE_MEMORY_BUDGET,
+                    Paths.get(System.getProperty("java.io.tmpdir")));
+            log.info("Merged {} users", merged);
+        } catch (IOException e) {
+            log.error("User merge failed", e);
+        }
+    }
+}
+```
+
+### 설명
+
+1. **메모리**: `getAllUsers()`의 `List<User>`와 `List<Map<String, String>>`가 모두 없어졌습니다. 힙에는 JDBC 드라이버의 fetch 버퍼(`default-fetch-size`만큼의 행), 재사용하는 `String[]` 하나, SXSSF 창(100행)만 남습니다.
+2. **ResultHandler와 Cursor**: 둘 다 행 단위로 처리합니다. `ResultHandler`는 호출 한 번 안에서 순회가 끝나므로 세션 관리가 단순해서 파이프라인에 사용했고, `Cursor`는 반복자가 필요한 경우(앞의 HTTP 내보내기처럼 `forEach`에서 중간에 멈추는 경우)에 사용합니다.
+3. **행 객체 재사용**: MyBatis는 결과 매핑 시 행마다 새 `User`를 만듭니다. 이 객체는 핸들러가 끝나면 바로 버려지는 짧은 수명의 객체라 GC 부담이 작습니다. 그 뒤 단계의 중간 객체(`HashMap`, 행 배열)는 더 이상 만들지 않습니다.
+4. **단일 조회**: `export`는 CSV와 엑셀을 같은 핸들러에서 쓰고, `mergeById`는 정렬된 run을 CSV와 엑셀 병합에 함께 사용하므로 어느 쪽도 테이블을 한 번만 읽습니다.
+5. **실패 처리**: 중간에 실패하면 임시 파일을 지우고 예외를 다시 던지므로, 원래 파일은 두 파일 모두 병합에 성공했을 때만 교체됩니다.
+6. **기존 동작 유지**: `mergeById`는 원래 `Main`처럼 ID가 같은 행을 갱신하고 없는 ID는 새 행으로 추가합니다. 결과는 `SortMergeUpdater`의 특성상 키 순서로 정렬되고, 새 컬럼은 `Name` 뒤가 아니라 끝에 추가됩니다. 엑셀 셀은 문자열로 다시 쓰입니다.
+
+### 주의 사항
+
+- MySQL은 `fetchSize`만으로는 스트리밍하지 않습니다. 연결 URL에 `useCursorFetch=true`를 추가해야 `default-fetch-size` 단위로 가져옵니다. PostgreSQL은 트랜잭션 안에서만 fetch size가 적용되므로 `scanUsers`에 `@Transactional`을 붙였습니다.
+- `getAllUsers()`는 다른 화면에서 사용하므로 남겨 두었습니다.
+
+
+
+
+
+
+
+`CsvUpdater`, `ExcelUpdater`, `CSVUtils`, `ExcelUtils`의 업데이트 함수는 모두 `List<Map<String, String>>`을 받습니다. 행마다 `HashMap`이 하나씩 있고, 셀마다 키 문자열을 해싱하며 `toLowerCase()`로 새 문자열을 만듭니다. 숫자도 모두 문자열로 들고 다닙니다. 컬럼 이름을 정수 id로 한 번만 인터닝하고, 값을 컬럼별 타입 배열(`String[]`, `long[]`, `double[]`)에 담는 컬럼형 `RowBatch`를 추가합니다. 각 업데이트 함수는 `RowBatch`를 직접 받고, 기존 `Map` 기반 메서드는 `RowBatch`로 변환해서 넘기는 어댑터로 남깁니다.
+
+### 1. 컬럼 id 인터닝
+
+컬럼 이름마다 정수 id를 한 번만 발급합니다. 업데이트 함수들은 컬럼 이름을 대소문자 구분 없이 비교하므로, id마다 소문자 이름의 id(`folded`)도 발급할 때 함께 계산해 둡니다. 이후에는 셀마다 `toLowerCase()`를 호출하지 않고 정수만 비교합니다. id 표는 전역이 아니라 `RowBatch`마다 하나씩 만들어지고 배치와 함께 수거되므로, 사용자가 올린 파일의 헤더가 계속 늘어나도 메모리에 쌓이지 않습니다. 파일 헤더는 표에 등록하지 않고 조회만 합니다.
+
+#### ColumnIds.java
+
+```java
+package com.example.demo.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column name ids of one RowBatch. Filled while the batch is built and read-only afterwards,
+ * so the table lives exactly as long as the batch.
+ */
+public final class ColumnIds {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private int[] folded = new int[16];
+
+    ColumnIds() {
+    }
+
+    /** Returns the id of the exact column name, assigning one on first use. */
+    int intern(String name) {
+        Integer existing = ids.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        String lower = name.toLowerCase();
+        int foldedId = lower.equals(name) ? names.size() : intern(lower);
+
+        int id = names.size();
+        names.add(name);
+        if (id == folded.length) {
+            folded = Arrays.copyOf(folded, folded.length * 2);
+        }
+        folded[id] = foldedId;
+        ids.put(name, id);
+        return id;
+    }
+
+    /** Id of the exact name, or -1 when no column of the batch has it. */
+    public int find(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    /** Folded id of the name compared case-insensitively, or -1 when no column matches. */
+    public int findFolded(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return folded[id];
+        }
+        // The lowercased form of every interned name is interned too
+        Integer lower = ids.get(name.toLowerCase());
+        return lower != null ? lower : -1;
+    }
+
+    /** Id of the lowercased name; equal for names that differ only in case. */
+    public int folded(int id) {
+        return folded[id];
+    }
+
+    public String name(int id) {
+        return names.get(id);
+    }
+}
+```
+
+### 2. RowBatch
+
+컬럼마다 이름, id, 타입, 값 배열, 값 존재 여부(`BitSet`)를 둡니다. `Map`에 키가 없던 셀은 `null`(값 없음)로 표현합니다.
+
+#### RowBatch.java
+
+```java
+package com.example.demo.utils;
+
+import java.util.*;
+
+public final class RowBatch {
+
+    public enum ColumnType { STRING, LONG, DOUBLE }
+
+    private final String[] names;
+    private final ColumnIds columnIds;
+    private final int[] ids;
+    private final ColumnType[] types;
+    private final Object[] vectors; // String[], long[] or double[] per column
+    private final BitSet[] present;
+    private final int rowCount;
+
+    private RowBatch(String[] names, ColumnIds columnIds, int[] ids, ColumnType[] types, Object[] vectors, BitSet[] present, int rowCount) {
+        this.names = names;
+        this.columnIds = columnIds;
+        this.ids = ids;
+        this.types = types;
+        this.vectors = vectors;
+        this.present = present;
+        this.rowCount = rowCount;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Adapter for the map-based APIs: one STRING column per distinct key, in first-seen order.
+     * Rows built the same way iterate their keys in the same order, so the column of each entry
+     * is predicted from the previous row and the name map is only consulted when the prediction misses.
+     */
+    public static RowBatch fromMaps(List<Map<String, String>> rows) {
+        Builder builder = new Builder();
+        Map<String, Integer> columnByName = new HashMap<>();
+        int[] previous = new int[8]; // column of the k-th entry of the previous row
+        for (Map<String, String> row : rows) {
+            builder.startRow();
+            int k = 0;
+            for (Map.Entry<String, String> entry : row.entrySet()) {
+                String key = entry.getKey();
+                int column;
+                if (k < previous.length && k < builder.columnCount() && key.equals(builder.name(previous[k]))) {
+                    column = previous[k];
+                } else {
+                    Integer known = columnByName.get(key);
+                    if (known == null) {
+                        known = builder.columnCount();
+                        builder.addColumn(key, ColumnType.STRING);
+                        columnByName.put(key, known);
+                    }
+                    column = known;
+                    if (k == previous.length) {
+                        previous = Arrays.copyOf(previous, previous.length * 2);
+                    }
+                    previous[k] = column;
+                }
+                builder.setString(column, entry.getValue());
+                k++;
+            }
+        }
+        return builder.build();
+    }
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    public int columnCount() {
+        return names.length;
+    }
+
+    public String name(int column) {
+        return names[column];
+    }
+
+    /** Column name ids of this batch; file headers are looked up here, never added. */
+    public ColumnIds columnIds() {
+        return columnIds;
+    }
+
+    public int columnId(int column) {
+        return ids[column];
+    }
+
+    public int foldedColumnId(int column) {
+        return columnIds.folded(ids[column]);
+    }
+
+    public ColumnType type(int column) {
+        return types[column];
+    }
+
+    /** Column index by exact name, or -1. */
+    public int indexOf(String name) {
+        int id = columnIds.find(name);
+        for (int c = 0; c < ids.length; c++) {
+            if (ids[c] == id) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /** Column index by case-insensitive name, or -1. */
+    public int indexOfIgnoreCase(String name) {
+        int folded = columnIds.findFolded(name);
+        for (int c = 0; c < ids.length; c++) {
+            if (folded >= 0 && columnIds.folded(ids[c]) == folded) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    public boolean isNull(int column, int row) {
+        return !present[column].get(row);
+    }
+
+    public long getLong(int column, int row) {
+        return ((long[]) vectors[column])[row];
+    }
+
+    public double getDouble(int column, int row) {
+        return ((double[]) vectors[column])[row];
+    }
+
+    /** Value as text (numbers are formatted), or null when the cell has no value. */
+    public String getString(int column, int row) {
+        if (isNull(column, row)) {
+            return null;
+        }
+        switch (types[column]) {
+            case LONG:
+                return Long.toString(getLong(column, row));
+            case DOUBLE:
+                return Double.toString(getDouble(column, row));
+            default:
+                return ((String[]) vectors[column])[row];
+        }
+    }
+
+    /**
+     * Groups rows by the lowercased value of the key column, in first-seen order.
+     * Rows without a key value are skipped.
+     */
+    public Map<String, int[]> rowsByKey(int keyColumn) {
+        Map<String, int[]> rowsByKey = new LinkedHashMap<>();
+        for (int r = 0; r < rowCount; r++) {
+            String key = getString(keyColumn, r);
+            if (key == null) {
+                continue;
+            }
+            rowsByKey.merge(key.toLowerCase(), new int[]{r}, (a, b) -> {
+                int[] merged = Arrays.copyOf(a, a.length + 1);
+                merged[a.length] = b[0];
+                return merged;
+            });
+        }
+        return rowsByKey;
+    }
+
+    public static final class Builder {
+        private final List<String> names = new ArrayList<>();
+        private final List<ColumnType> types = new ArrayList<>();
+        private final List<Object> vectors = new ArrayList<>();
+        private final List<BitSet> present = new ArrayList<>();
+        private int capacity = 16;
+        private int rowCount;
+
+        public Builder addColumn(String name, ColumnType type) {
+            names.add(name);
+            types.add(type);
+            vectors.add(newVector(type, capacity));
+            present.add(new BitSet());
+            return this;
+        }
+
+        public int columnCount() {
+            return names.size();
+        }
+
+        public String name(int column) {
+            return names.get(column);
+        }
+
+        /** Starts a new row; cells not set stay null. */
+        public Builder startRow() {
+            if (rowCount == capacity) {
+                capacity *= 2;
+                for (int c = 0; c < vectors.size(); c++) {
+                    vectors.set(c, grow(vectors.get(c), capacity));
+                }
+            }
+            rowCount++;
+            return this;
+        }
+
+        public Builder setString(int column, String value) {
+            if (value != null) {
+                ((String[]) vectors.get(column))[rowCount - 1] = value;
+                present.get(column).set(rowCount - 1);
+            }
+            return this;
+        }
+
+        public Builder setLong(int column, long value) {
+            ((long[]) vectors.get(column))[rowCount - 1] = value;
+            present.get(column).set(rowCount - 1);
+            return this;
+        }
+
+        public Builder setDouble(int column, double value) {
+            ((double[]) vectors.get(column))[rowCount - 1] = value;
+            present.get(column).set(rowCount - 1);
+            return this;
+        }
+
+        public RowBatch build() {
+            int columns = names.size();
+            ColumnIds columnIds = new ColumnIds();
+            int[] ids = new int[columns];
+            Object[] trimmed = new Object[columns];
+            for (int c = 0; c < columns; c++) {
+                ids[c] = columnIds.intern(names.get(c));
+                trimmed[c] = grow(vectors.get(c), rowCount);
+            }
+            return new RowBatch(names.toArray(new String[0]), columnIds, ids, types.toArray(new ColumnType[0]),
+                    trimmed, present.toArray(new BitSet[0]), rowCount);
+        }
+
+        private static Object newVector(ColumnType type, int size) {
+            switch (type) {
+                case LONG:
+                    return new long[size];
+                case DOUBLE:
+                    return new double[size];
+                default:
+                    return new String[size];
+            }
+        }
+
+        private static Object grow(Object vector, int size) {
+            if (vector instanceof long[]) {
+                return Arrays.copyOf((long[]) vector, size);
+            }
+            if (vector instanceof double[]) {
+                return Arrays.copyOf((double[]) vector, size);
+            }
+            return Arrays.copyOf((String[]) vector, size);
+        }
+    }
+}
+```
+
+### 3. CsvUpdater 수정
+
+업데이트 데이터는 키 값 → 행 번호 배열(`int[]`)로만 인덱싱합니다. 배치 컬럼과 파일 컬럼의 대응(`target`)은 헤더를 읽을 때 한 번만 계산하므로, 행을 병합할 때는 배열 인덱스만 사용합니다.
+
+#### CsvUpdater.java (수정)
+
+```java
+import com.example.demo.utils.ColumnIds;
+import com.example.demo.utils.RowBatch;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+public class CsvUpdater {
+
+    public static void updateCsvStreaming(String filePath, String keyColumn, String comparisonKey, List<Map<String, String>> data) throws IOException {
+        updateCsvStreaming(filePath, keyColumn, comparisonKey, RowBatch.fromMaps(data));
+    }
+
+    public static void updateCsvStreaming(String filePath, String keyColumn, String comparisonKey, List<Map<String, String>> data, Charset charset) throws IOException {
+        updateCsvStreaming(filePath, keyColumn, comparisonKey, RowBatch.fromMaps(data), charset);
+    }
+
+    public static void updateCsvStreaming(String filePath, String keyColumn, String comparisonKey, RowBatch batch) throws IOException {
+        // Same charset as the FileReader/FileWriter used by updateCsv
+        updateCsvStreaming(filePath, keyColumn, comparisonKey, batch, Charset.defaultCharset());
+    }
+
+    public static void updateCsvStreaming(String filePath, String keyColumn, String comparisonKey, RowBatch batch, Charset charset) throws IOException {
+        Path source = Paths.get(filePath).toAbsolutePath();
+        Path temp = Files.createTempFile(source.getParent(), source.getFileName().toString(), ".tmp");
+
+        // Index update rows by key (only the update batch is kept in memory); both key names fold case
+        int comparisonColumn = batch.indexOfIgnoreCase(comparisonKey);
+        Map<String, int[]> updatesByKey = comparisonColumn < 0 ? Collections.emptyMap() : batch.rowsByKey(comparisonColumn);
+        ColumnIds columnIds = batch.columnIds();
+
+        try (CSVReader reader = new CSVReader(Files.newBufferedReader(source, charset));
+             CSVWriter writer = new CSVWriter(Files.newBufferedWriter(temp, charset))) {
+
+            // Read header only and resolve the file column of every batch column once
+            String[] header = reader.readNext();
+            if (header == null) {
+                header = new String[0];
+            }
+            Map<Integer, Integer> indexByFoldedId = new HashMap<>();
+            List<String> newHeader = new ArrayList<>(Arrays.asList(header));
+            Integer keyIndex = null;
+            String foldedKeyColumn = keyColumn.toLowerCase();
+            for (int i = 0; i < header.length; i++) {
+                if (header[i] == null) {
+                    continue;
+                }
+                int foldedId = columnIds.findFolded(header[i]);
+                if (foldedId >= 0) {
+                    indexByFoldedId.putIfAbsent(foldedId, i);
+                }
+                if (keyIndex == null && header[i].toLowerCase().equals(foldedKeyColumn)) {
+                    keyIndex = i;
+                }
+            }
+            int[] target = new int[batch.columnCount()];
+            for (int c = 0; c < batch.columnCount(); c++) {
+                int foldedId = batch.foldedColumnId(c);
+                Integer index = indexByFoldedId.get(foldedId);
+                if (index == null) {
+                    index = newHeader.size();
+                    indexByFoldedId.put(foldedId, index);
+                    newHeader.add(batch.name(c));
+                    if (keyIndex == null && foldedId == columnIds.findFolded(keyColumn)) {
+                        keyIndex = index;
+                    }
+                }
+                target[c] = index;
+            }
+            int columnCount = newHeader.size();
+            writer.writeNext(newHeader.toArray(new String[0]));
+
+            // Stream existing rows, merging matches on the fly
+            Set<String> matchedKeys = new HashSet<>();
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                if (keyIndex == null) {
+                    throw new IllegalArgumentException("Column " + keyColumn + " not found");
+                }
+                String[] outRow = row.length < columnCount ? Arrays.copyOf(row, columnCount) : row;
+                if (keyIndex < row.length && row[keyIndex] != null) {
+                    String keyColumnValue = row[keyIndex].toLowerCase();
+                    int[] updateRows = updatesByKey.get(keyColumnValue);
+                    if (updateRows != null) {
+                        mergeRows(outRow, batch, updateRows, target);
+                        matchedKeys.add(keyColumnValue);
+                    }
+                }
+                writer.writeNext(outRow);
+            }
+
+            // Append rows whose key was not found in the file
+            for (Map.Entry<String, int[]> entry : updatesByKey.entrySet()) {
+                if (!matchedKeys.contains(entry.getKey())) {
+                    String[] newRow = new String[columnCount];
+                    mergeRows(newRow, batch, entry.getValue(), target);
+                    writer.writeNext(newRow);
+                }
+            }
+        } catch (CsvValidationException e) {
+            Files.deleteIfExists(temp);
+            throw new IOException("Invalid CSV line in " + filePath, e);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        // Replace the original file with the updated one
+        try {
+            Files.move(temp, source, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, source, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Applies the update rows in order; later non-null values win
+    private static void mergeRows(String[] row, RowBatch batch, int[] updateRows, int[] target) {
+        for (int r : updateRows) {
+            for (int c = 0; c < target.length; c++) {
+                if (!batch.isNull(c, r)) {
+                    row[target[c]] = batch.getString(c, r);
+                }
+            }
+        }
+    }
+}
+```
+
+### 4. ExcelUpdater 수정
+
+엑셀은 셀에 타입이 있으므로, 배치의 `LONG`/`DOUBLE` 컬럼은 문자열이 아니라 숫자 셀로 씁니다. 기존 셀은 앞의 스트리밍 버전과 같이 타입과 숫자 표시 형식을 유지해 복사하고, 시트가 여러 개이거나 수식이 있는 워크북은 거부합니다.
+
+#### ExcelUpdater.java (수정)
+
+```java
+import com.example.demo.utils.ColumnIds;
+import com.example.demo.utils.RowBatch;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.ss.util.NumberToTextConverter;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+public class ExcelUpdater {
+
+    private static final int ROW_ACCESS_WINDOW = 100;
+
+    public static void updateExcelStreaming(String filePath, String keyColumn, String comparisonKey, List<Map<String, String>> data) throws IOException {
+        updateExcelStreaming(filePath, keyColumn, comparisonKey, RowBatch.fromMaps(data));
+    }
+
+    public static void updateExcelStreaming(String filePath, String keyColumn, String comparisonKey, RowBatch batch) throws IOException {
+        Path source = Paths.get(filePath).toAbsolutePath();
+        Path temp = Files.createTempFile(source.getParent(), source.getFileName().toString(), ".tmp");
+
+        // Index update rows by key (only the update batch is kept in memory); both key names fold case
+        int comparisonColumn = batch.indexOfIgnoreCase(comparisonKey);
+        Map<String, int[]> updatesByKey = comparisonColumn < 0 ? Collections.emptyMap() : batch.rowsByKey(comparisonColumn);
+
+        // compressTmpFiles = true, useSharedStringsTable = false
+        SXSSFWorkbook outWorkbook = new SXSSFWorkbook(null, ROW_ACCESS_WINDOW, true, false);
+        try (OPCPackage pkg = OPCPackage.open(source.toFile(), PackageAccess.READ)) {
+            XSSFReader xssfReader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = xssfReader.getStylesTable();
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+
+            try (InputStream sheetStream = sheets.next()) {
+                // Only one sheet is rewritten, so refuse instead of dropping the others
+                if (sheets.hasNext()) {
+                    throw new IOException(filePath + " has more than one sheet; use updateExcel for multi-sheet workbooks");
+                }
+                Sheet outSheet = outWorkbook.createSheet(sheets.getSheetName());
+                StreamingSheetHandler handler = new StreamingSheetHandler(outSheet, keyColumn, batch, updatesByKey);
+
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new TypedSheetXMLHandler(styles, strings, handler));
+                parser.parse(new InputSource(sheetStream));
+                handler.appendUnmatchedRows();
+            }
+
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                outWorkbook.write(out);
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            Files.deleteIfExists(temp);
+            throw new IOException("Failed to read " + filePath, e);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        } finally {
+            outWorkbook.dispose(); // delete SXSSF temp files
+            outWorkbook.close();
+        }
+
+        try {
+            Files.move(temp, source, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, source, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Rejects formula cells and reports the type and number format of each cell to the row handler
+    private static class TypedSheetXMLHandler extends XSSFSheetXMLHandler {
+        private final StylesTable styles;
+        private final StreamingSheetHandler handler;
+
+        TypedSheetXMLHandler(StylesTable styles, ReadOnlySharedStringsTable strings, StreamingSheetHandler handler) {
+            super(styles, null, strings, handler, new RawNumberFormatter(), false);
+            this.styles = styles;
+            this.handler = handler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            if ("f".equals(localName)) {
+                throw new SAXException("Formula cells are not supported; the rewrite would replace them with cached values");
+            }
+            if ("c".equals(localName)) {
+                String styleIndex = attributes.getValue("s");
+                String format = styleIndex == null ? null : styles.getStyleAt(Integer.parseInt(styleIndex)).getDataFormatString();
+                handler.nextCell(attributes.getValue("t"), format);
+            }
+            super.startElement(uri, localName, qName, attributes);
+        }
+    }
+
+    // Passes numeric cells through as their stored value instead of the display text
+    private static class RawNumberFormatter extends DataFormatter {
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            return NumberToTextConverter.toText(value);
+        }
+    }
+
+    private static class StreamingSheetHandler implements SheetContentsHandler {
+        private final Sheet outSheet;
+        private final String keyColumn;
+        private final RowBatch batch;
+        private final Map<String, int[]> updatesByKey;
+        private final Set<String> matchedKeys = new HashSet<>();
+        private final Map<String, CellStyle> numberStyles = new HashMap<>();
+        private final List<Object> currentRow = new ArrayList<>();
+        private final List<String> currentFormats = new ArrayList<>();
+        private String nextType;
+        private String nextFormat;
+        private int[] target;
+        private Integer keyIndex;
+        private boolean headerWritten;
+        private int currentCol;
+        private int lastRowNum = -1;
+
+        StreamingSheetHandler(Sheet outSheet, String keyColumn, RowBatch batch, Map<String, int[]> updatesByKey) {
+            this.outSheet = outSheet;
+            this.keyColumn = keyColumn;
+            this.batch = batch;
+            this.updatesByKey = updatesByKey;
+        }
+
+        void nextCell(String type, String format) {
+            nextType = type;
+            nextFormat = format;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            currentRow.clear();
+            currentFormats.clear();
+            currentCol = -1;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int col = cellReference == null ? currentCol + 1 : new CellReference(cellReference).getCol();
+            while (currentRow.size() < col) {
+                currentRow.add(null);
+                currentFormats.add(null);
+            }
+            Object value = formattedValue;
+            String format = null;
+            if (formattedValue != null && !formattedValue.isEmpty()) {
+                if (nextType == null || "n".equals(nextType)) {
+                    value = Double.valueOf(formattedValue);
+                    format = nextFormat;
+                } else if ("b".equals(nextType)) {
+                    value = "TRUE".equals(formattedValue);
+                }
+            }
+            currentRow.add(value);
+            currentFormats.add(format);
+            currentCol = col;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (!headerWritten) {
+                writeHeader(rowNum, currentRow);
+                return;
+            }
+
+            Row row = writeRow(rowNum, currentRow.toArray(), currentFormats.toArray(new String[0]));
+            if (keyIndex != null && keyIndex < currentRow.size() && currentRow.get(keyIndex) != null) {
+                String keyColumnValue = text(currentRow.get(keyIndex)).toLowerCase();
+                int[] updateRows = updatesByKey.get(keyColumnValue);
+                if (updateRows != null) {
+                    mergeRows(row, updateRows);
+                    matchedKeys.add(keyColumnValue);
+                }
+            }
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+            // Not needed
+        }
+
+        void appendUnmatchedRows() {
+            if (!headerWritten) {
+                writeHeader(0, Collections.emptyList());
+            }
+            for (Map.Entry<String, int[]> entry : updatesByKey.entrySet()) {
+                if (!matchedKeys.contains(entry.getKey())) {
+                    mergeRows(writeRow(lastRowNum + 1, new Object[0], new String[0]), entry.getValue());
+                }
+            }
+        }
+
+        private void writeHeader(int rowNum, List<Object> header) {
+            // Final header = existing header + new columns from the batch
+            ColumnIds columnIds = batch.columnIds();
+            Map<Integer, Integer> indexByFoldedId = new HashMap<>();
+            List<String> finalHeader = new ArrayList<>();
+            String foldedKeyColumn = keyColumn.toLowerCase();
+            for (int i = 0; i < header.size(); i++) {
+                String name = header.get(i) == null ? null : text(header.get(i));
+                finalHeader.add(name);
+                if (name == null) {
+                    continue;
+                }
+                int foldedId = columnIds.findFolded(name);
+                if (foldedId >= 0) {
+                    indexByFoldedId.putIfAbsent(foldedId, i);
+                }
+                if (keyIndex == null && name.toLowerCase().equals(foldedKeyColumn)) {
+                    keyIndex = i;
+                }
+            }
+            target = new int[batch.columnCount()];
+            for (int c = 0; c < batch.columnCount(); c++) {
+                int foldedId = batch.foldedColumnId(c);
+                Integer index = indexByFoldedId.get(foldedId);
+                if (index == null) {
+                    index = finalHeader.size();
+                    indexByFoldedId.put(foldedId, index);
+                    finalHeader.add(batch.name(c));
+                    if (keyIndex == null && foldedId == columnIds.findFolded(keyColumn)) {
+                        keyIndex = index;
+                    }
+                }
+                target[c] = index;
+            }
+            headerWritten = true;
+            writeRow(rowNum, finalHeader.toArray(), new String[finalHeader.size()]);
+        }
+
+        // Writes the update values with their batch type; later non-null values win
+        private void mergeRows(Row row, int[] updateRows) {
+            for (int r : updateRows) {
+                for (int c = 0; c < target.length; c++) {
+                    if (batch.isNull(c, r)) {
+                        continue;
+                    }
+                    switch (batch.type(c)) {
+                        case LONG:
+                            row.createCell(target[c]).setCellValue(batch.getLong(c, r));
+                            break;
+                        case DOUBLE:
+                            row.createCell(target[c]).setCellValue(batch.getDouble(c, r));
+                            break;
+                        default:
+                            row.createCell(target[c]).setCellValue(batch.getString(c, r));
+                    }
+                }
+            }
+        }
+
+        // Numbers and booleans keep their cell type; numbers also keep their number format
+        private Row writeRow(int rowNum, Object[] values, String[] formats) {
+            Row row = outSheet.createRow(rowNum);
+            for (int i = 0; i < values.length; i++) {
+                Object value = values[i];
+                if (value == null) {
+                    continue;
+                }
+                Cell cell = row.createCell(i);
+                if (value instanceof Double) {
+                    cell.setCellValue((Double) value);
+                    CellStyle style = numberStyle(formats[i]);
+                    if (style != null) {
+                        cell.setCellStyle(style);
+                    }
+                } else if (value instanceof Boolean) {
+                    cell.setCellValue((Boolean) value);
+                } else {
+                    cell.setCellValue(value.toString());
+                }
+            }
+            lastRowNum = rowNum;
+            return row;
+        }
+
+        private CellStyle numberStyle(String format) {
+            if (format == null || "General".equals(format)) {
+                return null;
+            }
+            return numberStyles.computeIfAbsent(format, f -> {
+                CellStyle style = outSheet.getWorkbook().createCellStyle();
+                style.setDataFormat(outSheet.getWorkbook().createDataFormat().getFormat(f));
+                return style;
+            });
+        }
+
+        private static String text(Object value) {
+            if (value instanceof Double) {
+                return NumberToTextConverter.toText((Double) value);
+            }
+            if (value instanceof Boolean) {
+                return (Boolean) value ? "TRUE" : "FALSE";
+            }
+            return value.toString();
+        }
+    }
+}
+```
+
+### 5. CSVUtils 수정
+
+`CSVUtils`와 `ExcelUtils`는 원래 헤더를 대소문자까지 정확히 비교하므로, 정확한 이름의 id(`columnId`)로 비교합니다.
+
+#### CSVUtils.java (수정)
+
+```java
+    public static void writeDataToCSV(List<Map<String, String>> data, String filePath) throws IOException {
+        writeDataToCSV(RowBatch.fromMaps(data), filePath);
+    }
+
+    public static void writeDataToCSV(RowBatch batch, String filePath) throws IOException {
+        Path path = Paths.get(filePath);
+        Charset charset = Charset.defaultCharset(); // same charset as FileReader/FileWriter
+
+        // Read the header line only
+        String[] existingHeaders = null;
+        if (Files.exists(path)) {
+            try (CSVReader reader = new CSVReader(Files.newBufferedReader(path, charset))) {
+                existingHeaders = reader.readNext();
+            } catch (CsvValidationException e) {
+                throw new IOException("Invalid CSV header in " + filePath, e);
+            }
+        }
+
+        List<String> headers = new ArrayList<>();
+        Map<Integer, Integer> indexById = new HashMap<>();
+        if (existingHeaders != null) {
+            ColumnIds columnIds = batch.columnIds();
+            for (String header : existingHeaders) {
+                int id = header == null ? -1 : columnIds.find(header);
+                if (id >= 0) {
+                    indexById.putIfAbsent(id, headers.size());
+                }
+                headers.add(header);
+            }
+        }
+        int existingColumnCount = headers.size();
+
+        // Resolve the file column of every batch column once, adding new headers
+        int[] target = new int[batch.columnCount()];
+        for (int c = 0; c < batch.columnCount(); c++) {
+            Integer index = indexById.get(batch.columnId(c));
+            if (index == null) {
+                index = headers.size();
+                indexById.put(batch.columnId(c), index);
+                headers.add(batch.name(c));
+            }
+            target[c] = index;
+        }
+
+        if (existingHeaders == null) {
+            // New (or empty) file: header + rows
+            try (CSVWriter writer = new CSVWriter(Files.newBufferedWriter(path, charset))) {
+                writer.writeNext(headers.toArray(new String[0]));
+                writeRows(writer, batch, target, headers.size());
+            }
+        } else if (headers.size() == existingColumnCount) {
+            // Fast path: header unchanged, append new rows only
+            boolean needsLineBreak = !endsWithLineBreak(path);
+            try (Writer out = Files.newBufferedWriter(path, charset, StandardOpenOption.APPEND);
+                 CSVWriter writer = new CSVWriter(out)) {
+                if (needsLineBreak) {
+                    out.write(CSVWriter.DEFAULT_LINE_END);
+                }
+                writeRows(writer, batch, target, existingHeaders.length);
+            }
+        } else {
+            // New columns: rewrite the file with the extended header
+            rewriteWithNewHeaders(path, charset, batch, target, headers);
+        }
+    }
+
+    private static void writeRows(CSVWriter writer, RowBatch batch, int[] target, int width) {
+        String[] row = new String[width];
+        for (int r = 0; r < batch.rowCount(); r++) {
+            Arrays.fill(row, "");
+            for (int c = 0; c < target.length; c++) {
+                if (!batch.isNull(c, r)) {
+                    row[target[c]] = batch.getString(c, r);
+                }
+            }
+            writer.writeNext(row);
+        }
+    }
+
+    private static void rewriteWithNewHeaders(Path path, Charset charset, RowBatch batch, int[] target, List<String> headers) throws IOException {
+        Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        int width = headers.size();
+        try (CSVReader reader = new CSVReader(Files.newBufferedReader(path, charset));
+             CSVWriter writer = new CSVWriter(Files.newBufferedWriter(temp, charset))) {
+            reader.readNext(); // skip old header
+            writer.writeNext(headers.toArray(new String[0]));
+
+            // Copy existing rows line by line, padded to the new width
+            String[] line;
+            while ((line = reader.readNext()) != null) {
+                String[] row = Arrays.copyOf(line, Math.max(line.length, width));
+                for (int i = line.length; i < width; i++) {
+                    row[i] = "";
+                }
+                writer.writeNext(row);
+            }
+            writeRows(writer, batch, target, width);
+        } catch (CsvValidationException e) {
+            Files.deleteIfExists(temp);
+            throw new IOException("Invalid CSV line in " + path, e);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+```
+
+`endsWithLineBreak`는 그대로입니다.
+
+### 6. ExcelUtils 수정
+
+`Map` 기반 `writeDataToExcel(List<Map<String, String>>, String)`도 `RowBatch`를 받는 메서드의 어댑터로 바꾸고, 숫자 컬럼은 숫자 셀로 씁니다. 엔티티 기반 `writeDataToExcel(List<T>, String, Class<T>)`는 이미 타입별 셀을 쓰므로 그대로 둡니다.
+
+#### ExcelUtils.java (추가)
+
+```java
+    public static void writeDataToExcel(List<Map<String, String>> data, String filePath) throws IOException {
+        writeDataToExcel(RowBatch.fromMaps(data), filePath);
+    }
+
+    public static void writeDataToExcel(RowBatch batch, String filePath) throws IOException {
+        XSSFWorkbook workbook;
+        XSSFSheet sheet;
+        Map<Integer, Integer> indexById = new HashMap<>();
+        int rowIndex;
+
+        if (new java.io.File(filePath).exists()) {
+            try (FileInputStream fileIn = new FileInputStream(filePath)) {
+                workbook = new XSSFWorkbook(fileIn);
+            }
+            sheet = workbook.getSheetAt(0);
+            rowIndex = sheet.getLastRowNum() + 1;
+
+            // Read existing headers
+            for (Cell cell : sheet.getRow(0)) {
+                int id = batch.columnIds().find(cell.getStringCellValue());
+                if (id >= 0) {
+                    indexById.putIfAbsent(id, cell.getColumnIndex());
+                }
+            }
+        } else {
+            workbook = new XSSFWorkbook();
+            sheet = workbook.createSheet("Data");
+            sheet.createRow(0);
+            rowIndex = 1; // Start writing data from the second row (first row is header)
+        }
+
+        // Resolve the sheet column of every batch column once, adding new headers
+        Row headerRow = sheet.getRow(0);
+        int[] target = new int[batch.columnCount()];
+        for (int c = 0; c < batch.columnCount(); c++) {
+            Integer index = indexById.get(batch.columnId(c));
+            if (index == null) {
+                index = Math.max(headerRow.getLastCellNum(), 0);
+                headerRow.createCell(index).setCellValue(batch.name(c));
+                indexById.put(batch.columnId(c), index);
+            }
+            target[c] = index;
+        }
+
+        // Write data rows with typed cells
+        for (int r = 0; r < batch.rowCount(); r++) {
+            Row row = sheet.createRow(rowIndex++);
+            for (int c = 0; c < target.length; c++) {
+                if (batch.isNull(c, r)) {
+                    continue;
+                }
+                Cell cell = row.createCell(target[c]);
+                switch (batch.type(c)) {
+                    case LONG:
+                        cell.setCellValue(batch.getLong(c, r));
+                        break;
+                    case DOUBLE:
+                        cell.setCellValue(batch.getDouble(c, r));
+                        break;
+                    default:
+                        cell.setCellValue(batch.getString(c, r));
+                }
+            }
+        }
+
+        // Write to file
+        try (FileOutputStream fileOut = new FileOutputStream(filePath)) {
+            workbook.write(fileOut);
+        }
+        workbook.close();
+    }
+```
+
+### 7. 사용 예제
+
+```java
+RowBatch batch = RowBatch.builder()
+        .addColumn("uid", RowBatch.ColumnType.LONG)
+        .addColumn("phone", RowBatch.ColumnType.STRING)
+        .addColumn("score", RowBatch.ColumnType.DOUBLE)
+        .startRow().setLong(0, 1).setString(1, "123-456-7890").setDouble(2, 98.5)
+        .startRow().setLong(0, 2).setString(1, "987-654-3210")
+        .build();
+
+CsvUpdater.updateCsvStreaming("data.csv", "id", "uid", batch);
+ExcelUpdater.updateExcelStreaming("data.xlsx", "id", "uid", batch);
+```
+
+### 설명
+
+1. **컬럼 id**: 배치의 컬럼 이름은 `build()`에서 배치 전용 `ColumnIds`에 한 번만 정수 id로 등록되고, 대소문자 무시 비교용 id(`folded`)도 그때 함께 계산됩니다. 파일 헤더는 `find`/`findFolded`로 조회만 하므로 표가 커지지 않습니다. 업데이트 함수는 헤더를 읽을 때 배치 컬럼 → 파일 컬럼 대응(`int[] target`)을 한 번 만들고, 행마다 `HashMap` 조회나 `toLowerCase()` 없이 배열 인덱스로 값을 옮깁니다.
+2. **컬럼형 저장**: 값은 행마다 `HashMap`이 아니라 컬럼마다 배열 하나에 들어갑니다. `LONG`/`DOUBLE` 컬럼은 박싱 없이 `long[]`/`double[]`에 저장되고, 엑셀에는 숫자 셀로 쓰입니다. CSV에는 문자열로 씁니다.
+3. **값 없음**: `Map`에 키가 없던 셀은 `BitSet`으로 표시합니다. 병합할 때는 값이 있는 셀만 덮어쓰므로 기존 `putAll` 동작과 같습니다. 같은 키의 업데이트 행이 여러 개면 순서대로 적용되고 뒤의 값이 이깁니다.
+4. **어댑터**: 기존 `Map` 기반 메서드는 `RowBatch.fromMaps`로 변환해서 새 메서드를 호출합니다. 같은 방식으로 만든 `Map`들은 키를 같은 순서로 돌려주므로, 각 항목의 컬럼을 앞 행의 같은 위치에서 예측하고 `String.equals`로 확인만 합니다(대개 같은 문자열 객체라 참조 비교로 끝납니다). 이름 `Map`은 예측이 빗나갈 때만 조회합니다. 다만 입력이 `Map`인 이상 행마다 `entrySet` 순회는 남으므로, 가장 빠른 경로는 `RowBatch.builder()`로 직접 만드는 것입니다.
+5. **키 비교**: 파일의 키 컬럼(`keyColumn`)과 배치의 비교 컬럼(`comparisonKey`)은 모두 대소문자를 무시하고(`toLowerCase()` 기준) 찾습니다. 파일의 키 값은 기존처럼 행마다 `toLowerCase()`로 비교합니다. 헤더와 컬럼 이름의 소문자 변환만 한 번으로 줄었습니다.
+6. **인코딩**: `updateCsvStreaming`의 기본 오버로드는 앞의 스트리밍 버전과 같이 플랫폼 기본 인코딩(`Charset.defaultCharset()`)을 사용하고, 인코딩을 지정하는 오버로드도 둡니다.
+
+### 주의 사항
+
+- `ExcelUtils.writeDataToExcel(RowBatch, ...)`는 값이 없는 셀을 만들지 않습니다. 기존 `Map` 버전은 빈 문자열 셀을 만들었지만, 읽는 쪽에서는 둘 다 빈 값으로 보입니다.
+- `ColumnIds`는 배치마다 따로 만들어지므로 같은 이름도 배치가 다르면 id가 다를 수 있습니다. id는 같은 배치 안에서만 비교합니다.